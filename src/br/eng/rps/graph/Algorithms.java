@@ -1,6 +1,7 @@
 package br.eng.rps.graph;
 
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -43,34 +44,22 @@ public class Algorithms {
 	 * This function is the base of {@link #MaximumMatching(BipartiteGraph)}
 	 * and {@link #Pantelides(BipartiteGraph, boolean)} algorithms.
 	 * 
+	 * <p>The search does not recurse, the alternating path is kept in a stack owned by the
+	 * graph, so its length is limited only by the heap.
+	 * The equations reached are flagged as {@link #FLAG_COLORED} and are not searched again
+	 * until the flag is removed.
+	 * 
 	 * @param G the graph to augment the matching
 	 * @param ve the vertex to include in the matching
 	 * @return {@link #RET_SUCCESS} if ve could be included in the matching,
 	 * otherwise {@link #RET_FAILED}.
 	 */
 	public static int AugmentMatching(BipartiteGraph G, BipartiteNode ve){
-		// try a direct connection
-		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
-			BipartiteNode vv = e.getNode2();
-			
-			if(vv.getConnected()==null && !(vv.hasFlag(FLAG_DELETED)) ){
-				ve.connect(vv);
-				return RET_SUCCESS;
-			}
-		}
-		// try an alternating path
-		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
-			BipartiteNode vv = e.getNode2();
-			
-			ve.setFlag(FLAG_COLORED);
-			BipartiteNode ve2 = vv.getConnected();
-			if(!(vv.hasFlag(FLAG_DELETED)) && ve2!=null && !(ve2.hasFlag(FLAG_COLORED))
-				&& AugmentMatching(G, ve2)==RET_SUCCESS){
-				ve.connect(vv);
-				return RET_SUCCESS;
-			}
-		}
-		return RET_FAILED;
+		NodeStack S = G.searchStack();
+		S.flagged = true;
+		int ret = augment(S, ve, true, false);
+		S.flagged = false;
+		return ret;
 	}
 
 	/**
@@ -97,67 +86,164 @@ public class Algorithms {
 	 * {@link #AugmentMatching(BipartiteGraph, BipartiteNode)} is for {@link #Pantelides(BipartiteGraph, boolean)}.
 	 */
 	public static int AugmentMatching2(BipartiteGraph G, BipartiteNode ve, boolean alg){
-		// colour ve
-		ve.setFlag(FLAG_COLORED);
-		// try a direct connection
-		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
-			BipartiteNode vv = e.getNode2();
-			if(vv.getConnected()==null && !(vv.hasFlag(FLAG_DELETED)) &&
-					isElegible(vv, alg)){
-				ve.connect(vv);
-				return RET_SUCCESS;
+		NodeStack S = G.searchStack();
+		S.flagged = true;
+		int ret = augment(S, ve, alg, true);
+		S.flagged = false;
+		return ret;
+	}
+
+	/**
+	 * Depth first search of an augmenting path over the nodes, without recursion.
+	 * 
+	 * <p>Each equation reached is coloured and first tries a direct connection to a free
+	 * variable, then the alternating paths through its matched variables, in the order of
+	 * its edges. The equations of the current path are the levels of the stack, each one
+	 * with the next edge to follow, so the nodes are visited, coloured and connected in the
+	 * same order as by the recursive search.
+	 * 
+	 * <p>The equations are coloured by stamping them in their store and they are collected in
+	 * {@link NodeStack#reached}, without setting {@link #FLAG_COLORED}, so all colours are
+	 * removed in constant time by {@link NodeStack#clear(NodeStore)}. The equations coloured
+	 * by the previous searches and not cleared yet are not searched again.
+	 * 
+	 * @param S the stack of the search
+	 * @param alg if <code>false</code> only the variables without a differentiated version are considered
+	 * @param colorFirst if the equations are coloured before the direct connection is tried
+	 * (as by {@link #AugmentMatching2(BipartiteGraph, BipartiteNode, boolean)}) or after it
+	 * @return {@link #RET_SUCCESS} if the root could be included in the matching,
+	 * otherwise {@link #RET_FAILED}.
+	 */
+	private static int augment(NodeStack S, BipartiteNode root, boolean alg, boolean colorFirst){
+		return augment(S, root, alg, colorFirst, false);
+	}
+
+	/**
+	 * The search of {@link #augment(NodeStack, BipartiteNode, boolean, boolean)}, with the
+	 * direct connections tried from the cheap assignments of the stack if <code>cheap</code>
+	 * is set (see {@link NodeStack#newCheap(NodeStore)}), as by the MC21 algorithm.
+	 */
+	private static int augment(NodeStack S, BipartiteNode root, boolean alg, boolean colorFirst, boolean cheap){
+		int top = 0;
+		S.push(0, root);
+		BipartiteNode free = cheap ? cheapMate(S, root, alg, colorFirst) : directMate(S, root, alg, colorFirst);
+		while(free == null){
+			BipartiteEdge e = S.cursor[top];
+			if(e == null){
+				if(--top < 0)
+					return RET_FAILED;
+				continue; // dead end, backtrack
 			}
-		}
-		// try an alternating path
-		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+			S.cursor[top] = e.getNext();
 			BipartiteNode vv = e.getNode2();
 			BipartiteNode ve2 = vv.getConnected();
 			if(!(vv.hasFlag(FLAG_DELETED)) && isElegible(vv, alg) &&
-					ve2!=null && !(ve2.hasFlag(FLAG_COLORED)) && AugmentMatching2(G, ve2, alg)==RET_SUCCESS){
-				ve.connect(vv);
-				return RET_SUCCESS;
+					ve2!=null && !S.visited(ve2)){
+				S.via[top++] = vv;
+				S.push(top, ve2);
+				free = cheap ? cheapMate(S, ve2, alg, colorFirst) : directMate(S, ve2, alg, colorFirst);
 			}
 		}
-		return RET_FAILED;
+		// connect the path, from its end back to the root
+		for(BipartiteNode vv=free; top>=0; --top){
+			S.node[top].connect(vv);
+			if(top > 0)
+				vv = S.via[top-1];
+		}
+		return RET_SUCCESS;
 	}
 
 	/**
-	 * Utility function to remove the given flag of a range of elements.
-	 * 
-	 * <p> This function just execute the following code:
-	 * <code>
-	 * 		for(GraphNode i : list)
-	 * 			i.removeFlag(flag);
-	 * </code>
-	 * 
-	 * @param the list of nodes
-	 * @param the flag to be removed
+	 * Colours an equation reached by {@link #augment(NodeStack, BipartiteNode, boolean, boolean)}
+	 * and looks for a direct connection (an equation left without edges by
+	 * {@link BipartiteGraph#compact()} is coloured too).
+	 * @return the first free variable of the equation or <code>null</code>
 	 */
-	static void removeFlag(Collection<BipartiteNode> list, int flag){
-		for(BipartiteNode i : list)
-			i.removeFlag(flag);
+	private static BipartiteNode directMate(NodeStack S, BipartiteNode ve, boolean alg, boolean colorFirst){
+		if(colorFirst)
+			S.visit(ve);
+		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+			BipartiteNode vv = e.getNode2();
+			if(vv.getConnected()==null && !(vv.hasFlag(FLAG_DELETED)) && isElegible(vv, alg))
+				return vv;
+		}
+		if(!colorFirst)
+			S.visit(ve);
+		return null;
 	}
 
 	/**
-	 * Utility function to exchange a flag by another in a given list of nodes.
-	 * 
-	 * <p>This function just execute the following code:
-	 * <blockquote><pre>
-	 * 		for(BipartiteNode i : list){
-	 * 			if(i.hasFlag(f1)){
-	 * 				i.removeFlag(f1);
-	 * 				i.setFlag(f2);
-	 * 			}
-	 * 		}
-	 * <blockquote><pre>
+	 * The same as {@link #directMate(NodeStack, BipartiteNode, boolean, boolean)}, but the edges
+	 * are tried from the cheap assignment of the equation on, and the next one is kept.
+	 * @return the first free variable of the equation or <code>null</code>
 	 */
-	static void replaceFlag(Collection<BipartiteNode> list, int f1, int f2){
-		for(BipartiteNode i : list){
-			if(i.hasFlag(f1)){
-				i.removeFlag(f1);
-				i.setFlag(f2);
+	private static BipartiteNode cheapMate(NodeStack S, BipartiteNode ve, boolean alg, boolean colorFirst){
+		if(colorFirst)
+			S.visit(ve);
+		for(BipartiteEdge e=S.cheap(ve); e!=null; e=e.getNext()){
+			BipartiteNode vv = e.getNode2();
+			if(vv.getConnected()==null && !(vv.hasFlag(FLAG_DELETED)) && isElegible(vv, alg)){
+				S.setCheap(ve, e.getNext());
+				return vv;
 			}
 		}
+		S.setCheap(ve, null);
+		if(!colorFirst)
+			S.visit(ve);
+		return null;
+	}
+
+	/**
+	 * Flags the equations reached by a failed search as {@link #FLAG_MARKED} and forgets them.
+	 * They are also collected in {@link NodeStack#marked}, so the equations to be differentiated
+	 * are found without scanning the graph, see {@link #diffMarked(BipartiteGraph, NodeStack)}.
+	 */
+	private static void markReached(BipartiteGraph G, NodeStack S){
+		for(int k=0; k<S.nReached; ++k)
+			S.mark(S.reached[k]);
+		S.clear(G.store());
+	}
+
+	/**
+	 * Differentiates the equations flagged {@link #FLAG_MARKED} by {@link #markReached(BipartiteGraph, NodeStack)},
+	 * in the order of their ids as {@link #diffReached(BipartiteGraph, NodeStack)}, removes the flag
+	 * and forgets them. The ones whose flag was removed by the caller between two steps are skipped.
+	 */
+	private static void diffMarked(BipartiteGraph G, NodeStack S){
+		NodeStore s = G.store();
+		int ids[] = new int[S.nMarked], n = 0;
+		for(int k=0; k<S.nMarked; ++k){
+			BipartiteNode ve = S.marked[k];
+			if(ve.id<s.size && s.nodes[ve.id]==ve && ve.hasFlag(FLAG_MARKED))
+				ids[n++] = ve.id;
+			S.marked[k] = null;
+		}
+		S.nMarked = 0;
+		Arrays.sort(ids, 0, n);
+		for(int k=0; k<n; ++k){
+			BipartiteNode ve = s.nodes[ids[k]];
+			G.diffEquation(ve, false);
+			ve.removeFlag(FLAG_MARKED);
+		}
+		G.applyDiffs();
+	}
+
+	/**
+	 * Differentiates the equations reached by the failed searches and forgets them, as the
+	 * equations flagged {@link #FLAG_COLORED} are differentiated by the first step of
+	 * {@link #Pantelides(BipartiteGraph, boolean)}, but without scanning the graph.
+	 * They are differentiated in the order of their ids, the order of the list of equations
+	 * unless the graph was assembled from several stores.
+	 */
+	private static void diffReached(BipartiteGraph G, NodeStack S){
+		NodeStore s = G.store();
+		int ids[] = new int[S.nReached];
+		for(int k=0; k<ids.length; ++k)
+			ids[k] = S.reached[k].id;
+		Arrays.sort(ids);
+		for(int id : ids)
+			G.diffEquation(s.nodes[id], false);
+		S.clear(s);
 	}
 
 	/**
@@ -166,23 +252,451 @@ public class Algorithms {
 	 * <p>If the matching is perfect for V_e returns <code>true</code>, otherwise <code>false</code>.
 	 * This algorithm runs {@link #AugmentMatching(BipartiteGraph, BipartiteNode)}
 	 * for each V_e node of the Graph.
+	 * With the {@link BipartiteGraph#MATCHING_MC21} engine the direct connections are
+	 * tried from the cheap assignments, see {@link #MC21(Matching)}.
+	 * With {@link BipartiteGraph#MATCHING_HOPCROFT_KARP}
+	 * the matching is built on a snapshot of the graph and stored back into the nodes,
+	 * see {@link #MaximumMatching(CompactGraph)}.
 	 * 
 	 * @param G the graph to be analyzed
 	 * @return <code>true</code> if a perfect matching with respect to V_e is found (the
 	 * matching contains all V_e vertices) 
 	 */
 	public static boolean MaximumMatching(BipartiteGraph G){
+		G.greedyMatches = 0;
+		initMatching(G, true, false);
+		if(G.matchingEngine == BipartiteGraph.MATCHING_HOPCROFT_KARP)
+			return MaximumMatching(G.freeze());
 		boolean isPerfect = true;
+		NodeStack S = G.searchStack();
+		S.reset(G.store());
+		boolean cheap = G.matchingEngine == BipartiteGraph.MATCHING_MC21;
+		if(cheap)
+			S.newCheap(G.store());
 		// augment the matching one by one
 		for(BipartiteNode ve : G.getEqs()){
-			if(ve.getConnected()==null && AugmentMatching(G, ve)!=RET_SUCCESS){
+			if(ve.getConnected()==null && augment(S, ve, true, false, cheap)!=RET_SUCCESS){
 				isPerfect = false;
 			}
 			// uncolour all nodes
-			removeFlag(G.getEqs(), FLAG_COLORED);
+			S.clear(G.store());
 		}
 		return isPerfect;
 	}
+
+	/**
+	 * Extends the matching of a bipartite graph by the Karp-Sipser greedy heuristic.
+	 * 
+	 * <p>While some unmatched equation or variable has a single unmatched neighbour
+	 * left they are matched, since this pair is part of some maximum matching extending
+	 * the current one. When there is no such node, a random unmatched equation is matched
+	 * with a random neighbour. This takes linear time, and usually leaves few equations
+	 * for the augmenting path searches. The random choices have a fixed seed, so the
+	 * results are always the same for the same graph.
+	 * 
+	 * <p>The variables flagged as {@link #FLAG_DELETED} are not matched.
+	 * 
+	 * @param G the graph to be analyzed
+	 * @param alg if <code>false</code> only the variables not yet differentiated are matched,
+	 * as by {@link #AugmentMatching2(BipartiteGraph, BipartiteNode, boolean)}
+	 * @return the number of pairs added to the matching
+	 * @see BipartiteGraph#INIT_KARP_SIPSER
+	 */
+	public static int KarpSipser(BipartiteGraph G, boolean alg){
+		return new GreedyMatching(G, alg).run(G.getEqs(), false);
+	}
+
+	/**
+	 * Extends the matching by the initialization selected for the graph, see
+	 * {@link BipartiteGraph#setMatchingInit(int)}.
+	 * @param skipDiff if the equations already differentiated are not matched
+	 */
+	private static void initMatching(BipartiteGraph G, boolean alg, boolean skipDiff){
+		if(G.matchingInit == BipartiteGraph.INIT_KARP_SIPSER)
+			G.greedyMatches += new GreedyMatching(G, alg).run(G.getEqs(), skipDiff);
+	}
+	
+	/**
+	 * Construct a maximum matching for a compact (CSR) snapshot of a bipartite graph.
+	 * 
+	 * <p>This is the same as {@link #MaximumMatching(BipartiteGraph)}, but the
+	 * augmenting paths are searched on the <code>int</code> arrays of the snapshot
+	 * (without recursion) instead of following the edge lists of the nodes.
+	 * The search starts from the matching currently stored in the nodes and the
+	 * resulting matching is written back into them.
+	 * 
+	 * @param C the snapshot of the graph to be analyzed, see {@link BipartiteGraph#freeze()}
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 */
+	public static boolean MaximumMatching(CompactGraph C){
+		Matching M = C.getMatching();
+		boolean isPerfect = MaximumMatching(M);
+		M.apply();
+		return isPerfect;
+	}
+
+	/**
+	 * Construct a maximum matching kept apart from the nodes of the graph.
+	 * 
+	 * <p>This is the same as {@link #MaximumMatching(CompactGraph)}, but the search starts
+	 * from the given matching and the result is left in it, the nodes are not touched.
+	 * The engine is the one selected for the graph of the snapshot, see
+	 * {@link BipartiteGraph#setMatchingEngine(int)}.
+	 * 
+	 * @param M the matching to be augmented
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 */
+	public static boolean MaximumMatching(Matching M){
+		if(M.graph.graph.matchingEngine == BipartiteGraph.MATCHING_HOPCROFT_KARP)
+			return HopcroftKarp(M);
+		if(M.graph.graph.matchingEngine == BipartiteGraph.MATCHING_MC21)
+			return MC21(M);
+		boolean isPerfect = true;
+		// augment the matching one by one
+		for(int i=0; i<M.eqMate.length; ++i){
+			if(M.eqMate[i]<0 && !augmentCompact(M, i, true))
+				isPerfect = false;
+		}
+		return isPerfect;
+	}
+
+	/**
+	 * Construct a maximum matching by the MC21 algorithm of Duff.
+	 * 
+	 * <p>An augmenting path is searched from each unmatched equation in turn, by a depth first
+	 * search (without recursion) with a one step lookahead: each equation reached first tries a
+	 * <i>cheap assignment</i>, a direct connection to a free variable, then the alternating paths
+	 * through its matched variables. A variable once matched stays matched, so the position of
+	 * the cheap assignment of each equation is kept from one search to the next, and each edge is
+	 * tried for a cheap assignment once in the whole matching. The pairs are the same as the ones
+	 * of {@link #MaximumMatching(Matching)} with the default engine.
+	 * 
+	 * <p>The search starts from the given matching and the result is left in it, the variables
+	 * flagged as {@link #FLAG_DELETED} in the snapshot are not matched.
+	 * 
+	 * @param M the matching to be augmented
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 * @see BipartiteGraph#MATCHING_MC21
+	 */
+	public static boolean MC21(Matching M){
+		CompactGraph C = M.graph;
+		M.ensureCheap();
+		int ne = C.ne();
+		int start[] = C.eqStart, adj[] = C.eqAdj;
+		boolean deleted[] = C.deleted;
+		int eqMate[] = M.eqMate, varMate[] = M.varMate;
+		int visited[] = M.visited, cursor[] = M.cursor, stack[] = M.stack, via[] = M.via, cheap[] = M.cheap;
+		boolean isPerfect = true;
+		for(int root=0; root<ne; ++root){
+			if(eqMate[root] >= 0)
+				continue;
+			M.newSearch();
+			int stamp = M.stamp;
+			int top = 0;
+			int free = cheapMate(C, root, varMate, cheap);
+			stack[0] = root;
+			visited[root] = stamp;
+			cursor[root] = start[root];
+			
+			while(free<0 && top>=0){
+				int ve = stack[top];
+				if(cursor[ve] == start[ve+1]){
+					--top; // dead end, backtrack
+					continue;
+				}
+				int vv = adj[cursor[ve]++];
+				int ve2 = varMate[vv];
+				if(!deleted[vv] && ve2>=0 && visited[ve2]!=stamp){
+					via[top++] = vv;
+					stack[top] = ve2;
+					visited[ve2] = stamp;
+					cursor[ve2] = start[ve2];
+					free = cheapMate(C, ve2, varMate, cheap);
+				}
+			}
+			if(free < 0){
+				isPerfect = false;
+				continue;
+			}
+			
+			// flip the alternating path
+			for(int vv=free; top>=0; --top){
+				int ve = stack[top];
+				eqMate[ve] = vv;
+				varMate[vv] = ve;
+				if(top>0)
+					vv = via[top-1];
+			}
+		}
+		return isPerfect;
+	}
+
+	/**
+	 * Construct a maximum matching by the Hopcroft-Karp algorithm.
+	 * 
+	 * <p>Each phase layers the graph by a breadth first search from all unmatched equations,
+	 * up to the first layer reaching an unmatched variable, so the layered graph holds all
+	 * the shortest augmenting paths. Then a depth first search from each unmatched equation
+	 * (without recursion) augments the matching along vertex-disjoint shortest paths: the
+	 * equations of an augmented path and the dead ends are taken out of the layers, and the
+	 * position in the edge list of each equation is kept, so each edge is followed once per phase.
+	 * There are <i>O(sqrt(V))</i> phases, each one taking <i>O(E)</i> time.
+	 * 
+	 * <p>The search starts from the given matching and the result is left in it, the variables
+	 * flagged as {@link #FLAG_DELETED} in the snapshot are not matched.
+	 * 
+	 * @param M the matching to be augmented
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 * @see BipartiteGraph#MATCHING_HOPCROFT_KARP
+	 */
+	public static boolean HopcroftKarp(Matching M){
+		CompactGraph C = M.graph;
+		M.ensureLayers();
+		int ne = C.ne();
+		int start[] = C.eqStart, adj[] = C.eqAdj;
+		boolean deleted[] = C.deleted;
+		int eqMate[] = M.eqMate, varMate[] = M.varMate;
+		int layer[] = M.layer, queue[] = M.queue;
+		int cursor[] = M.cursor, stack[] = M.stack, via[] = M.via;
+		
+		while(true){
+			// layer the graph, from all unmatched equations up to the first unmatched variable
+			int head = 0, tail = 0, limit = -1;
+			for(int i=0; i<ne; ++i){
+				cursor[i] = start[i];
+				if(eqMate[i] < 0){
+					layer[i] = 0;
+					queue[tail++] = i;
+				}
+				else
+					layer[i] = -1;
+			}
+			while(head < tail){
+				int ve = queue[head++];
+				if(limit>=0 && layer[ve]>limit)
+					break;
+				for(int p=start[ve], end=start[ve+1]; p<end; ++p){
+					int vv = adj[p];
+					if(deleted[vv])
+						continue;
+					int ve2 = varMate[vv];
+					if(ve2 < 0)
+						limit = layer[ve];
+					else if(layer[ve2]<0 && limit<0){
+						layer[ve2] = layer[ve] + 1;
+						queue[tail++] = ve2;
+					}
+				}
+			}
+			if(limit < 0)
+				break; // no augmenting path left
+			
+			// augment along vertex-disjoint shortest paths
+			for(int root=0; root<ne; ++root){
+				if(eqMate[root]>=0 || layer[root]!=0)
+					continue;
+				int top = 0, free = -1;
+				stack[0] = root;
+				while(top >= 0){
+					int ve = stack[top];
+					if(cursor[ve] == start[ve+1]){
+						layer[ve] = -1; // dead end, out of the layers
+						--top;
+						continue;
+					}
+					int vv = adj[cursor[ve]++];
+					if(deleted[vv])
+						continue;
+					int ve2 = varMate[vv];
+					if(ve2 < 0){
+						free = vv;
+						break;
+					}
+					if(layer[ve]<limit && layer[ve2]==layer[ve]+1){
+						via[top++] = vv;
+						stack[top] = ve2;
+					}
+				}
+				if(free < 0)
+					continue;
+				// flip the path
+				for(int vv=free; top>=0; --top){
+					int ve = stack[top];
+					layer[ve] = -1;
+					eqMate[ve] = vv;
+					varMate[vv] = ve;
+					if(top > 0)
+						vv = via[top-1];
+				}
+			}
+		}
+		
+		boolean isPerfect = true;
+		for(int i=0; i<ne; ++i){
+			if(eqMate[i] < 0)
+				isPerfect = false;
+		}
+		return isPerfect;
+	}
+
+	/**
+	 * Construct a maximum matching in an analysis context, the graph is only read.
+	 * 
+	 * @param A the context, with the matching to be augmented
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 * @see #MaximumMatching(Matching)
+	 */
+	public static boolean MaximumMatching(AnalysisContext A){
+		return MaximumMatching(A.matching);
+	}
+
+	/**
+	 * Augment a matching kept apart from the nodes of the graph.
+	 * 
+	 * <p>This is the same as {@link #AugmentMatching(BipartiteGraph, BipartiteNode)}, but
+	 * for the equation at the given index of {@link Matching#getGraph()}.
+	 * The equations that would be coloured are given by {@link Matching#isColored(int)}.
+	 * 
+	 * @param M the matching to be augmented
+	 * @param ve the index of the equation to include in the matching
+	 * @return {@link #RET_SUCCESS} if ve could be included in the matching,
+	 * otherwise {@link #RET_FAILED}.
+	 */
+	public static int AugmentMatching(Matching M, int ve){
+		return augmentCompact(M, ve, true) ? RET_SUCCESS : RET_FAILED;
+	}
+
+	/**
+	 * Augment a matching kept apart from the nodes of the graph.
+	 * 
+	 * <p>This is the same as {@link #AugmentMatching2(BipartiteGraph, BipartiteNode, boolean)}, but
+	 * for the equation at the given index of {@link Matching#getGraph()}.
+	 * 
+	 * @param M the matching to be augmented
+	 * @param ve the index of the equation to include in the matching
+	 * @param alg if <code>false</code> only the variables without a differentiated version are considered
+	 * @return {@link #RET_SUCCESS} if ve could be included in the matching,
+	 * otherwise {@link #RET_FAILED}.
+	 */
+	public static int AugmentMatching2(Matching M, int ve, boolean alg){
+		return augmentCompact(M, ve, alg) ? RET_SUCCESS : RET_FAILED;
+	}
+
+	/**
+	 * Construct a maximum matching for a graph stored outside the heap.
+	 * 
+	 * <p>This is the same as {@link #MaximumMatching(CompactGraph)}, the matching
+	 * and the scratch space of the search are also kept outside the heap.
+	 * 
+	 * @param G the graph to be analyzed
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 */
+	public static boolean MaximumMatching(OffHeapGraph G){
+		return G.maximumMatching();
+	}
+
+	/**
+	 * Construct a maximum matching for a graph with compressed adjacency.
+	 * 
+	 * <p>This is the same as {@link #MaximumMatching(CompactGraph)}, the rows are
+	 * decoded while they are searched and the matching is kept in the graph.
+	 * 
+	 * @param G the graph to be analyzed
+	 * @return <code>true</code> if a perfect matching with respect to V_e is found
+	 */
+	public static boolean MaximumMatching(PackedGraph G){
+		return G.maximumMatching();
+	}
+
+	/**
+	 * Returns the first free (and not deleted) variable adjacent to the given equation, from
+	 * its cheap assignment position on, and moves that position past the variable.
+	 * @return the variable index or -1 if there is no such variable
+	 */
+	private static int cheapMate(CompactGraph C, int ve, int[] varMate, int[] cheap){
+		int adj[] = C.eqAdj;
+		boolean deleted[] = C.deleted;
+		for(int p=cheap[ve], end=C.eqStart[ve+1]; p<end; ++p){
+			int vv = adj[p];
+			if(varMate[vv]<0 && !deleted[vv]){
+				cheap[ve] = p+1;
+				return vv;
+			}
+		}
+		cheap[ve] = C.eqStart[ve+1];
+		return -1;
+	}
+
+	/**
+	 * Returns the first free (and not deleted) variable adjacent to the given equation.
+	 * @param alg if <code>false</code> only the variables without a differentiated version are considered
+	 * @return the variable index or -1 if there is no such variable
+	 */
+	private static int freeMate(CompactGraph C, int ve, int[] varMate, boolean alg){
+		int adj[] = C.eqAdj;
+		boolean deleted[] = C.deleted, hasDiff[] = C.hasDiff;
+		for(int p=C.eqStart[ve], end=C.eqStart[ve+1]; p<end; ++p){
+			int vv = adj[p];
+			if(varMate[vv]<0 && !deleted[vv] && (alg || !hasDiff[vv]))
+				return vv;
+		}
+		return -1;
+	}
+
+	/**
+	 * Iterative version of {@link #AugmentMatching2(BipartiteGraph, BipartiteNode, boolean)} for
+	 * compact graphs.
+	 * 
+	 * <p>The visited equations are those with <code>visited[ve]==stamp</code>,
+	 * <code>stack</code> holds the equations of the current alternating path and
+	 * <code>via[k]</code> the variable leading from <code>stack[k]</code> to <code>stack[k+1]</code>,
+	 * all in the work space of the matching.
+	 * 
+	 * @return <code>true</code> if the root could be included in the matching
+	 */
+	private static boolean augmentCompact(Matching M, int root, boolean alg){
+		CompactGraph C = M.graph;
+		M.newSearch();
+		int start[] = C.eqStart, adj[] = C.eqAdj;
+		boolean deleted[] = C.deleted, hasDiff[] = C.hasDiff;
+		int eqMate[] = M.eqMate, varMate[] = M.varMate;
+		int visited[] = M.visited, cursor[] = M.cursor, stack[] = M.stack, via[] = M.via;
+		int stamp = M.stamp;
+		int top = 0;
+		int free = freeMate(C, root, varMate, alg);
+		stack[0] = root;
+		visited[root] = stamp;
+		cursor[root] = start[root];
+		
+		while(free<0 && top>=0){
+			int ve = stack[top];
+			if(cursor[ve] == start[ve+1]){
+				--top; // dead end, backtrack
+				continue;
+			}
+			int vv = adj[cursor[ve]++];
+			int ve2 = varMate[vv];
+			if(!deleted[vv] && (alg || !hasDiff[vv]) && ve2>=0 && visited[ve2]!=stamp){
+				via[top++] = vv;
+				stack[top] = ve2;
+				visited[ve2] = stamp;
+				cursor[ve2] = start[ve2];
+				free = freeMate(C, ve2, varMate, alg);
+			}
+		}
+		if(free<0)
+			return false;
+		
+		// flip the alternating path
+		for(int vv=free; top>=0; --top){
+			int ve = stack[top];
+			eqMate[ve] = vv;
+			varMate[vv] = ve;
+			if(top>0)
+				vv = via[top-1];
+		}
+		return true;
+	}
 	
 	/**
 	 * Mark with the given flag all alternating paths starting on the given node.
@@ -195,25 +709,42 @@ public class Algorithms {
 	 * <p><b>NOTE</b> if the matching contains the starting node then this function
 	 * will not work properly.
 	 * 
+	 * <p>The paths are followed depth first without recursion, the nodes are marked
+	 * in the same order as by a recursive search.
+	 * 
 	 * @param v the exposed stating node
 	 * @param flag the flag to be used when marking the nodes with {@link BipartiteNode#setFlag(int)}
 	 * @return the number of nodes marked, including the given node
 	 */
 	public static int markAlternating(BipartiteNode v, int flag){
-		int nMarked = 0;
+		return markAlternating(v, flag, new NodeStack(16));
+	}
+
+	/**
+	 * Same as {@link #markAlternating(BipartiteNode, int)}, with the given stack.
+	 */
+	static int markAlternating(BipartiteNode v, int flag, NodeStack S){
 		if(v.hasFlag(flag))
-			return nMarked; // already marked
+			return 0; // already marked
 		
-		// colour ve
+		// colour v
 		v.setFlag(flag);
-		++nMarked;
+		int nMarked = 1, top = 0;
+		S.push(0, v);
 		
-		// look for alternating paths and mark it
-		for(BipartiteEdge e=v.getEdges(); e!=null; e=e.getNext()){
-			BipartiteNode vv = e.getNode2();
-			BipartiteNode ve2 = vv.getConnected(); 
-			if(ve2!=null && ve2!=v && !ve2.hasFlag(flag)){
-				nMarked += markAlternating(ve2, flag);
+		// look for alternating paths and mark them
+		while(top >= 0){
+			BipartiteEdge e = S.cursor[top];
+			if(e == null){
+				--top;
+				continue;
+			}
+			S.cursor[top] = e.getNext();
+			BipartiteNode ve2 = e.getNode2().getConnected();
+			if(ve2!=null && ve2!=S.node[top] && !ve2.hasFlag(flag)){
+				ve2.setFlag(flag);
+				++nMarked;
+				S.push(++top, ve2);
 			}
 		}
 		return nMarked;
@@ -239,22 +770,212 @@ public class Algorithms {
 	public static void DulmageMendelshon(BipartiteGraph G, int []partitionSizes){
 		// reset the counters
 		partitionSizes[0] = partitionSizes[1] = 0;
+		NodeStack S = G.searchStack();
 
 		// mark the over constrained partition
 		for(BipartiteNode ve : G.getEqs()){
 			if(ve.getConnected() == null){
-				partitionSizes[0] += markAlternating(ve, FLAG_OVER);
+				partitionSizes[0] += markAlternating(ve, FLAG_OVER, S);
 			}
 		}
 		// mark the under constrained partition
 		for(BipartiteNode vv : G.getVars()){
 			if(vv.getConnected()==null){
-				partitionSizes[1] += markAlternating(vv, FLAG_UNDER);
+				partitionSizes[1] += markAlternating(vv, FLAG_UNDER, S);
 			}
 		}
 
 	}
 
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition and returns the partitions.
+	 * 
+	 * <p>This is the same as {@link #DulmageMendelshon(BipartiteGraph, int[])}, and the
+	 * nodes are also flagged, but the partitions are returned as three {@link SubgraphView}s
+	 * over a permutation of the nodes of the graph: the over-constrained (<code>over</code>),
+	 * the well-constrained (<code>well</code>) and the under-constrained (<code>under</code>)
+	 * parts, in this order. Each part has the flagged nodes and the ones matched with them.
+	 * 
+	 * @param G the bipartite graph with a maximum matching already computed
+	 * @return the over-, well- and under-constrained parts
+	 */
+	public static List<SubgraphView> DulmageMendelshon(BipartiteGraph G){
+		DulmageMendelshon(G, new int[2]);
+		return partitions(G.freeze());
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition on a compact snapshot and returns the partitions.
+	 * 
+	 * @param C the snapshot of a graph with a maximum matching already computed
+	 * @return the over-, well- and under-constrained parts
+	 * @see #DulmageMendelshon(BipartiteGraph)
+	 */
+	public static List<SubgraphView> DulmageMendelshon(CompactGraph C){
+		DulmageMendelshon(C, new int[2]);
+		return partitions(C);
+	}
+
+	/**
+	 * Permutes the nodes of a snapshot by the flags {@link #FLAG_OVER} and {@link #FLAG_UNDER} and the matching.
+	 */
+	private static List<SubgraphView> partitions(CompactGraph C){
+		AnalysisContext A = new AnalysisContext(C.getMatching());
+		A.startDM();
+		for(int i=0; i<C.ne(); ++i)
+			A.eqOver[i] = C.eqs[i].hasFlag(FLAG_OVER);
+		for(int j=0; j<C.nv(); ++j)
+			A.varUnder[j] = C.vars[j].hasFlag(FLAG_UNDER);
+		return A.partitions();
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition on a compact (CSR) snapshot of a bipartite graph.
+	 * 
+	 * <p>This is the same as {@link #DulmageMendelshon(BipartiteGraph, int[])}, but the
+	 * alternating paths are followed on the arrays of the snapshot using an explicit stack.
+	 * The flags {@link #FLAG_OVER} and {@link #FLAG_UNDER} are written back into the nodes.
+	 * 
+	 * @param C the snapshot of a graph with a maximum matching already computed
+	 * @param partitionSizes vector where to put the partition sizes, should have length = 2
+	 */
+	public static void DulmageMendelshon(CompactGraph C, int []partitionSizes){
+		int ne = C.ne(), nv = C.nv();
+		// nodes already flagged are not visited again, as in markAlternating
+		boolean eqOver[] = new boolean[ne], varUnder[] = new boolean[nv];
+		for(int i=0; i<ne; ++i)
+			eqOver[i] = C.eqs[i].hasFlag(FLAG_OVER);
+		for(int j=0; j<nv; ++j)
+			varUnder[j] = C.vars[j].hasFlag(FLAG_UNDER);
+
+		DulmageMendelshon(C.getMatching(), partitionSizes, eqOver, varUnder);
+
+		for(int i=0; i<ne; ++i){
+			if(eqOver[i])
+				C.eqs[i].setFlag(FLAG_OVER);
+		}
+		for(int j=0; j<nv; ++j){
+			if(varUnder[j])
+				C.vars[j].setFlag(FLAG_UNDER);
+		}
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition for a matching kept apart from the nodes.
+	 * 
+	 * <p>This is the same as {@link #DulmageMendelshon(CompactGraph, int[])}, but the
+	 * partitions are given in the arrays <code>eqOver</code> and <code>varUnder</code>
+	 * instead of the flags of the nodes. Elements already <code>true</code> in these arrays
+	 * are not visited again.
+	 * 
+	 * @param M a maximum matching
+	 * @param partitionSizes vector where to put the partition sizes, should have length = 2
+	 * @param eqOver the over-constrained equations, by index (length ne)
+	 * @param varUnder the under-constrained variables, by index (length nv)
+	 */
+	public static void DulmageMendelshon(Matching M, int []partitionSizes, boolean[] eqOver, boolean[] varUnder){
+		CompactGraph C = M.graph;
+		int ne = C.ne(), nv = C.nv();
+		int eqMate[] = M.eqMate, varMate[] = M.varMate;
+		int stack[] = new int[Math.max(ne, nv)];
+		partitionSizes[0] = partitionSizes[1] = 0;
+		// mark the over constrained partition
+		for(int i=0; i<ne; ++i){
+			if(eqMate[i]<0)
+				partitionSizes[0] += markCompact(i, C.eqStart, C.eqAdj, varMate, eqOver, stack);
+		}
+		// mark the under constrained partition
+		for(int j=0; j<nv; ++j){
+			if(varMate[j]<0)
+				partitionSizes[1] += markCompact(j, C.varStart, C.varAdj, eqMate, varUnder, stack);
+		}
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition in an analysis context, the graph is only read.
+	 * 
+	 * <p>The partitions are kept in the context, see {@link AnalysisContext#isOver(int)}
+	 * and {@link AnalysisContext#isUnder(int)}.
+	 * 
+	 * @param A the context, with a maximum matching already computed
+	 * @param partitionSizes vector where to put the partition sizes, should have length = 2
+	 * @see #DulmageMendelshon(Matching, int[], boolean[], boolean[])
+	 */
+	public static void DulmageMendelshon(AnalysisContext A, int []partitionSizes){
+		A.startDM();
+		DulmageMendelshon(A.matching, partitionSizes, A.eqOver, A.varUnder);
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition in an analysis context and returns the partitions.
+	 * 
+	 * @param A the context, with a maximum matching already computed
+	 * @return the over-, well- and under-constrained parts
+	 * @see #DulmageMendelshon(BipartiteGraph)
+	 */
+	public static List<SubgraphView> DulmageMendelshon(AnalysisContext A){
+		DulmageMendelshon(A, new int[2]);
+		return A.partitions();
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition on a graph stored outside the heap.
+	 * 
+	 * <p>This is the same as {@link #DulmageMendelshon(CompactGraph, int[])}, the flags
+	 * {@link #FLAG_OVER} and {@link #FLAG_UNDER} are set in the graph, see
+	 * {@link OffHeapGraph#hasEqFlag(int, int)} and {@link OffHeapGraph#hasVarFlag(int, int)}.
+	 * 
+	 * @param G the graph with a maximum matching already computed
+	 * @param partitionSizes vector where to put the partition sizes, should have length = 2
+	 */
+	public static void DulmageMendelshon(OffHeapGraph G, int []partitionSizes){
+		G.dulmageMendelshon(partitionSizes);
+	}
+
+	/**
+	 * Executes the Dulmage-Mendelshon decomposition on a graph with compressed adjacency.
+	 * 
+	 * <p>This is the same as {@link #DulmageMendelshon(CompactGraph, int[])}, the flags
+	 * {@link #FLAG_OVER} and {@link #FLAG_UNDER} are set in the graph, see
+	 * {@link PackedGraph#hasEqFlag(int, int)} and {@link PackedGraph#hasVarFlag(int, int)}.
+	 * 
+	 * @param G the graph with a maximum matching already computed
+	 * @param partitionSizes vector where to put the partition sizes, should have length = 2
+	 */
+	public static void DulmageMendelshon(PackedGraph G, int []partitionSizes){
+		G.dulmageMendelshon(partitionSizes);
+	}
+
+	/**
+	 * Iterative version of {@link #markAlternating(BipartiteNode, int)} for one side of a compact graph.
+	 * @param v the exposed starting node
+	 * @param start the row offsets of the side of v
+	 * @param adj the adjacency of the side of v
+	 * @param mate the matching of the opposite side
+	 * @param marked the marks of the side of v
+	 * @param stack work space
+	 * @return the number of nodes marked, including the given node
+	 */
+	private static int markCompact(int v, int[] start, int[] adj, int[] mate, boolean[] marked, int[] stack){
+		if(marked[v])
+			return 0;
+		int nMarked = 1, top = 0;
+		marked[v] = true;
+		stack[0] = v;
+		while(top>=0){
+			int u = stack[top--];
+			for(int p=start[u], end=start[u+1]; p<end; ++p){
+				int u2 = mate[adj[p]];
+				if(u2>=0 && !marked[u2]){
+					marked[u2] = true;
+					stack[++top] = u2;
+					++nMarked;
+				}
+			}
+		}
+		return nMarked;
+	}
+
 	/**
 	 * Pantelides's algorithm for the analysis of Differential-Algebraic Equation (DAE) systems.
 	 * 
@@ -263,6 +984,8 @@ public class Algorithms {
 	 * It runs {@link #AugmentMatching(BipartiteGraph, BipartiteNode)}
 	 * sequentially for each V_e node. For each V_e node, if a matching is not
 	 * found the colored set of nodes (reached by alternating paths) is differentiated.
+	 * With the {@link BipartiteGraph#MATCHING_MC21} engine the direct connections are tried
+	 * from cheap assignments kept until the next differentiation, see {@link #MC21(Matching)}.
 	 * 
 	 * <p><b>NOTE</b> this algorithm will run indefinitely if the given graph is
 	 * structurally singular.
@@ -275,6 +998,7 @@ public class Algorithms {
 	 */
 	public static int Pantelides(BipartiteGraph G, boolean oneStep){
 		boolean shouldReturn = false;
+		NodeStack S = G.searchStack();
 		
 		// remove the pure algebraic variables (x)
 		for(BipartiteNode vv : G.getVars()){
@@ -283,6 +1007,7 @@ public class Algorithms {
 				shouldReturn = true;
 			}
 		}
+		G.autoCompact();
 
 		if(oneStep){
 			// diff all COLORED equations
@@ -292,29 +1017,35 @@ public class Algorithms {
 					ve2.removeFlag(FLAG_COLORED);
 				}
 			}
+			S.clear(G.store());
 			G.applyDiffs();
 		}
 		if(oneStep && shouldReturn)
 			return RET_STEP;
 			
+		G.greedyMatches = 0;
+		initMatching(G, true, true);
+		S.reset(G.store());
+		boolean cheap = G.matchingEngine == BipartiteGraph.MATCHING_MC21;
+		if(cheap)
+			S.newCheap(G.store());
 		// augment the matching one by one
 		for(BipartiteNode ve : G.getEqs()){
 			if(ve.getDiff()!=null || ve.getConnected()!=null)
 				continue;
-			if(AugmentMatching(G, ve)==RET_FAILED){
-				if(oneStep)
+			if(augment(S, ve, true, false, cheap)==RET_FAILED){
+				if(oneStep){
+					S.color(0);
 					return RET_STEP;
-				// diff all COLORED equations
-				for(BipartiteNode ve2 : G.getEqs()){
-					if(ve2.hasFlag(FLAG_COLORED) ){
-						G.diffEquation(ve2, false);
-						ve2.removeFlag(FLAG_COLORED);
-					}
 				}
+				// diff all COLORED equations
+				diffReached(G, S);
 				G.applyDiffs();
+				if(cheap)
+					S.newCheap(G.store());
 			}
 			else
-				removeFlag(G.getEqs(), FLAG_COLORED);
+				S.clear(G.store());
 		}
 		return RET_SUCCESS;
 	}
@@ -340,6 +1071,8 @@ public class Algorithms {
 	 */
 	public static int Pantelides2(BipartiteGraph G, boolean oneStep){
 		boolean shouldReturn = false, needDiff = false;
+		boolean cheap = G.matchingEngine == BipartiteGraph.MATCHING_MC21;
+		NodeStack S = G.searchStack();
 		
 		if(oneStep){
 			// diff all COLORED equations
@@ -349,11 +1082,13 @@ public class Algorithms {
 					ve2.removeFlag(FLAG_COLORED);
 				}
 			}
+			S.clear(G.store());
 			G.applyDiffs();
 		}
 		if(oneStep && shouldReturn)
 			return RET_STEP;
 		
+		G.greedyMatches = 0;
 		while(true){
 			// remove the pure algebraic variables (x)
 			for(BipartiteNode vv : G.getVars()){
@@ -362,30 +1097,32 @@ public class Algorithms {
 					shouldReturn = true;
 				}
 			}
+			G.autoCompact();
 			if(oneStep && shouldReturn)
 				return RET_STEP;
 
+			initMatching(G, true, true);
+			S.reset(G.store());
+			if(cheap)
+				S.newCheap(G.store());
 			// augment the matching one by one
 			for(BipartiteNode ve : G.getEqs()){
 				if(ve.getDiff()!=null || ve.getConnected()!=null)
 					continue;
-				if(AugmentMatching(G, ve)!=RET_SUCCESS)
+				if(augment(S, ve, true, false, cheap)!=RET_SUCCESS)
 					needDiff = true;
 				else
-					removeFlag(G.getEqs(), FLAG_COLORED);
+					S.clear(G.store());
 			}
 			if(!needDiff)
 				return RET_SUCCESS;
-			if(oneStep)
+			if(oneStep){
+				S.color(0);
 				return RET_STEP;
+			}
 
 			// diff all COLORED equations
-			for(BipartiteNode ve2 : G.getEqs()){
-				if(ve2.hasFlag(FLAG_COLORED) ){
-					G.diffEquation(ve2, false);
-					ve2.removeFlag(FLAG_COLORED);
-				}
-			}
+			diffReached(G, S);
 			G.applyDiffs();
 		}
 	}
@@ -420,48 +1157,43 @@ public class Algorithms {
 	 */
 	public static int SoaresSecchi(BipartiteGraph G, boolean oneStep){
 		boolean singular, needDiff;
+		NodeStack S = G.searchStack();
 		
 		// diff the last step first
-		if(oneStep){
-			for(BipartiteNode ve2 : G.getEqs()){
-				if(ve2.hasFlag(FLAG_MARKED) ){
-					G.diffEquation(ve2, false);
-					ve2.removeFlag(FLAG_MARKED);
-				}
-			}
-			G.applyDiffs();
-		}
+		if(oneStep)
+			diffMarked(G, S);
 		
+		G.greedyMatches = 0;
+		S.resume(G.store());
 		while(true){
 			singular = needDiff = false;
+			initMatching(G, false, false);
 			// augment the matching one by one
 			for(BipartiteNode ve : G.getEqs()){
 				if(ve.getConnected()!=null)
 					continue;
-				if(AugmentMatching2(G, ve, false)==RET_FAILED){
+				if(augment(S, ve, false, true)==RET_FAILED){
 					needDiff = true;
-					replaceFlag(G.getEqs(), FLAG_COLORED, FLAG_MARKED);
-					if(AugmentMatching2(G, ve, true)==RET_FAILED)
+					markReached(G, S);
+					if(augment(S, ve, true, true)==RET_FAILED)
 						singular = true;
 				}
 				else
-					removeFlag(G.getEqs(), FLAG_COLORED);
+					S.clear(G.store());
 			}
-			if(singular)
+			if(singular){
+				S.color(0);
 				return RET_FAILED;
+			}
 			if(!needDiff)
 				return RET_SUCCESS;
-			if(oneStep)
+			if(oneStep){
+				S.color(0);
 				return RET_STEP;
+			}
 			
 			// diff all MARKED equations
-			for(BipartiteNode ve2 : G.getEqs()){
-				if(ve2.hasFlag(FLAG_MARKED) ){
-					G.diffEquation(ve2, false);
-					ve2.removeFlag(FLAG_MARKED);
-				}
-			}
-			G.applyDiffs();
+			diffMarked(G, S);
 		}
 	}
 
@@ -484,50 +1216,42 @@ public class Algorithms {
 	 */
 	public static int SoaresSecchi2(BipartiteGraph G, boolean oneStep){
 		boolean singular, needDiff;
+		NodeStack S = G.searchStack();
 		
 		// diff the last step first
-		if(oneStep){
-			for(BipartiteNode ve2 : G.getEqs()){
-				if(ve2.hasFlag(FLAG_MARKED) ){
-					G.diffEquation(ve2, false);
-					ve2.removeFlag(FLAG_MARKED);
-				}
-			}
-			G.applyDiffs();
-		}
+		if(oneStep)
+			diffMarked(G, S);
 		
+		G.greedyMatches = 0;
+		S.resume(G.store());
 		while(true){
 			singular = needDiff = false;
+			initMatching(G, false, false);
 			// augment the matching one by one (only diff variables)
 			for(BipartiteNode ve : G.getEqs()){
 				if(ve.getConnected()!=null)
 					continue;
-				if(AugmentMatching2(G, ve, false)==RET_FAILED){
-					replaceFlag(G.getEqs(), FLAG_COLORED, FLAG_MARKED);
+				if(augment(S, ve, false, true)==RET_FAILED){
+					markReached(G, S);
 					needDiff = true;
 				}
 				else
-					removeFlag(G.getEqs(), FLAG_COLORED);			
+					S.clear(G.store());
 			}
 			if(!needDiff)
 				return RET_SUCCESS;
 			for(BipartiteNode ve : G.getEqs()){
-				if(ve.getConnected()==null && AugmentMatching2(G, ve, true)==RET_FAILED){
+				if(ve.getConnected()==null && augment(S, ve, true, true)==RET_FAILED){
 					singular = true;
 				}
 			}
+			S.color(0);
 			if(singular)
 				return RET_FAILED;
 			if(oneStep)
 				return RET_STEP;
 			// diff all MARKED equations
-			for(BipartiteNode ve2 : G.getEqs()){
-				if(ve2.hasFlag(FLAG_MARKED) ){
-					G.diffEquation(ve2, false);
-					ve2.removeFlag(FLAG_MARKED);
-				}
-			}
-			G.applyDiffs();
+			diffMarked(G, S);
 		}
 	}
 }
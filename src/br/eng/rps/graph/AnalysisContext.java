@@ -0,0 +1,196 @@
+package br.eng.rps.graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of one analysis of a graph: matching, partitions, components and the work space.
+ *
+ * <p>The algorithms for {@link BipartiteGraph}s keep their marks ({@link Algorithms#FLAG_COLORED},
+ * {@link Algorithms#FLAG_OVER}, the Tarjan depths, etc.) and results in the nodes, so a graph can
+ * be analyzed by one thread at a time only. The overloads of {@link Algorithms} and {@link Tarjan}
+ * taking a context read the arrays of a {@link CompactGraph} only, everything they write is kept
+ * in the context. So, many threads can analyze a single snapshot at once, each one with its own
+ * context:
+ * <blockquote><pre>
+ * CompactGraph C = G.freeze(); // once, before the threads start
+ * ...
+ * AnalysisContext A = new AnalysisContext(C); // in each thread
+ * Algorithms.MaximumMatching(A);
+ * Algorithms.DulmageMendelshon(A, parts);
+ * List&lt;SubgraphView&gt; blocks = new Tarjan().tarjan(A);
+ * </pre></blockquote>
+ * The graph and its snapshot must not be changed while they are analyzed.
+ * A context is not thread safe itself, it belongs to one thread at a time, and it can be
+ * reused for another analysis of the same snapshot after {@link #clear()}.
+ *
+ * @author rafael
+ */
+public class AnalysisContext {
+	/** The graph analyzed */
+	final CompactGraph graph;
+	/** The matching, with the work space of the augmenting path searches */
+	final Matching matching;
+	/** The over-constrained equations, by index, allocated by the first decomposition */
+	boolean[] eqOver;
+	/** The under-constrained variables, by index */
+	boolean[] varUnder;
+	/** Component of each variable, by index, allocated by the first Tarjan's search */
+	int[] component;
+	/** Number of components found */
+	int components;
+	/** Work space of the Tarjan's search, by variable index */
+	int[] depth, lowDepth, cursor, path, open;
+	boolean[] onStack;
+
+	/**
+	 * Creates a context with an empty matching.
+	 * @param C the snapshot to be analyzed
+	 */
+	public AnalysisContext(CompactGraph C){
+		this(new Matching(C));
+	}
+
+	/**
+	 * Creates a context for the given matching, which is changed by the analysis.
+	 * @param M the matching, it is not copied
+	 */
+	public AnalysisContext(Matching M){
+		graph = M.graph;
+		matching = M;
+	}
+
+	/**
+	 * @return the graph analyzed
+	 */
+	public CompactGraph getGraph(){
+		return graph;
+	}
+
+	/**
+	 * @return the matching of this analysis, see {@link Algorithms#MaximumMatching(AnalysisContext)}
+	 */
+	public Matching getMatching(){
+		return matching;
+	}
+
+	/**
+	 * Clears the matching and the results, keeping the work space.
+	 */
+	public void clear(){
+		matching.clear();
+		if(eqOver != null){
+			Arrays.fill(eqOver, false);
+			Arrays.fill(varUnder, false);
+		}
+		components = 0;
+	}
+
+	/**
+	 * @param i the equation index
+	 * @return if the equation is over-constrained, see {@link Algorithms#DulmageMendelshon(AnalysisContext, int[])}
+	 */
+	public boolean isOver(int i){
+		return eqOver!=null && eqOver[i];
+	}
+
+	/**
+	 * @param j the variable index
+	 * @return if the variable is under-constrained, see {@link Algorithms#DulmageMendelshon(AnalysisContext, int[])}
+	 */
+	public boolean isUnder(int j){
+		return varUnder!=null && varUnder[j];
+	}
+
+	/**
+	 * @param j the variable index
+	 * @return the strongly connected component of the variable (numbered from 0 in the order
+	 * they were found) or -1, see {@link Tarjan#tarjan(AnalysisContext)}
+	 */
+	public int getComponent(int j){
+		return components==0 ? -1 : component[j];
+	}
+
+	/**
+	 * @return the number of strongly connected components found
+	 */
+	public int getComponentCount(){
+		return components;
+	}
+
+	/**
+	 * Allocates the partition arrays (if not yet) and clears them.
+	 */
+	void startDM(){
+		if(eqOver == null){
+			eqOver = new boolean[graph.ne()];
+			varUnder = new boolean[graph.nv()];
+		}
+		else{
+			Arrays.fill(eqOver, false);
+			Arrays.fill(varUnder, false);
+		}
+	}
+
+	/**
+	 * Allocates the work space of the Tarjan's search (if not yet).
+	 */
+	void startTarjan(){
+		int nv = graph.nv();
+		if(depth == null){
+			depth = new int[nv];
+			lowDepth = new int[nv];
+			cursor = new int[nv];
+			path = new int[nv];
+			open = new int[nv];
+			onStack = new boolean[nv];
+			component = new int[nv];
+		}
+		components = 0;
+	}
+
+	/**
+	 * The over-, well- and under-constrained parts of the last decomposition, as in
+	 * {@link Algorithms#DulmageMendelshon(BipartiteGraph)}.
+	 */
+	List<SubgraphView> partitions(){
+		CompactGraph C = graph;
+		int ne = C.ne(), nv = C.nv();
+		int eqMate[] = matching.eqMate, varMate[] = matching.varMate;
+		BipartiteNode eqs[] = new BipartiteNode[ne], vars[] = new BipartiteNode[nv];
+		int eqBounds[] = new int[4], varBounds[] = new int[4];
+		int ie = 0, iv = 0;
+		for(int i=0; i<ne; ++i){
+			if(!eqOver[i])
+				continue;
+			eqs[ie++] = C.eqs[i];
+			if(eqMate[i]>=0 && !varUnder[eqMate[i]])
+				vars[iv++] = C.vars[eqMate[i]];
+		}
+		eqBounds[1] = ie;
+		varBounds[1] = iv;
+		for(int i=0; i<ne; ++i){
+			int j = eqMate[i];
+			if(!eqOver[i] && j>=0 && !varUnder[j]){
+				eqs[ie++] = C.eqs[i];
+				vars[iv++] = C.vars[j];
+			}
+		}
+		eqBounds[2] = ie;
+		varBounds[2] = iv;
+		for(int j=0; j<nv; ++j){
+			if(!varUnder[j])
+				continue;
+			vars[iv++] = C.vars[j];
+			if(varMate[j]>=0 && !eqOver[varMate[j]])
+				eqs[ie++] = C.eqs[varMate[j]];
+		}
+		eqBounds[3] = ie;
+		varBounds[3] = iv;
+		String names[] = {"over", "well", "under"};
+		SubgraphView parts[] = new SubgraphView[3];
+		for(int k=0; k<3; ++k)
+			parts[k] = new SubgraphView(names[k], eqs, eqBounds[k], eqBounds[k+1], vars, varBounds[k], varBounds[k+1]);
+		return Arrays.asList(parts);
+	}
+}
@@ -13,6 +13,10 @@ public class BipartiteEdge {
 	BipartiteNode node2;
 	
 	BipartiteEdge next;
+	/** Previous edge in the list of node1, so the edge is unlinked in constant time */
+	BipartiteEdge prev;
+	/** The same edge in the list of node2 (<code>null</code> if not known yet) */
+	BipartiteEdge twin;
 	
 	public String toString(){
 		return node1.toString() + "--" + node2.toString();
@@ -22,6 +26,29 @@ public class BipartiteEdge {
 		this.node1 = n1;
 		this.node2 = n2;
 		this.next = next;
+		if(next != null)
+			next.prev = this;
+	}
+	
+	/**
+	 * Returns the same edge in the list of node2, searching for it if not known yet
+	 * (edges created by {@link BipartiteNode#addEdge(BipartiteNode)} already know it).
+	 * @return the reverse edge or <code>null</code> if node2 has no edge to node1
+	 */
+	BipartiteEdge twin(){
+		if(twin == null){
+			for(BipartiteEdge e=node2.edges; e!=null && twin==null; e=e.next){
+				if(e.node2 == node1)
+					twin = e;
+			}
+			for(BipartiteEdge e=node2.unlinked; e!=null && twin==null; e=e.next){
+				if(e.node2 == node1)
+					twin = e;
+			}
+			if(twin != null)
+				twin.twin = this;
+		}
+		return twin;
 	}
 	
 	public BipartiteNode getNode1(){
@@ -93,8 +93,188 @@ public class BipartiteGraph {
 	/** Differentiated variables, pending to add */
 	List<BipartiteNode> VvDiff = new ArrayList<BipartiteNode>();
 
+	/** Duplicated edges are detected by scanning the adjacency lists (the default) */
+	public static final int EDGES_SCAN = 0;
+	/** Duplicated edges are detected in constant time by a hash set of the edges */
+	public static final int EDGES_HASH = 1;
+	/** Duplicated edges are not checked, the caller guarantees there are none */
+	public static final int EDGES_UNCHECKED = 2;
+
+	/** Differentiated equations get a copy of the edges of the original ones (the default) */
+	public static final int DIFF_COPY = 0;
+	/** Differentiated equations have their edges derived from the original ones on demand */
+	public static final int DIFF_DERIVED = 1;
+
+	/** Maximum matchings are built by one augmenting path search per equation (the default) */
+	public static final int MATCHING_AUGMENT = 0;
+	/** Maximum matchings are built by the Hopcroft-Karp algorithm */
+	public static final int MATCHING_HOPCROFT_KARP = 1;
+	/** Maximum matchings are built by the MC21 depth first search with cheap assignments */
+	public static final int MATCHING_MC21 = 2;
+
+	/** Matchings are augmented from the current one (the default) */
+	public static final int INIT_NONE = 0;
+	/** Matchings are first extended by the Karp-Sipser greedy heuristic, then augmented */
+	public static final int INIT_KARP_SIPSER = 1;
+
 	/** The graph name */
 	String name;
+	
+	/** How duplicated edges are detected by {@link #addEdge(String, String)} */
+	int edgeCheck = EDGES_SCAN;
+	/** Edges of the graph when in the {@link #EDGES_HASH} mode */
+	EdgeSet edgeSet;
+	
+	/** How equations are differentiated by {@link #diffEquation(BipartiteNode)} */
+	int diffMode = DIFF_COPY;
+	
+	/** How maximum matchings are built by {@link Algorithms#MaximumMatching(BipartiteGraph)} */
+	int matchingEngine = MATCHING_AUGMENT;
+	
+	/** How matchings are started, see {@link #setMatchingInit(int)} */
+	int matchingInit = INIT_NONE;
+	/** Number of pairs matched by the greedy heuristic in the last analysis */
+	int greedyMatches;
+	
+	/** Stack of the augmenting path searches on the nodes, see {@link #searchStack()} */
+	private NodeStack searchStack;
+	
+	/** Arena of the edges created by the graph, see {@link #getEdgeCapacity()} */
+	EdgeArena edgeArena = new EdgeArena();
+	
+	/** Storage of the node state, see {@link #store()} */
+	NodeStore store = new NodeStore(16);
+	/** Number of equations already moved to the store */
+	private int eqsInStore;
+	/** Number of variables already moved to the store */
+	private int varsInStore;
+	
+	/** Variables taken out of {@link #Vv} by {@link #compact()} */
+	List<BipartiteNode> VvRemoved = new ArrayList<BipartiteNode>();
+	/** Fraction of deleted variables above which the graph is compacted, see {@link #setCompactThreshold(double)} */
+	double compactThreshold = 1;
+	
+	/** Name index of the equations */
+	NameIndex eqNames = new NameIndex();
+	/** Name index of the variables */
+	NameIndex varNames = new NameIndex();
+
+	/**
+	 * Hash index from labels to nodes of one of the node lists.
+	 * 
+	 * <p>The lists only grow by appending (by {@link BipartiteGraph#addE(BipartiteNode)},
+	 * {@link BipartiteGraph#addV(BipartiteNode)}, {@link BipartiteGraph#applyDiffs()}, etc.),
+	 * so the index just remembers how many elements of the list were already indexed and
+	 * catches up on the next lookup. The functions removing nodes ({@link BipartiteGraph#compact()},
+	 * {@link BipartiteGraph#removeEquation(BipartiteNode)}, etc.) drop the index.
+	 * As in a linear scan of the list, the first node with a given label is the one found.
+	 * 
+	 * <p>The index is an open addressing table of the nodes themselves: the labels are
+	 * hashed and compared directly from the label arena of the nodes (see
+	 * {@link BipartiteNode#labelHash()}), so no string is kept for them.
+	 */
+	static final class NameIndex {
+		private BipartiteNode[] table = new BipartiteNode[16];
+		private int[] hashes = new int[16];
+		/** Number of nodes in the table */
+		private int count;
+		/** Number of elements of the list already in the table */
+		private int indexed;
+		/** Number of nodes left out of the table, since an earlier one has the same label */
+		private int shadowed;
+
+		BipartiteNode find(List<BipartiteNode> list, String name){
+			int n = list.size();
+			if(n < indexed)
+				clear(); // the list was shrunk outside the graph, rebuild
+			for(; indexed<n; ++indexed){
+				BipartiteNode node = list.get(indexed);
+				if(node != null)
+					put(node);
+			}
+			int h = name.hashCode(), mask = table.length-1;
+			for(int k=h&mask; table[k]!=null; k=(k+1)&mask){
+				if(hashes[k]==h && table[k].labelEquals(name))
+					return table[k];
+			}
+			return null;
+		}
+
+		private void put(BipartiteNode node){
+			if(2*(count+1) > table.length)
+				rehash();
+			int h = node.labelHash(), mask = table.length-1;
+			String label = null;
+			int k = h&mask;
+			for(; table[k]!=null; k=(k+1)&mask){
+				if(hashes[k] == h){
+					if(label == null)
+						label = node.toString();
+					if(table[k].labelEquals(label)){
+						++shadowed;
+						return; // the first one wins
+					}
+				}
+			}
+			table[k] = node;
+			hashes[k] = h;
+			++count;
+		}
+
+		private void rehash(){
+			BipartiteNode oldTable[] = table;
+			int oldHashes[] = hashes;
+			table = new BipartiteNode[oldTable.length*2];
+			hashes = new int[table.length];
+			int mask = table.length-1;
+			for(int i=0; i<oldTable.length; ++i){
+				if(oldTable[i] == null)
+					continue;
+				int k = oldHashes[i]&mask;
+				while(table[k] != null)
+					k = (k+1)&mask;
+				table[k] = oldTable[i];
+				hashes[k] = oldHashes[i];
+			}
+		}
+		
+		/**
+		 * Takes out a node removed from the given position of the list, shifting back the
+		 * following entries of its cluster.
+		 */
+		void remove(BipartiteNode node, int pos){
+			if(pos >= indexed)
+				return; // not indexed yet
+			--indexed;
+			if(shadowed > 0){
+				clear(); // a later node with the same label may take its place
+				return;
+			}
+			int mask = table.length-1, i = node.labelHash()&mask;
+			while(table[i]!=null && table[i]!=node)
+				i = (i+1)&mask;
+			if(table[i] == null)
+				return;
+			for(int j=(i+1)&mask; table[j]!=null; j=(j+1)&mask){
+				int k = hashes[j]&mask;
+				// the entry stays if its home is cyclically in (i, j]
+				if(i<=j ? (i<k && k<=j) : (i<k || k<=j))
+					continue;
+				table[i] = table[j];
+				hashes[i] = hashes[j];
+				i = j;
+			}
+			table[i] = null;
+			--count;
+		}
+		
+		/** Drops the index, it is rebuilt on the next lookup. */
+		void clear(){
+			table = new BipartiteNode[16];
+			hashes = new int[16];
+			count = indexed = shadowed = 0;
+		}
+	}
 
 	/**
 	 * Crates a graph for the given name
@@ -152,6 +332,36 @@ public class BipartiteGraph {
 	public void setName(String name) {
 		this.name = name;
 	}	
+	/**
+	 * Returns the store holding the state of all nodes of this graph.
+	 * 
+	 * <p>Nodes created elsewhere and appended to the node lists (by {@link #addE(BipartiteNode)},
+	 * {@link #addV(BipartiteNode)} or directly) are moved to the store of the graph here,
+	 * so the store is always up to date when the algorithms run.
+	 */
+	NodeStore store(){
+		store = store.resolve();
+		for(int n=Ve.size(); eqsInStore<n; ++eqsInStore)
+			adopt(Ve.get(eqsInStore));
+		for(int n=Vv.size(); varsInStore<n; ++varsInStore)
+			adopt(Vv.get(varsInStore));
+		return store;
+	}
+	
+	/**
+	 * @return the stack of the augmenting path searches, reused by all searches on this graph
+	 */
+	NodeStack searchStack(){
+		if(searchStack == null)
+			searchStack = new NodeStack(16);
+		return searchStack;
+	}
+	
+	private void adopt(BipartiteNode n){
+		if(n!=null && n.store!=store)
+			store = NodeStore.union(store, n.store);
+	}
+
 	/**
 	 * Add a new V_v node.
 	 * One of the ways to build the graph is adding nodes.
@@ -174,42 +384,211 @@ public class BipartiteGraph {
 	 * @return the variable if some
 	 */
 	public BipartiteNode getVar(String name){
-		return find(getVars(), name);
+		return varNames.find(Vv, name);
 	}
 	/**
 	 * @param name the name of the equation
 	 * @return the equation if some
 	 */
 	public BipartiteNode getEq(String name){
-		return find(getEqs(), name);
+		return eqNames.find(Ve, name);
+	}
+
+	/**
+	 * Sets how duplicated edges are detected by {@link #addEdge(String, String)}.
+	 * 
+	 * <p>In the default mode, {@link #EDGES_SCAN}, the adjacency lists of both nodes are
+	 * scanned before an edge is added, what is quadratic in the degree of the nodes.
+	 * In the {@link #EDGES_HASH} mode all edges of the graph are kept in a hash set
+	 * (built when the mode is selected) and duplicates are detected in constant time.
+	 * The set is released when another mode is selected, so this mode is meant to be
+	 * used only while the graph is being built.
+	 * If the caller guarantees that the input has no duplicated edges the check can be
+	 * skipped entirely with {@link #EDGES_UNCHECKED}.
+	 * 
+	 * <p><b>NOTE</b> edges added directly with {@link BipartiteNode#addEdge(BipartiteNode)}
+	 * while in the {@link #EDGES_HASH} mode are not seen by the hash set.
+	 * 
+	 * @param mode one of {@link #EDGES_SCAN}, {@link #EDGES_HASH} or {@link #EDGES_UNCHECKED}
+	 */
+	public void setEdgeCheck(int mode){
+		if(mode == edgeCheck)
+			return;
+		edgeSet = mode==EDGES_HASH ? new EdgeSet(this) : null;
+		edgeCheck = mode;
 	}
 
 	/**
-	 * Try to find an element with the given name on the given list
-	 * @param list the list to search into
-	 * @param name the name to look for
-	 * @return the Node if some
+	 * @return the current mode for the detection of duplicated edges
+	 * @see #setEdgeCheck(int)
 	 */
-	private static BipartiteNode find(List<BipartiteNode> list, String name){
-		for(BipartiteNode n : list){
-			if(n.toString().equals(name))
-				return n;
-		}
-		return null;
+	public int getEdgeCheck(){
+		return edgeCheck;
+	}
+
+	/**
+	 * @return the number of edges in the hash set of the {@link #EDGES_HASH} mode (the edges
+	 * derived by the {@link #DIFF_DERIVED} mode are not there), or -1 in the other modes
+	 */
+	public int getEdgeSetSize(){
+		return edgeSet!=null ? edgeSet.size() : -1;
+	}
+
+	/**
+	 * Returns the number of edge objects created by the arena of this graph.
+	 * 
+	 * <p>The edges of the graph built by the {@link GraphBuilder}, of a {@link #snapshot()},
+	 * of the differentiated equations and of the unchecked additions are taken from the arena,
+	 * and the edges removed or rolled back (see {@link #rollback()}) are given back to it.
+	 * So, this number stops growing once an index reduction tried and undone repeatedly
+	 * has run once.
+	 * 
+	 * @return the number of edges in the graph, free in the arena or not handed out yet
+	 */
+	public int getEdgeCapacity(){
+		return edgeArena.capacity();
+	}
+
+	/**
+	 * Sets how equations are differentiated by {@link #diffEquation(BipartiteNode)}
+	 * and by the algorithms.
+	 * 
+	 * <p>In the default mode, {@link #DIFF_COPY}, the differentiated version of an equation
+	 * gets a new edge to the differentiated version of each of its variables, so a
+	 * high-index model grows several-fold while analyzed.
+	 * In the {@link #DIFF_DERIVED} mode an equation differentiated <code>m</code> times keeps
+	 * only the id of its base equation and the order <code>m</code>: its edges are not stored
+	 * but derived from the ones of the base equation when {@link BipartiteNode#getEdges()}
+	 * is followed, the same for the differentiated variables.
+	 * The memory used by the edges is then proportional to the original model, at the cost of
+	 * creating the edge objects while the lists are followed.
+	 * 
+	 * <p>The mode affects only the differentiations made after it is selected.
+	 * 
+	 * @param mode one of {@link #DIFF_COPY} or {@link #DIFF_DERIVED}
+	 */
+	public void setDiffMode(int mode){
+		diffMode = mode;
+	}
+
+	/**
+	 * @return the current differentiation mode
+	 * @see #setDiffMode(int)
+	 */
+	public int getDiffMode(){
+		return diffMode;
+	}
+
+	/**
+	 * Sets how maximum matchings of this graph are built by {@link Algorithms#MaximumMatching(BipartiteGraph)}
+	 * and the other overloads for its snapshots and matchings.
+	 * 
+	 * <p>In the default mode, {@link #MATCHING_AUGMENT}, an augmenting path is searched from
+	 * each unmatched equation in turn, which takes <i>O(VE)</i> time in the worst case.
+	 * With {@link #MATCHING_HOPCROFT_KARP} the shortest augmenting paths are found in phases,
+	 * a breadth first search layering the graph and then a set of vertex-disjoint paths
+	 * augmented at once, in <i>O(E sqrt(V))</i> time. The size of the matching is the same,
+	 * but not necessarily the pairs.
+	 * With {@link #MATCHING_MC21} the searches are the ones of the default mode, but each
+	 * equation keeps the position of its <i>cheap assignment</i> (the direct connection to a
+	 * free variable) between the searches, so each edge is tried for a cheap assignment once
+	 * in the whole matching instead of once per search. The pairs are the same as in the
+	 * default mode. This engine is also used by the augmenting steps of
+	 * {@link Algorithms#Pantelides(BipartiteGraph, boolean)}.
+	 * 
+	 * @param engine one of {@link #MATCHING_AUGMENT}, {@link #MATCHING_HOPCROFT_KARP} or {@link #MATCHING_MC21}
+	 */
+	public void setMatchingEngine(int engine){
+		matchingEngine = engine;
+	}
+
+	/**
+	 * @return the current maximum matching engine
+	 * @see #setMatchingEngine(int)
+	 */
+	public int getMatchingEngine(){
+		return matchingEngine;
+	}
+
+	/**
+	 * Sets how the matchings are started by {@link Algorithms#MaximumMatching(BipartiteGraph)},
+	 * {@link Algorithms#Pantelides(BipartiteGraph, boolean)} and
+	 * {@link Algorithms#SoaresSecchi(BipartiteGraph, boolean)} (and their second versions).
+	 * 
+	 * <p>In the default mode, {@link #INIT_NONE}, an augmenting path is searched from each
+	 * unmatched equation. With {@link #INIT_KARP_SIPSER} the unmatched equations are first
+	 * matched by {@link Algorithms#KarpSipser(BipartiteGraph, boolean)}, in linear time,
+	 * and the augmenting paths are searched only from the ones left. The size of the
+	 * matching is the same, but not necessarily the pairs.
+	 * 
+	 * @param init one of {@link #INIT_NONE} or {@link #INIT_KARP_SIPSER}
+	 * @see #getGreedyMatches()
+	 */
+	public void setMatchingInit(int init){
+		matchingInit = init;
+	}
+
+	/**
+	 * @return the current matching initialization
+	 * @see #setMatchingInit(int)
+	 */
+	public int getMatchingInit(){
+		return matchingInit;
+	}
+
+	/**
+	 * @return the number of pairs matched by the greedy heuristic in the last call of one of
+	 * the algorithms affected by {@link #setMatchingInit(int)}, the other pairs added by that
+	 * call were found by augmenting paths
+	 */
+	public int getGreedyMatches(){
+		return greedyMatches;
 	}
 
 	/**
 	 * Adds an given edge.
 	 * This is a convenient way to build a graph given the labels of a ve and vv node.
 	 * If the given node labels does not exists in the graph they are created on the fly.
+	 * 
+	 * @see #setEdgeCheck(int)
 	 */
 	public void addEdge(String ve, String vvdiff){
-		BipartiteNode vep = find(Ve, ve);
+		BipartiteNode vep = eqNames.find(Ve, ve);
 		if(vep==null)
-			Ve.add(vep = new BipartiteNode(ve));
+			Ve.add(vep = BipartiteNode.labeled(store(), ve));
 
 		BipartiteNode vvp = findVar(vvdiff);
-		vep.addEdge(vvp);
+		switch(edgeCheck){
+		case EDGES_HASH:
+			if(edgeSet.add(vep, vvp))
+				link(vep, vvp);
+			break;
+		case EDGES_UNCHECKED:
+			link(vep, vvp);
+			break;
+		default:
+			vep.addEdge(vvp);
+		}
+	}
+	
+	/**
+	 * Adds the edge between two nodes without checking for duplicates, taking the edge
+	 * objects from the arena of the graph.
+	 * @see BipartiteNode#addEdge(BipartiteNode, boolean)
+	 */
+	private void link(BipartiteNode ve, BipartiteNode vv){
+		if(vv.store != ve.store)
+			NodeStore.union(ve.store, vv.store);
+		BipartiteEdge e1 = ve.edges = edgeArena.get(ve, vv, ve.edges);
+		BipartiteEdge e2 = vv.edges = edgeArena.get(vv, ve, vv.edges);
+		++ve.store.edgeVersion;
+		e1.twin = e2;
+		e2.twin = e1;
+		UndoLog log = ve.store.log;
+		if(log != null){
+			log.added(e1);
+			log.added(e2);
+		}
 	}
 	
 	BipartiteNode findVar(String vvdiff){
@@ -219,16 +598,14 @@ public class BipartiteGraph {
 			BipartiteNode vvp = findVar(vv);
 
 			if(vvp.getDiff()!=null)
-				vvp = vvp.getDiff();
-			else{
-				vvp = vvp.differentiate();
-				Vv.add(vvp);
-				return vvp;
-			}
+				return vvp.getDiff();
+			vvp = vvp.differentiate();
+			Vv.add(vvp);
+			return vvp;
 		}
-		BipartiteNode vvp = find(Vv, vv);
+		BipartiteNode vvp = varNames.find(Vv, vv);
 		if(vvp==null)
-			Vv.add(vvp = new BipartiteNode(vv));
+			Vv.add(vvp = BipartiteNode.labeled(store(), vv));
 		
 		return vvp;
 	}
@@ -257,21 +634,36 @@ public class BipartiteGraph {
 		BipartiteNode diff = e.getDiff();
 		if(diff!=null)
 			return diff;
+		NodeStore s = null;
+		if(diffMode == DIFF_DERIVED){
+			s = store();
+			s.ensureDerived();
+			// an equation with edges of its own and derived ones is copied
+			if(e.edges!=null && s.base[e.id]>=0)
+				s = null;
+		}
 		diff = e.differentiate();
-		BipartiteNode vdiff;
+		if(s != null){
+			int base = s.base[e.id];
+			s.base[diff.id] = base<0 ? e.id : base;
+			s.order[diff.id] = base<0 ? 1 : s.order[e.id]+1;
+		}
 		
-		for(BipartiteEdge ed=e.getEdges(); ed!=null; ed=ed.getNext()){
-			BipartiteNode vv = ed.getNode2();
-			vdiff = vv.getDiff();
-			if(vdiff==null){
-				vdiff = vv.differentiate();
-				if(addNow)
-					Vv.add(vdiff);
-				else
-					VvDiff.add(vdiff);
+		if(s!=null && s.base[e.id]>=0){
+			// the variables of the base equation lifted to the order of e, without creating the derived edges
+			for(BipartiteEdge ed=s.nodes[s.base[e.id]].edges; ed!=null; ed=ed.next){
+				int t = s.lift(ed.node2.id, s.order[e.id]);
+				if(t >= 0)
+					diffEdge(diff, s.nodes[t], s, addNow);
 			}
-			diff.addEdge(vdiff);
 		}
+		else{
+			for(BipartiteEdge ed=e.getEdges(); ed!=null; ed=ed.getNext())
+				diffEdge(diff, ed.getNode2(), s, addNow);
+		}
+		// the edges unlinked by compact() are differentiated as well
+		for(BipartiteEdge ed=e.unlinked; ed!=null; ed=ed.next)
+			diffEdge(diff, ed.node2, s, addNow);
 		if(addNow)
 			Ve.add(diff);
 		else
@@ -279,6 +671,30 @@ public class BipartiteGraph {
 		return diff;
 	}
 
+	/**
+	 * Adds to the differentiated equation the edge to the derivative of a variable of the original one.
+	 * @param s the store when the edge is derived (see {@link #DIFF_DERIVED}) or <code>null</code>
+	 */
+	private void diffEdge(BipartiteNode diff, BipartiteNode vv, NodeStore s, boolean addNow){
+		BipartiteNode vdiff = vv.getDiff();
+		if(vdiff==null){
+			vdiff = vv.differentiate();
+			if(addNow)
+				Vv.add(vdiff);
+			else
+				VvDiff.add(vdiff);
+		}
+		if(s != null){
+			// the edge is derived from the one of the base equation
+			s.setLifted(vdiff.id);
+			return;
+		}
+		// diff is a new node, so the edge cannot be a duplicate
+		link(diff, vdiff);
+		if(edgeSet!=null)
+			edgeSet.add(diff, vdiff);
+	}
+
 	/**
 	 * Differentiate the given variable node.
 	 * @return the new variable node.
@@ -319,6 +735,572 @@ public class BipartiteGraph {
 		VvDiff.clear();
 	}
 
+	/**
+	 * Takes a compact snapshot of the graph.
+	 * 
+	 * <p>The snapshot stores the adjacency of both partitions in compressed sparse
+	 * row arrays and can be analyzed by the {@link Algorithms} and {@link Tarjan}
+	 * overloads for {@link CompactGraph}, which write their results back into the nodes
+	 * of this graph.
+	 * The snapshot must be taken again if nodes or edges are added to the graph.
+	 * 
+	 * @return the snapshot of the current graph
+	 */
+	public CompactGraph freeze(){
+		return new CompactGraph(this);
+	}
+
+	/**
+	 * Creates an independent copy of this graph, to be changed without affecting this one.
+	 * 
+	 * <p>The algorithms like {@link Algorithms#Pantelides(BipartiteGraph, boolean)} and
+	 * {@link Algorithms#SoaresSecchi(BipartiteGraph, boolean)} change the graph in place,
+	 * so a snapshot should be taken to compare algorithms or to retry with other settings
+	 * without loading the graph again:
+	 * <blockquote><pre>
+	 * BipartiteGraph G2 = G.snapshot();
+	 * Algorithms.Pantelides(G, false);
+	 * Algorithms.SoaresSecchi(G2, false);
+	 * </pre></blockquote>
+	 * The snapshot has the same lists of equations and variables (including the pending
+	 * differentiated ones), edges, flags, matching and derivative links of this graph.
+	 * The node objects (labels) are shared. The state of the nodes is copied as a whole by
+	 * array copies, keeping the node ids, and the edges are copied in a single pass without
+	 * scanning the adjacency lists, so the cost is linear and much lower than building the
+	 * graph again. This graph is only read, so it can be copied while other threads analyze it.
+	 * 
+	 * <p>If only the matching should be changed, it is cheaper to keep several {@link Matching}s
+	 * over a single {@link #freeze()} of the graph.
+	 * 
+	 * @return the copy of the graph
+	 */
+	public BipartiteGraph snapshot(){
+		NodeStore src = store();
+		BipartiteGraph G = new BipartiteGraph(name);
+		NodeStore dst = new NodeStore(src.size);
+		G.store = dst;
+		BipartiteNode nodes[] = new BipartiteNode[src.size];
+		for(int k=0; k<src.size; ++k)
+			nodes[k] = new BipartiteNode(dst, src.nodes[k].object, null);
+		dst.copyState(src);
+		
+		copyEdges(src, nodes, G.edgeArena);
+		
+		copyNodes(Ve, G.Ve, nodes);
+		copyNodes(Vv, G.Vv, nodes);
+		copyNodes(VeDiff, G.VeDiff, nodes);
+		copyNodes(VvDiff, G.VvDiff, nodes);
+		G.eqsInStore = G.Ve.size();
+		G.varsInStore = G.Vv.size();
+		G.setEdgeCheck(edgeCheck);
+		G.diffMode = diffMode;
+		copyNodes(VvRemoved, G.VvRemoved, nodes);
+		G.compactThreshold = compactThreshold;
+		return G;
+	}
+	
+	/**
+	 * Copies the edges of the nodes of a store keeping their order, taking them from a
+	 * single slab of the given arena in the order of the node ids.
+	 * @param nodes the copy of each node, by id (may be the nodes themselves)
+	 */
+	private static void copyEdges(NodeStore src, BipartiteNode[] nodes, EdgeArena arena){
+		int m = 0;
+		for(int k=0; k<src.size; ++k){
+			for(BipartiteEdge ed=src.nodes[k].edges; ed!=null; ed=ed.next)
+				++m;
+			for(BipartiteEdge ed=src.nodes[k].unlinked; ed!=null; ed=ed.next)
+				++m;
+		}
+		arena.reserve(m);
+		EdgeMap waiting = new EdgeMap();
+		for(int k=0; k<src.size; ++k){
+			BipartiteNode n = nodes[k];
+			BipartiteEdge edges = src.nodes[k].edges, unlinked = src.nodes[k].unlinked;
+			n.edges = copyList(edges, n, nodes, arena, waiting);
+			n.unlinked = copyList(unlinked, n, nodes, arena, waiting);
+		}
+	}
+
+	private static BipartiteEdge copyList(BipartiteEdge first, BipartiteNode n, BipartiteNode[] nodes,
+			EdgeArena arena, EdgeMap waiting){
+		BipartiteEdge head = null, tail = null;
+		for(BipartiteEdge ed=first; ed!=null; ed=ed.next){
+			BipartiteEdge e = arena.get(n, nodes[ed.node2.id], null);
+			if(tail == null)
+				head = e;
+			else
+				tail.next = e;
+			e.prev = tail;
+			tail = e;
+			copyTwin(ed, e, waiting);
+		}
+		return head;
+	}
+
+	/**
+	 * Links the copy of an edge with the copy of its reverse edge.
+	 * 
+	 * <p>The copy of the edge found first waits in the given map until its reverse edge
+	 * is copied, so the edges copied are only read. The copies of the edges whose reverse
+	 * edge is not known yet find it when needed, see {@link BipartiteEdge#twin()}.
+	 * @param waiting the copies waiting for the copy of their reverse edge, by original edge
+	 */
+	private static void copyTwin(BipartiteEdge ed, BipartiteEdge copy, EdgeMap waiting){
+		BipartiteEdge t = ed.twin;
+		if(t==null || t.twin!=ed)
+			return;
+		BipartiteEdge c = waiting.take(t);
+		if(c == null){
+			waiting.put(ed, copy);
+			return;
+		}
+		copy.twin = c;
+		c.twin = copy;
+	}
+	
+	private static void copyNodes(List<BipartiteNode> from, List<BipartiteNode> to, BipartiteNode[] nodes){
+		for(BipartiteNode n : from)
+			to.add(n==null ? null : nodes[n.id]);
+	}
+
+	/**
+	 * Removes an edge from the graph.
+	 * 
+	 * <p>The adjacency lists are doubly linked and each edge knows the same edge in the
+	 * list of the other node, so the edge is removed from both lists in constant time.
+	 * If the nodes are matched with each other they become unmatched.
+	 * 
+	 * <p>The edge objects are kept by the graph and reused for the edges created later
+	 * (as by {@link #diffEquation(BipartiteNode)}), so the removed edge should not be used anymore.
+	 * 
+	 * @param e an edge of the graph, as returned by {@link BipartiteNode#getEdges()}
+	 * @throws IllegalArgumentException if the edge is derived from other edges (see {@link #DIFF_DERIVED})
+	 */
+	public void removeEdge(BipartiteEdge e){
+		checkNoTransaction();
+		if(e instanceof DerivedEdge){
+			BipartiteEdge own = ((DerivedEdge)e).own();
+			if(own == null)
+				throw new IllegalArgumentException("Derived edge cannot be removed: " + e);
+			e = own;
+		}
+		if(e.node1 == null)
+			return; // already removed and given back to the arena
+		BipartiteEdge t = e.twin();
+		if(!e.node1.unlink(e))
+			return;
+		if(t != null)
+			t.node1.unlink(t);
+		if(e.node1.getConnected() == e.node2)
+			e.node1.connect(null);
+		if(edgeSet!=null && !edgeSet.remove(e.node1, e.node2))
+			edgeSet.remove(e.node2, e.node1);
+		edgeArena.put(e);
+		if(t != null)
+			edgeArena.put(t);
+	}
+	
+	/**
+	 * Removes the edge between an equation and a variable.
+	 * 
+	 * <p>The edge is searched in the adjacency list of the equation, then removed
+	 * in constant time, see {@link #removeEdge(BipartiteEdge)}.
+	 * 
+	 * @return <code>false</code> if there is no such edge
+	 */
+	public boolean removeEdge(BipartiteNode ve, BipartiteNode vv){
+		for(BipartiteEdge e=ve.edges; e!=null; e=e.next){
+			if(e.node2 == vv){
+				removeEdge(e);
+				return true;
+			}
+		}
+		for(BipartiteEdge e=ve.unlinked; e!=null; e=e.next){
+			if(e.node2 == vv){
+				removeEdge(e);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes an equation and all its edges from the graph.
+	 * 
+	 * <p>Each edge is removed in constant time (see {@link #removeEdge(BipartiteEdge)}) and
+	 * the equation is found in the list of equations in constant time, by the position
+	 * recorded in the node store. It is taken out of the list keeping the order of the others,
+	 * so the equations after it are shifted back: the removal costs linear time in the number
+	 * of equations after it (a copy of the array of the list), which is cheap unless many
+	 * equations are removed from the start of a large graph.
+	 * The variable matched with the equation becomes unmatched.
+	 * The derivative links of the equation are kept, so the labels of its derivatives do not change.
+	 * 
+	 * <p>This is useful for model edits, for instance to drop the specification equations
+	 * that fix some variables, without building the graph again.
+	 * 
+	 * <p><b>NOTE</b> in the {@link #DIFF_DERIVED} mode the equations derived from this one
+	 * lose their edges as well.
+	 * 
+	 * @param ve an equation of the graph (including the pending differentiated ones)
+	 * @throws IllegalArgumentException if the node is not an equation of the graph
+	 */
+	public void removeEquation(BipartiteNode ve){
+		checkNoTransaction();
+		int k = store().indexOf(Ve, ve);
+		if(k >= 0){
+			remove(Ve, k);
+			eqNames.remove(ve, k);
+			if(k < eqsInStore)
+				--eqsInStore;
+		}
+		else if(!VeDiff.remove(ve))
+			throw new IllegalArgumentException("Not an equation of the graph: " + ve);
+		removeEdges(ve);
+	}
+	
+	/**
+	 * Removes a variable and all its edges from the graph.
+	 * 
+	 * <p>As for the equations, the variable is found in constant time and the removal costs
+	 * linear time in the number of variables after it.
+	 * 
+	 * @param vv a variable of the graph (including the pending differentiated and the
+	 * ones taken out by {@link #compact()})
+	 * @throws IllegalArgumentException if the node is not a variable of the graph
+	 * @see #removeEquation(BipartiteNode)
+	 */
+	public void removeVariable(BipartiteNode vv){
+		checkNoTransaction();
+		int k = store().indexOf(Vv, vv);
+		if(k >= 0){
+			remove(Vv, k);
+			varNames.remove(vv, k);
+			if(k < varsInStore)
+				--varsInStore;
+		}
+		else if(!VvDiff.remove(vv) && !VvRemoved.remove(vv))
+			throw new IllegalArgumentException("Not a variable of the graph: " + vv);
+		removeEdges(vv);
+	}
+	
+	/**
+	 * Removes the node at the given position of a list, updating the positions of the
+	 * nodes shifted back.
+	 */
+	private void remove(List<BipartiteNode> list, int k){
+		list.remove(k);
+		store().positions(list, k);
+	}
+	
+	private void removeEdges(BipartiteNode n){
+		n.connect(null);
+		while(n.edges != null)
+			removeEdge(n.edges);
+		while(n.unlinked != null)
+			removeEdge(n.unlinked);
+	}
+
+	/**
+	 * Takes the variables flagged as {@link Algorithms#FLAG_DELETED} out of the graph.
+	 * 
+	 * <p>The algorithms like {@link Algorithms#Pantelides(BipartiteGraph, boolean)} only flag
+	 * the variables they remove, so these stay in the list of variables and in the edges of
+	 * the equations and are visited (and skipped) by every later search. After many steps on
+	 * a large system most of the edges visited can be of deleted variables.
+	 * This function unlinks the deleted variables from {@link #getVars()} and from the edges of
+	 * the equations, so they are no longer visited at all.
+	 * 
+	 * <p>The removed variables are kept in {@link #getRemovedVars()} with their own edges,
+	 * flags and connection, so they can still be reported. The edges unlinked from an equation
+	 * are still followed when the equation is differentiated, hence the derivatives of the
+	 * removed variables are placed in the differentiated equations as before.
+	 * 
+	 * <p><b>NOTE</b> in the {@link #DIFF_DERIVED} mode a deleted variable whose derivative
+	 * has derived edges is not removed, since these edges are read from the edges of the
+	 * original equations.
+	 * 
+	 * @return the number of variables removed
+	 * @see #setCompactThreshold(double)
+	 */
+	public int compact(){
+		checkNoTransaction();
+		NodeStore s = store();
+		int first = VvRemoved.size();
+		boolean removed[] = new boolean[s.size];
+		List<BipartiteNode> kept = new ArrayList<BipartiteNode>(Vv.size());
+		for(BipartiteNode vv : Vv){
+			if(vv!=null && vv.hasFlag(Algorithms.FLAG_DELETED) &&
+					!(s.lifted!=null && s.diff[vv.id]>=0 && s.lifted[s.diff[vv.id]])){
+				removed[vv.id] = true;
+				VvRemoved.add(vv);
+			}
+			else
+				kept.add(vv);
+		}
+		int n = VvRemoved.size() - first;
+		if(n == 0)
+			return 0;
+		
+		// filter the edges of each equation touched only once
+		boolean touched[] = new boolean[s.size];
+		for(int k=first; k<VvRemoved.size(); ++k){
+			for(BipartiteEdge ed=VvRemoved.get(k).edges; ed!=null; ed=ed.next){
+				BipartiteNode ve = ed.node2;
+				if(touched[ve.id])
+					continue;
+				touched[ve.id] = true;
+				BipartiteEdge next;
+				for(BipartiteEdge e=ve.edges; e!=null; e=next){
+					next = e.next;
+					if(!removed[e.node2.id])
+						continue;
+					ve.unlink(e);
+					e.next = ve.unlinked;
+					if(e.next != null)
+						e.next.prev = e;
+					ve.unlinked = e;
+				}
+			}
+		}
+		Vv.clear();
+		Vv.addAll(kept);
+		varsInStore = Vv.size();
+		varNames.clear();
+		if(edgeSet != null)
+			edgeSet = new EdgeSet(this);
+		return n;
+	}
+	
+	/**
+	 * @return the variables taken out of the graph by {@link #compact()}, in the order they were removed
+	 */
+	public List<BipartiteNode> getRemovedVars(){
+		return VvRemoved;
+	}
+	
+	/**
+	 * Sets when the graph is compacted automatically by the algorithms that delete variables
+	 * ({@link Algorithms#Pantelides(BipartiteGraph, boolean)} and {@link Algorithms#Pantelides2(BipartiteGraph, boolean)}).
+	 * 
+	 * <p>The graph is compacted when the fraction of deleted variables still in the list
+	 * of variables is greater than the threshold. The default, <code>1</code>, never compacts.
+	 * 
+	 * @param threshold the fraction of deleted variables, between 0 and 1
+	 * @see #compact()
+	 */
+	public void setCompactThreshold(double threshold){
+		compactThreshold = threshold;
+	}
+	
+	/**
+	 * @return the fraction of deleted variables above which the graph is compacted
+	 * @see #setCompactThreshold(double)
+	 */
+	public double getCompactThreshold(){
+		return compactThreshold;
+	}
+
+	/**
+	 * Attaches labels to the equations and variables, by their positions in the lists.
+	 *
+	 * <p>This is mostly for anonymous graphs, built by a {@link GraphBuilder} without labels,
+	 * whose nodes are known only by their numbers (see {@link BipartiteNode#getNumber()}):
+	 * the structure is built and analyzed from integer arrays and the names are attached
+	 * only when needed, e.g. before exporting the graph or a result. String labels are
+	 * copied into the label arena, other objects become the node objects. A <code>null</code>
+	 * label keeps the current one and the arrays may be shorter than the lists.
+	 *
+	 * @param eqLabels the labels of the equations or <code>null</code>
+	 * @param varLabels the labels of the variables or <code>null</code>
+	 */
+	public void setLabels(Object[] eqLabels, Object[] varLabels){
+		checkNoTransaction();
+		NodeStore s = store();
+		setLabels(s, Ve, eqLabels);
+		setLabels(s, Vv, varLabels);
+		eqNames.clear();
+		varNames.clear();
+	}
+
+	private static void setLabels(NodeStore s, List<BipartiteNode> list, Object[] labels){
+		if(labels == null)
+			return;
+		for(int i=0, n=Math.min(labels.length, list.size()); i<n; ++i){
+			BipartiteNode node = list.get(i);
+			if(labels[i]==null || node==null)
+				continue;
+			if(labels[i] instanceof String){
+				node.object = null;
+				s.setLabel(node.id, (String)labels[i]);
+			}
+			else
+				node.object = labels[i];
+		}
+	}
+
+	/**
+	 * Puts the equations and variables in a new order, as given by an {@link Ordering}.
+	 *
+	 * <p>The lists of equations and variables are permuted and the nodes are renumbered in
+	 * the store so that the <code>k</code>-th equation and the <code>k</code>-th variable sit
+	 * next to each other. With an ordering such as {@link Ordering#reverseCuthillMcKee(CompactGraph)}
+	 * the nodes visited one after the other by the searches are then close in memory.
+	 * The pending differentiated nodes and the removed variables keep their relative order,
+	 * after the others.
+	 *
+	 * <p>The edges are created again, in the new order of the nodes, from a new slab of the
+	 * edge arena (see {@link #getEdgeCapacity()}), so the edges followed by the searches
+	 * on the nodes ({@link Algorithms#MaximumMatching(BipartiteGraph)}, {@link Tarjan}, etc.)
+	 * are close in memory as well. Each edge list keeps its order. The edges returned
+	 * before by {@link BipartiteNode#getEdges()} should not be used anymore.
+	 *
+	 * <p>The matching, flags and derivative links stay with the nodes. Only the positions
+	 * change, so a {@link CompactGraph} taken before must be taken again.
+	 *
+	 * @param P the ordering, with the original positions relative to the current lists
+	 * @throws IllegalArgumentException if the sizes of the ordering do not match the graph
+	 */
+	public void reorder(Ordering P){
+		int ne = Ve.size(), nv = Vv.size();
+		if(P.ne()!=ne || P.nv()!=nv)
+			throw new IllegalArgumentException("The ordering is for " + P.ne() + " equations and "
+					+ P.nv() + " variables");
+		checkNoTransaction();
+		NodeStore s = store();
+		List<BipartiteNode> eqs = new ArrayList<BipartiteNode>(ne);
+		for(int k=0; k<ne; ++k)
+			eqs.add(Ve.get(P.oldEq(k)));
+		List<BipartiteNode> vars = new ArrayList<BipartiteNode>(nv);
+		for(int k=0; k<nv; ++k)
+			vars.add(Vv.get(P.oldVar(k)));
+		Ve.clear();
+		Ve.addAll(eqs);
+		Vv.clear();
+		Vv.addAll(vars);
+
+		// interleave the equations and variables, then the other nodes
+		int newId[] = new int[s.size];
+		for(int i=0; i<newId.length; ++i)
+			newId[i] = -1;
+		int id = 0;
+		for(int k=0; k<ne || k<nv; ++k){
+			BipartiteNode n = k<ne ? Ve.get(k) : null;
+			if(n!=null && newId[n.id]<0)
+				newId[n.id] = id++;
+			n = k<nv ? Vv.get(k) : null;
+			if(n!=null && newId[n.id]<0)
+				newId[n.id] = id++;
+		}
+		for(int i=0; i<newId.length; ++i){
+			if(newId[i] < 0)
+				newId[i] = id++;
+		}
+		s.permute(newId);
+		// the old edges (and the free ones) are left to the garbage collector
+		edgeArena = new EdgeArena();
+		copyEdges(s, s.nodes, edgeArena);
+		// the first label wins on duplicates, so the positions matter
+		eqNames.clear();
+		varNames.clear();
+	}
+	
+	/**
+	 * Starts a transaction: the changes made to the graph from now on can be undone
+	 * by {@link #rollback()}.
+	 * 
+	 * <p>The changes recorded are the ones made by the structural differentiation
+	 * ({@link #diffEquation(BipartiteNode)}, {@link #diffVariable(BipartiteNode)} and
+	 * {@link #applyDiffs()}), the flags, the matching ({@link BipartiteNode#connect(BipartiteNode)})
+	 * and the nodes and edges added by {@link #addEdge(String, String)}. So one step of an
+	 * algorithm can be tried and undone:
+	 * <blockquote><pre>
+	 * G.begin();
+	 * Algorithms.Pantelides(G, true);
+	 * ...
+	 * G.rollback(); // as before the step
+	 * </pre></blockquote>
+	 * Only the old state of the changed nodes is kept, so the cost of the rollback
+	 * is proportional to the changes and not to the size of the graph.
+	 * The nodes created inside the transaction are dropped by the rollback and must not
+	 * be used anymore.
+	 * 
+	 * <p>Transactions can be nested, each {@link #rollback()} or {@link #commit()} closes
+	 * the innermost one.
+	 * 
+	 * <p><b>NOTE</b> the functions that remove nodes or edges ({@link #removeEdge(BipartiteEdge)},
+	 * {@link #compact()}, etc.) and {@link #reorder(Ordering)} cannot be used inside a transaction.
+	 * The edges added directly by {@link BipartiteNode#addEdge(BipartiteNode)} are not recorded.
+	 */
+	public void begin(){
+		NodeStore s = store();
+		if(s.log == null)
+			s.log = new UndoLog();
+		s.log.begin(this, s);
+	}
+	
+	/**
+	 * Undoes all changes made since the last {@link #begin()} and closes the transaction.
+	 * @throws IllegalStateException if there is no open transaction
+	 */
+	public void rollback(){
+		NodeStore s = store();
+		if(s.log == null)
+			throw new IllegalStateException("No transaction");
+		if(s.log.rollback(this, s))
+			s.log = null;
+		if(searchStack != null)
+			searchStack.forget(s); // the visits are not logged
+		eqsInStore = Ve.size();
+		varsInStore = Vv.size();
+		eqNames.clear();
+		varNames.clear();
+	}
+	
+	/**
+	 * Keeps the changes made since the last {@link #begin()} and closes the transaction.
+	 * The changes can still be undone by the rollback of an outer transaction.
+	 * @throws IllegalStateException if there is no open transaction
+	 */
+	public void commit(){
+		NodeStore s = store.resolve();
+		if(s.log == null)
+			throw new IllegalStateException("No transaction");
+		if(s.log.commit())
+			s.log = null;
+	}
+	
+	/**
+	 * @return the number of open transactions
+	 * @see #begin()
+	 */
+	public int getTransactionDepth(){
+		UndoLog log = store.resolve().log;
+		return log==null ? 0 : log.depth();
+	}
+	
+	private void checkNoTransaction(){
+		if(store.resolve().log != null)
+			throw new IllegalStateException("Not allowed inside a transaction");
+	}
+	
+	/**
+	 * Compacts the graph if the fraction of deleted variables is above the threshold.
+	 * @see #setCompactThreshold(double)
+	 */
+	void autoCompact(){
+		if(compactThreshold>=1 || store.resolve().log!=null)
+			return;
+		int deleted = 0;
+		for(BipartiteNode vv : Vv){
+			if(vv!=null && vv.hasFlag(Algorithms.FLAG_DELETED))
+				++deleted;
+		}
+		if(deleted > compactThreshold*Vv.size())
+			compact();
+	}
+
 	/**
 	 * Clear the current matching.
 	 * This function clear all connections of all V_e Node's of the Graph.
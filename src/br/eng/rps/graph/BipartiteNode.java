@@ -1,8 +1,5 @@
 package br.eng.rps.graph;
 
-import java.util.ArrayList;
-import java.util.Collection;
-
 /**
  * Class representing a node in a bipartite graph.
  * 
@@ -15,26 +12,26 @@ import java.util.Collection;
  * the matching is set by {@link #connect(BipartiteNode)}.
  * The current connection can be retrieved by {@link #getConnected()}.
  * 
+ * <p>The state of the node (flags, connection, derivative links and Tarjan indices)
+ * is not stored in the node itself but in the arrays of a {@link NodeStore} shared
+ * with the other nodes of the graph, indexed by the node id.
+ * 
  * @author rafael
  */
 public class BipartiteNode {
-	/// Flag of the node.
-	int flag;
-	/// Node connected with this one.
-	BipartiteNode connected;
-	/// The differentiated version of this Node if some.
-	BipartiteNode diff;
-	/// The original version of this Node (when it is a diff).
-	BipartiteNode orig;
+	/// The store holding the state of this node.
+	NodeStore store;
+	/// The id of this node in the store.
+	int id;
 	/// All edges of this Node.
 	BipartiteEdge edges;
+	/// Edges to variables removed by BipartiteGraph#compact(), only followed by the differentiation.
+	BipartiteEdge unlinked;
+	/// The list of own and derived edges (see getEdges()) built when the store had the edge version derivedVersion.
+	BipartiteEdge derived;
+	int derivedVersion = -1;
 	/// The node object.
 	Object object;
-	
-	/** Tarjan depth flag. */
-	int depth = -1;
-	/** Tarjan low depth flag. */
-	int lowDepth = -1;
 
 	/**
 	 * Constructor for a given object and original node.
@@ -48,12 +45,7 @@ public class BipartiteNode {
 	 * @see #addEdge(BipartiteNode) {@link #connect(BipartiteNode)} {@link #getConnected()}
 	 */
 	public BipartiteNode(Object object, BipartiteNode orig){
-		flag = 0;
-		connected = diff = null;
-		this.orig = orig;
-		this.object = object;
-		if(orig!=null)
-			orig.diff = this;
+		this(orig==null ? new NodeStore(1) : orig.store, object, orig);
 	}
 	
 	/**
@@ -64,12 +56,150 @@ public class BipartiteNode {
 		this(object, null);
 	}
 	
+	/**
+	 * Creates a node directly in the given store.
+	 * @param store the store where to put the node (it should be the store of <code>orig</code>)
+	 * @param object the node object
+	 * @param orig the original node when this is a differential node
+	 */
+	BipartiteNode(NodeStore store, Object object, BipartiteNode orig){
+		this.object = object;
+		this.store = store;
+		this.id = store.add(this);
+		if(orig!=null){
+			if(orig.store != this.store)
+				NodeStore.union(this.store, orig.store);
+			this.store.orig[id] = orig.id;
+			this.store.setDiff(orig.id, id);
+		}
+	}
+	
+	/**
+	 * Looks up a node by id in the store of this node.
+	 */
+	private BipartiteNode node(int i){
+		return i<0 ? null : store.nodes[i];
+	}
+	
+	/**
+	 * Creates a node in the given store with a label kept in the label arena of the store.
+	 * 
+	 * <p>String labels are copied into the arena, so no {@link String} is kept for the node,
+	 * other objects are kept as the node object.
+	 * 
+	 * @param store the store where to put the node
+	 * @param label the node label (or object)
+	 */
+	static BipartiteNode labeled(NodeStore store, Object label){
+		if(!(label instanceof String))
+			return new BipartiteNode(store, label, null);
+		BipartiteNode n = new BipartiteNode(store, null, null);
+		n.store.setLabel(n.id, (String)label);
+		return n;
+	}
+	
 	public String toString(){
-		return object==null ? "null" : object.toString();
+		Object o = getObject();
+		return o==null ? "null" : o.toString();
 	}
 
+	/**
+	 * Returns the node object.
+	 * 
+	 * <p>If the node has a label in the arena of its store it is decoded into a new string.
+	 * A node of an anonymous graph is labeled by its number, as <code>e12</code> or <code>v7</code>,
+	 * see {@link #getNumber()}.
+	 * A differentiated node without object or label gets the label of its first original
+	 * version with one, followed by one <code>'</code> for each differentiation.
+	 * These labels are built on each call.
+	 * 
+	 * @return the node object
+	 */
 	public Object getObject(){
-		return object;
+		if(object != null)
+			return object;
+		NodeStore s = store;
+		int k = labelRoot();
+		String label = k<0 ? null : s.nodes[k].object!=null ? s.nodes[k].object.toString()
+				: s.hasLabel(k) ? s.label(k) : s.numberLabel(k);
+		if(label==null || k==id)
+			return label;
+		StringBuilder b = new StringBuilder(label);
+		for(; k!=id; k=s.diff[k])
+			b.append('\'');
+		return b.toString();
+	}
+	
+	/**
+	 * Returns the number of a node of an anonymous graph.
+	 * 
+	 * <p>The nodes created by a {@link GraphBuilder} without a label are numbered by
+	 * their index, <code>0..ne-1</code> for the equations and <code>0..nv-1</code> for the
+	 * variables, see {@link BipartiteGraph#setLabels(Object[], Object[])}.
+	 * 
+	 * @return the number of the node or -1 if it is not numbered (it has a label or object)
+	 */
+	public int getNumber(){
+		return object==null ? store.number(id) : -1;
+	}
+	
+	/**
+	 * Returns the node whose label is the base of the label of this node.
+	 * @return the id of this node or of an original version of it, or -1 if there is no label
+	 */
+	private int labelRoot(){
+		NodeStore s = store;
+		int k = id;
+		while(s.nodes[k].object==null && !s.hasLabel(k) && s.number(k)<0){
+			k = s.orig[k];
+			if(k < 0)
+				return -1;
+		}
+		return k;
+	}
+	
+	/**
+	 * Computes the hash code of {@link #toString()} without building the string.
+	 */
+	int labelHash(){
+		NodeStore s = store;
+		int k = labelRoot(), h;
+		if(k < 0)
+			return "null".hashCode();
+		if(s.nodes[k].object != null)
+			h = s.nodes[k].object.toString().hashCode();
+		else if(s.hasLabel(k))
+			h = s.labelHash(k, 0);
+		else
+			h = s.numberHash(k, 0);
+		for(; k!=id; k=s.diff[k])
+			h = 31*h + '\'';
+		return h;
+	}
+	
+	/**
+	 * Checks if {@link #toString()} equals the given label, without building the string.
+	 */
+	boolean labelEquals(String label){
+		NodeStore s = store;
+		int k = labelRoot(), n;
+		if(k < 0)
+			return label.equals("null");
+		if(s.nodes[k].object != null){
+			String base = s.nodes[k].object.toString();
+			n = label.startsWith(base) ? base.length() : -1;
+		}
+		else if(s.hasLabel(k))
+			n = s.labelMatch(k, label);
+		else
+			n = s.numberMatch(k, label);
+		if(n < 0)
+			return false;
+		for(; k!=id; k=s.diff[k]){
+			if(n>=label.length() || label.charAt(n++)!='\'')
+				return false;
+		}
+		return n == label.length();
 	}
 
 	/** Add a new edge between two nodes (this and the @a node).
@@ -77,15 +207,59 @@ public class BipartiteNode {
 	 * in both.
 	 */
 	public void addEdge(BipartiteNode node){
-		if(!findEdge(node))
-			edges = new BipartiteEdge(this, node, edges);
+		addEdge(node, true);
+	}
+	
+	/**
+	 * Add a new edge between two nodes (this and the given node).
+	 * 
+	 * <p>If <code>check</code> is <code>false</code> the adjacency lists are not
+	 * scanned for an existing edge, so the edge is added in constant time.
+	 * In this case the caller must guarantee that the edge is not in the graph yet.
+	 * 
+	 * @param node the node to connect with
+	 * @param check if <code>true</code> an existing edge is not added again
+	 * @see BipartiteGraph#setEdgeCheck(int)
+	 */
+	public void addEdge(BipartiteNode node, boolean check){
+		if(node.store != store)
+			NodeStore.union(store, node.store);
+		BipartiteEdge e1 = null, e2 = null;
+		if(!check || !findEdge(node))
+			e1 = edges = new BipartiteEdge(this, node, edges);
 
-		if(!node.findEdge(this))
-			node.edges = new BipartiteEdge(node, this, node.edges);
+		if(!check || !node.findEdge(this))
+			e2 = node.edges = new BipartiteEdge(node, this, node.edges);
+		if(e1!=null && e2!=null){
+			e1.twin = e2;
+			e2.twin = e1;
+		}
+		++store.edgeVersion;
+	}
+	
+	/**
+	 * Unlinks the given edge of this node from its list, in constant time.
+	 * @param e an edge with this node as node1
+	 * @return <code>false</code> if the edge was not linked
+	 */
+	boolean unlink(BipartiteEdge e){
+		if(e.prev != null)
+			e.prev.next = e.next;
+		else if(edges == e)
+			edges = e.next;
+		else if(unlinked == e)
+			unlinked = e.next;
+		else
+			return false;
+		if(e.next != null)
+			e.next.prev = e.prev;
+		e.next = e.prev = null;
+		++store.edgeVersion;
+		return true;
 	}
 	
 	public boolean findEdge(BipartiteNode n){
-		BipartiteEdge e = edges;
+		BipartiteEdge e = getEdges();
 		while(e!=null){
 			if(e.node2 == n)
 				return true;
@@ -108,11 +282,18 @@ public class BipartiteNode {
 	 * @see #getConnected()
 	 */
 	public void connect(BipartiteNode node){
-		if(connected != null)
-			connected.connected = null;
-		connected = node;
-		if(node != null)
-			node.connected = this;		
+		if(node != null && node.store != store)
+			NodeStore.union(store, node.store);
+		NodeStore s = store;
+		int m = s.mate[id];
+		if(m >= 0)
+			s.setMate(m, -1);
+		if(node != null){
+			s.setMate(id, node.id);
+			s.setMate(node.id, id);
+		}
+		else
+			s.setMate(id, -1);
 	}
 
 	/**
@@ -122,7 +303,7 @@ public class BipartiteNode {
 	 * @see removeFlag hasFlag
 	 */
 	void setFlag(int f){
-		flag |= f;
+		store.setFlag(id, store.flag[id] | f);
 	}
 	/**
 	 * Removes the given bit flag of the node.
@@ -131,7 +312,7 @@ public class BipartiteNode {
 	 * @see #setFlag(int) #hasFlag(int)
 	 */
 	public void removeFlag(int f){
-		flag &= ~f;
+		store.setFlag(id, store.flag[id] & ~f);
 	}
 	
 	/**
@@ -141,14 +322,28 @@ public class BipartiteNode {
 	 * @see #setFlag(int)
 	 */
 	public boolean hasFlag(int f) {
-		return (flag&f)!=0;
+		return (store.flag[id]&f)!=0;
 	}
 
 	/**
+	 * Returns the edges of this node.
+	 * 
+	 * <p>If the node has edges derived from other nodes (see {@link BipartiteGraph#DIFF_DERIVED})
+	 * they are listed after the own edges of the node and are created while the list is followed
+	 * for the first time. The list is kept and followed again by the next calls, until the edges
+	 * or the derivatives of the graph change.
+	 * 
 	 * @return the edges of this node
 	 */
 	public BipartiteEdge getEdges(){
-		return edges;
+		NodeStore s = store;
+		if(s.base==null || (s.base[id]<0 && !s.lifted[id]))
+			return edges;
+		if(derivedVersion != s.edgeVersion){
+			derived = DerivedEdge.first(this);
+			derivedVersion = s.edgeVersion;
+		}
+		return derived;
 	}
 	
 	/**
@@ -160,14 +355,14 @@ public class BipartiteNode {
 	 * @see #getOrig()
 	 */
 	public BipartiteNode getDiff(){
-		return diff;
+		return node(store.diff[id]);
 	}
 
 	/**
 	 * @return the connected node
 	 */
 	public BipartiteNode getConnected(){
-		return connected;
+		return node(store.mate[id]);
 	}
 	/**
 	 * Get the original (integral) version of a differential node.
@@ -178,17 +373,22 @@ public class BipartiteNode {
 	 * @see #differentiate() #getDiff()
 	 */
 	public BipartiteNode getOrig(){
-		return orig;
+		return node(store.orig[id]);
 	}
 
 	/**
 	 * Differentiates the node.
+	 * 
+	 * <p>The new node has no object, its label is built from the label of this
+	 * one on demand, see {@link #getObject()}.
+	 * 
 	 * @return the differential of the current node
 	 * @see getDiff getOrig
 	 */
 	protected BipartiteNode differentiate(){
+		BipartiteNode diff = getDiff();
 		if(diff!=null)
 			return diff;
-		return new BipartiteNode(object==null ? null : object.toString()+'\'', this);
+		return new BipartiteNode(store, null, this);
 	}
 }
@@ -0,0 +1,228 @@
+package br.eng.rps.graph;
+
+import java.util.List;
+
+/**
+ * Immutable compressed sparse row (CSR) snapshot of a {@link BipartiteGraph}.
+ *
+ * <p>The adjacency of both partitions is stored in plain <code>int</code> arrays:
+ * the neighbours of the equation <code>i</code> are the variable indices
+ * <code>eqAdj[eqStart[i]]</code> to <code>eqAdj[eqStart[i+1]-1]</code> and, in the same
+ * way, the neighbours of the variable <code>j</code> are the equation indices
+ * stored in <code>varAdj</code> between <code>varStart[j]</code> and <code>varStart[j+1]</code>.
+ * The indices are the positions of the nodes in {@link BipartiteGraph#getEqs()}
+ * and {@link BipartiteGraph#getVars()} at the time the snapshot was taken and the
+ * neighbours keep the order of the {@link BipartiteNode#getEdges()} lists.
+ *
+ * <p>A snapshot is obtained with {@link BipartiteGraph#freeze()} and is meant to
+ * be used by the analysis algorithms that do not change the structure of the graph,
+ * see {@link Algorithms#MaximumMatching(CompactGraph)},
+ * {@link Algorithms#DulmageMendelshon(CompactGraph, int[])} and {@link Tarjan#tarjan(CompactGraph)}.
+ * These algorithms read the current matching from the nodes and write their results back
+ * into them, so the snapshot remains valid as long as no nodes or edges are added to the
+ * original graph. To keep the matching apart from the nodes use a {@link Matching}, see
+ * {@link #getMatching()}.
+ *
+ * <p>The nodes are found by their ids, so a snapshot cannot be used after the nodes were
+ * renumbered (by {@link BipartiteGraph#reorder(Ordering)} or by merging the store of the graph
+ * into a larger one): {@link #indexOf(BipartiteNode)}, and the operations of the {@link Matching}s
+ * reading or writing the nodes, throw an {@link IllegalStateException}.
+ *
+ * @author rafael
+ */
+public class CompactGraph {
+	/** The graph this snapshot was taken from */
+	final BipartiteGraph graph;
+	/** Equation nodes, by index */
+	final BipartiteNode[] eqs;
+	/** Variable nodes, by index */
+	final BipartiteNode[] vars;
+	/** Row offsets of the equations in {@link #eqAdj} (length ne+1) */
+	final int[] eqStart;
+	/** Variable indices adjacent to each equation */
+	final int[] eqAdj;
+	/** Row offsets of the variables in {@link #varAdj} (length nv+1) */
+	final int[] varStart;
+	/** Equation indices adjacent to each variable */
+	final int[] varAdj;
+	/** Variables flagged as {@link Algorithms#FLAG_DELETED} when the snapshot was taken */
+	final boolean[] deleted;
+	/** Variables with a differentiated version when the snapshot was taken */
+	final boolean[] hasDiff;
+	/** Store of the nodes of the graph */
+	private final NodeStore store;
+	/** The {@link NodeStore#idVersion} of the store when the snapshot was taken */
+	private final int idVersion;
+	/** Index of each node in its partition, by node id (or -1) */
+	private final int[] index;
+
+	/**
+	 * Creates the snapshot of the given graph.
+	 * @param G the graph to be compacted
+	 * @see BipartiteGraph#freeze()
+	 */
+	CompactGraph(BipartiteGraph G){
+		graph = G;
+		store = G.store();
+		idVersion = store.idVersion;
+		List<BipartiteNode> Ve = G.getEqs();
+		List<BipartiteNode> Vv = G.getVars();
+		int ne = Ve.size(), nv = Vv.size();
+
+		eqs = Ve.toArray(new BipartiteNode[ne]);
+		vars = Vv.toArray(new BipartiteNode[nv]);
+		index = new int[store.size];
+		deleted = new boolean[nv];
+		hasDiff = new boolean[nv];
+		for(int k=0; k<index.length; ++k)
+			index[k] = -1;
+		for(int i=0; i<ne; ++i)
+			index[eqs[i].id] = i;
+		for(int j=0; j<nv; ++j){
+			index[vars[j].id] = j;
+			deleted[j] = vars[j].hasFlag(Algorithms.FLAG_DELETED);
+			hasDiff[j] = vars[j].getDiff() != null;
+		}
+
+		// count the degrees (edges to nodes not in the graph are ignored)
+		eqStart = new int[ne+1];
+		varStart = new int[nv+1];
+		int nnz = 0;
+		for(int i=0; i<ne; ++i){
+			for(BipartiteEdge ed=eqs[i].getEdges(); ed!=null; ed=ed.getNext()){
+				int j = indexOf(ed.getNode2());
+				if(j>=0){
+					++eqStart[i+1];
+					++varStart[j+1];
+					++nnz;
+				}
+			}
+		}
+		for(int i=0; i<ne; ++i)
+			eqStart[i+1] += eqStart[i];
+		for(int j=0; j<nv; ++j)
+			varStart[j+1] += varStart[j];
+
+		// fill both sides in a single pass over the equation rows
+		eqAdj = new int[nnz];
+		varAdj = new int[nnz];
+		int varPos[] = new int[nv];
+		System.arraycopy(varStart, 0, varPos, 0, nv);
+		int p = 0;
+		for(int i=0; i<ne; ++i){
+			for(BipartiteEdge ed=eqs[i].getEdges(); ed!=null; ed=ed.getNext()){
+				int j = indexOf(ed.getNode2());
+				if(j>=0){
+					eqAdj[p++] = j;
+					varAdj[varPos[j]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the graph this snapshot was taken from
+	 */
+	public BipartiteGraph getGraph(){
+		return graph;
+	}
+
+	/**
+	 * @return The number of V_e nodes in the snapshot.
+	 */
+	public int ne(){
+		return eqs.length;
+	}
+
+	/**
+	 * @return The number of V_v nodes in the snapshot.
+	 */
+	public int nv(){
+		return vars.length;
+	}
+
+	/**
+	 * @return The number of edges in the snapshot.
+	 */
+	public int nnz(){
+		return eqAdj.length;
+	}
+
+	/**
+	 * @param i the equation index
+	 * @return the equation node at the given index
+	 */
+	public BipartiteNode getEq(int i){
+		return eqs[i];
+	}
+
+	/**
+	 * @param j the variable index
+	 * @return the variable node at the given index
+	 */
+	public BipartiteNode getVar(int j){
+		return vars[j];
+	}
+
+	/**
+	 * Returns the index of a node in its partition.
+	 * @param n the node to look for
+	 * @return the index of the node or -1 if the node is not in the snapshot
+	 * @throws IllegalStateException if the nodes were renumbered after the snapshot was taken
+	 */
+	public int indexOf(BipartiteNode n){
+		if(!store.sameIds(idVersion))
+			throw new IllegalStateException("The nodes were renumbered, the snapshot must be taken again");
+		if(n==null || n.store!=store || n.id>=index.length)
+			return -1;
+		return index[n.id];
+	}
+
+	/**
+	 * Returns the matching currently stored in the nodes.
+	 *
+	 * <p>The returned {@link Matching} is a copy, it is not changed by later changes
+	 * in the nodes and vice versa, see {@link Matching#apply()}.
+	 *
+	 * @return the matching of the nodes
+	 */
+	public Matching getMatching(){
+		Matching M = new Matching(this);
+		readMatching(M.eqMate, M.varMate);
+		return M;
+	}
+
+	/**
+	 * Reads the matching currently stored in the nodes.
+	 * @param eqMate where to put the variable index matched with each equation (or -1)
+	 * @param varMate where to put the equation index matched with each variable (or -1)
+	 */
+	void readMatching(int[] eqMate, int[] varMate){
+		for(int j=0; j<vars.length; ++j)
+			varMate[j] = -1;
+		for(int i=0; i<eqs.length; ++i){
+			int j = indexOf(eqs[i].getConnected());
+			eqMate[i] = j;
+			if(j>=0)
+				varMate[j] = i;
+		}
+	}
+
+	/**
+	 * Stores the given matching into the nodes.
+	 *
+	 * <p>Only the equations whose connection changed are touched. They are
+	 * disconnected first so that a variable passed from one equation to another
+	 * is not unlinked by the later reconnection of its previous equation.
+	 */
+	void writeMatching(int[] eqMate){
+		for(int i=0; i<eqs.length; ++i){
+			if(indexOf(eqs[i].getConnected()) != eqMate[i])
+				eqs[i].connect(null);
+		}
+		for(int i=0; i<eqs.length; ++i){
+			if(eqMate[i]>=0 && eqs[i].getConnected()==null)
+				eqs[i].connect(vars[eqMate[i]]);
+		}
+	}
+}
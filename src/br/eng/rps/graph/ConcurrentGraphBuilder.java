@@ -0,0 +1,243 @@
+package br.eng.rps.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builder of {@link BipartiteGraph}s that can be fed by many threads at once.
+ *
+ * <p>The edges are given by labels, as in {@link BipartiteGraph#addEdge(String, String)},
+ * but through {@link Unit}s: each thread adds its edges to its own unit, so nothing is
+ * locked while the edges are added except for the (concurrent) table interning the labels.
+ * At {@link #build()} the units are merged in the order of their keys, hence the nodes
+ * get the same positions in the resulting graph as if all edges were added sequentially,
+ * unit by unit, no matter which thread added what:
+ * <blockquote><pre>
+ * final ConcurrentGraphBuilder b = new ConcurrentGraphBuilder("flowsheet");
+ * // in each thread, one unit per unit operation
+ * ConcurrentGraphBuilder.Unit u = b.unit(k);
+ * u.addEdge("f_1", "x_1"); u.addEdge("f_1", "x_2'");
+ * // after all threads finished
+ * BipartiteGraph G = b.build();
+ * </pre></blockquote>
+ * As in {@link BipartiteGraph#addEdge(String, String)}, variable labels ending with
+ * <code>'</code> are the differentiated versions of the variable without it.
+ *
+ * @author rafael
+ */
+public class ConcurrentGraphBuilder {
+	/** Provisional id of each equation label */
+	private final ConcurrentHashMap<String, Integer> eqIds = new ConcurrentHashMap<String, Integer>();
+	/** Provisional id of each variable label */
+	private final ConcurrentHashMap<String, Integer> varIds = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger nextEq = new AtomicInteger();
+	private final AtomicInteger nextVar = new AtomicInteger();
+	/** The units by key */
+	private final ConcurrentHashMap<Integer, Unit> units = new ConcurrentHashMap<Integer, Unit>();
+	private final String name;
+
+	/**
+	 * Buffer of edges to be filled by a single thread.
+	 *
+	 * <p>A unit is not thread safe, it should be used by only one thread at a time.
+	 */
+	public final class Unit {
+		private final int key;
+		private int[] eqs = new int[64];
+		private int[] vars = new int[64];
+		private int n;
+
+		private Unit(int key){
+			this.key = key;
+		}
+
+		/**
+		 * @return the key of the unit, see {@link ConcurrentGraphBuilder#unit(int)}
+		 */
+		public int getKey(){
+			return key;
+		}
+
+		/**
+		 * Adds an edge given the labels of the nodes.
+		 * @see BipartiteGraph#addEdge(String, String)
+		 */
+		public void addEdge(String ve, String vv){
+			if(n == eqs.length){
+				int e[] = new int[2*n], v[] = new int[2*n];
+				System.arraycopy(eqs, 0, e, 0, n);
+				System.arraycopy(vars, 0, v, 0, n);
+				eqs = e;
+				vars = v;
+			}
+			eqs[n] = intern(eqIds, nextEq, ve);
+			vars[n++] = intern(varIds, nextVar, vv);
+		}
+
+		/**
+		 * Adds all edges of an equation.
+		 */
+		public void addEquation(String ve, String[] vvs){
+			for(String vv : vvs)
+				addEdge(ve, vv);
+		}
+	}
+
+	/**
+	 * Creates a builder for a graph with the given name.
+	 */
+	public ConcurrentGraphBuilder(String name){
+		this.name = name;
+	}
+
+	/**
+	 * Creates an builder for an unamed graph.
+	 */
+	public ConcurrentGraphBuilder(){
+		this("unamed");
+	}
+
+	/**
+	 * Returns the unit with the given key, creating it if needed.
+	 *
+	 * <p>The units are merged in the order of their keys by {@link #build()}, the key
+	 * is the (deterministic) position of the unit in the model, not the thread using it.
+	 *
+	 * @param key the key of the unit
+	 * @return the unit for the key
+	 */
+	public Unit unit(int key){
+		Integer k = Integer.valueOf(key);
+		Unit u = units.get(k);
+		if(u == null){
+			Unit n = new Unit(key);
+			u = units.putIfAbsent(k, n);
+			if(u == null)
+				u = n;
+		}
+		return u;
+	}
+
+	/**
+	 * Returns the provisional id of a label, adding it to the table if needed.
+	 * The provisional ids depend on the thread timing, they are renumbered by {@link #build()}.
+	 */
+	private static int intern(ConcurrentHashMap<String, Integer> ids, AtomicInteger next, String label){
+		Integer id = ids.get(label);
+		if(id == null){
+			Integer n = Integer.valueOf(next.getAndIncrement());
+			id = ids.putIfAbsent(label, n);
+			if(id == null)
+				id = n;
+		}
+		return id.intValue();
+	}
+
+	private static String[] labels(ConcurrentHashMap<String, Integer> ids, int n){
+		String labels[] = new String[n];
+		for(Map.Entry<String, Integer> e : ids.entrySet())
+			labels[e.getValue().intValue()] = e.getKey();
+		return labels;
+	}
+
+	/**
+	 * Makes sure that the original version of every differentiated variable label
+	 * (<code>x</code> for <code>x'</code>) is in the table.
+	 */
+	private void internOrigs(){
+		List<String> work = new ArrayList<String>(varIds.keySet());
+		while(!work.isEmpty()){
+			String label = work.remove(work.size()-1);
+			if(label.length()>1 && label.charAt(label.length()-1) == '\''){
+				String orig = label.substring(0, label.length()-1);
+				if(!varIds.containsKey(orig)){
+					intern(varIds, nextVar, orig);
+					work.add(orig);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Assigns the final id of a variable given its provisional one (if not yet).
+	 *
+	 * <p>As in {@link BipartiteGraph#addEdge(String, String)}, the variable <code>x</code>
+	 * is numbered before <code>x'</code> when the latter is found first.
+	 *
+	 * @param diffs where to put the (original, derivative) pairs found
+	 */
+	private int varId(int prov, String[] labels, int[] finalId, List<String> order, List<int[]> diffs){
+		if(finalId[prov] >= 0)
+			return finalId[prov];
+		String label = labels[prov];
+		int orig = -1;
+		if(label.length()>1 && label.charAt(label.length()-1) == '\''){
+			int p = varIds.get(label.substring(0, label.length()-1)).intValue();
+			orig = varId(p, labels, finalId, order, diffs);
+		}
+		int id = order.size();
+		order.add(label);
+		finalId[prov] = id;
+		if(orig >= 0)
+			diffs.add(new int[]{orig, id});
+		return id;
+	}
+
+	/**
+	 * Merges all units into a graph.
+	 *
+	 * <p>This function should be called only after all threads finished adding edges.
+	 * The equations and variables are numbered in the order they first appear when the
+	 * units are taken by increasing key, so the result does not depend on the threads.
+	 *
+	 * @return the graph with all edges added so far
+	 */
+	public BipartiteGraph build(){
+		List<Unit> sorted = new ArrayList<Unit>(units.values());
+		Collections.sort(sorted, new Comparator<Unit>(){
+			public int compare(Unit a, Unit b){
+				return a.key<b.key ? -1 : (a.key==b.key ? 0 : 1);
+			}
+		});
+		internOrigs();
+
+		String eqLabels[] = labels(eqIds, nextEq.get());
+		String varLabels[] = labels(varIds, nextVar.get());
+		int eqFinal[] = new int[eqLabels.length], varFinal[] = new int[varLabels.length];
+		Arrays.fill(eqFinal, -1);
+		Arrays.fill(varFinal, -1);
+		List<String> eqOrder = new ArrayList<String>(), varOrder = new ArrayList<String>();
+		List<int[]> diffs = new ArrayList<int[]>();
+		int nnz = 0;
+
+		// number the nodes by first appearance
+		for(Unit u : sorted){
+			for(int k=0; k<u.n; ++k){
+				if(eqFinal[u.eqs[k]] < 0){
+					eqFinal[u.eqs[k]] = eqOrder.size();
+					eqOrder.add(eqLabels[u.eqs[k]]);
+				}
+				varId(u.vars[k], varLabels, varFinal, varOrder, diffs);
+			}
+			nnz += u.n;
+		}
+
+		GraphBuilder b = new GraphBuilder(eqOrder.size(), varOrder.size(), nnz);
+		b.setName(name);
+		b.setEqLabels(eqOrder.toArray());
+		b.setVarLabels(varOrder.toArray());
+		for(int d[] : diffs)
+			b.setDiff(d[0], d[1]);
+		for(Unit u : sorted){
+			for(int k=0; k<u.n; ++k)
+				b.addEdge(eqFinal[u.eqs[k]], varFinal[u.vars[k]]);
+		}
+		return b.build();
+	}
+}
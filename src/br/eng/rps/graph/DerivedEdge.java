@@ -0,0 +1,113 @@
+package br.eng.rps.graph;
+
+/**
+ * Edge of a node produced on demand from the edges of other nodes.
+ *
+ * <p>In the {@link BipartiteGraph#DIFF_DERIVED} mode the differentiated equations do not get
+ * their own edges. Instead, the edges of an equation with derivative order <code>m</code>
+ * with respect to its base equation are the edges of the base equation, with each variable
+ * replaced by its <code>m</code>-th derivative. On the other side, a variable has the edges
+ * of its <code>m</code>-th original version with the equations replaced by their
+ * <code>m</code>-th derivatives (only those derived from these equations).
+ *
+ * <p>{@link BipartiteNode#getEdges()} returns a list of these edges, starting with the own
+ * edges of the node, whenever the node has derived edges. Each element of the list knows
+ * the position of the search and builds the next element when asked for the first time.
+ * The list is kept in the node, so the searches following it again do not create edges,
+ * until {@link NodeStore#edgeVersion} changes.
+ *
+ * @author rafael
+ */
+final class DerivedEdge extends BipartiteEdge {
+	/** The edge is one of the own edges of the node */
+	private static final int OWN = 0;
+	/** The edge is derived from an edge of the base equation */
+	private static final int BASE = 1;
+	/** The edge is derived from an edge of an original version of the variable */
+	private static final int ORIG = 2;
+
+	/** Where the edge comes from */
+	private final int source;
+	/** The edge this one was derived from */
+	private final BipartiteEdge from;
+	/** The derivative order of the original version (for {@link #ORIG}) */
+	private final int m;
+	/** The next edge, if already searched */
+	private BipartiteEdge nextEdge;
+	private boolean searched;
+
+	private DerivedEdge(BipartiteNode n1, BipartiteNode n2, int source, BipartiteEdge from, int m){
+		super(n1, n2, null);
+		this.source = source;
+		this.from = from;
+		this.m = m;
+	}
+
+	public BipartiteEdge getNext(){
+		if(!searched){
+			nextEdge = find(node1, source, from.next, m);
+			searched = true;
+		}
+		return nextEdge;
+	}
+
+	/**
+	 * @return the edge of the node this one stands for if it is an own edge, otherwise <code>null</code>
+	 */
+	BipartiteEdge own(){
+		return source==OWN ? from : null;
+	}
+
+	/**
+	 * @return the first edge of the node, including the derived ones
+	 */
+	static BipartiteEdge first(BipartiteNode n){
+		return find(n, OWN, n.edges, 0);
+	}
+
+	/**
+	 * Searches the next edge of a node starting at the given position.
+	 * @param n the node
+	 * @param source where to start
+	 * @param r the first candidate edge of the source list
+	 * @param m the derivative order of the original version (for {@link #ORIG})
+	 * @return the edge or <code>null</code> if there are no more edges
+	 */
+	private static BipartiteEdge find(BipartiteNode n, int source, BipartiteEdge r, int m){
+		NodeStore s = n.store;
+		int id = n.id;
+		if(source == OWN){
+			if(r != null)
+				return new DerivedEdge(n, r.node2, OWN, r, 0);
+			source = BASE;
+			r = s.base[id]<0 ? null : s.nodes[s.base[id]].edges;
+		}
+		if(source == BASE){
+			for(; r!=null; r=r.next){
+				int t = s.lift(r.node2.id, s.order[id]);
+				if(t >= 0)
+					return new DerivedEdge(n, s.nodes[t], BASE, r, 0);
+			}
+			if(!s.lifted[id])
+				return null;
+			m = 1;
+			r = s.orig[id]<0 ? null : s.nodes[s.orig[id]].edges;
+		}
+		while(true){
+			for(; r!=null; r=r.next){
+				int eq = r.node2.id;
+				int t = s.lift(eq, m);
+				if(t>=0 && s.base[t]==eq && s.order[t]==m)
+					return new DerivedEdge(n, s.nodes[t], ORIG, r, m);
+			}
+			// move to the next original version
+			int u = id;
+			for(int k=0; k<=m && u>=0; ++k)
+				u = s.orig[u];
+			if(u < 0)
+				return null;
+			++m;
+			r = s.nodes[u].edges;
+		}
+	}
+}
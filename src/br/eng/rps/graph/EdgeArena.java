@@ -0,0 +1,115 @@
+package br.eng.rps.graph;
+
+/**
+ * Arena of the edge objects owned by a {@link BipartiteGraph}.
+ *
+ * <p>The edges created by the graph (the ones of the differentiated equations, of the
+ * hashed and unchecked {@link BipartiteGraph#addEdge(String, String)}, of
+ * {@link BipartiteGraph#snapshot()} and of the {@link GraphBuilder}) are taken from here.
+ * The edge objects are created in slabs: a batch of edges created at once and handed out
+ * one by one, each slab as large as all the previous ones (up to a limit), so the edges
+ * created one after the other sit next to each other in memory and most requests take
+ * no allocation at all.
+ *
+ * <p>The edges taken out of the graph by {@link BipartiteGraph#removeEdge(BipartiteEdge)},
+ * by the removal of nodes and by {@link BipartiteGraph#rollback()} are kept in a free list
+ * and handed out before the slab. So, an index reduction tried and undone repeatedly
+ * (see {@link BipartiteGraph#begin()}) creates its edges in the first run only, see
+ * {@link #capacity()}. The whole arena goes away with the graph.
+ *
+ * <p>The free list is linked by the {@link BipartiteEdge#twin} field, so a released
+ * edge still reached by the caller ends its list ({@link BipartiteEdge#getNext()} is
+ * <code>null</code>) as an unpooled removed edge does.
+ *
+ * @author rafael
+ */
+final class EdgeArena {
+	/** Size of the first slab */
+	private static final int MIN_SLAB = 64;
+	/** Largest size of a slab (unless more edges are reserved at once) */
+	private static final int MAX_SLAB = 1 << 16;
+
+	/** The current slab, its edges from {@link #next} on were not handed out yet */
+	private BipartiteEdge[] slab = new BipartiteEdge[0];
+	private int next;
+	/** First free edge */
+	private BipartiteEdge free;
+	/** Number of free edges */
+	private int size;
+	/** Number of edges created by the arena */
+	private int capacity;
+
+	/**
+	 * Returns an edge from node1 to node2, reusing a free one if possible.
+	 * @param next the next edge in the list of node1
+	 */
+	BipartiteEdge get(BipartiteNode n1, BipartiteNode n2, BipartiteEdge next){
+		BipartiteEdge e = free;
+		if(e != null){
+			free = e.twin;
+			--size;
+			e.twin = null;
+		}
+		else{
+			if(this.next == slab.length)
+				newSlab(Math.min(Math.max(capacity, MIN_SLAB), MAX_SLAB));
+			e = slab[this.next];
+			slab[this.next++] = null;
+		}
+		e.node1 = n1;
+		e.node2 = n2;
+		e.next = next;
+		if(next != null)
+			next.prev = e;
+		return e;
+	}
+
+	/**
+	 * Makes room for the given number of edges in a single slab, unless there are enough
+	 * free edges, so the edges of a graph built at once are not scattered.
+	 */
+	void reserve(int n){
+		if(size + slab.length - this.next >= n)
+			return;
+		// the rest of the current slab is kept in the free list
+		while(this.next < slab.length){
+			put(slab[this.next]);
+			slab[this.next++] = null;
+		}
+		newSlab(n - size);
+	}
+
+	private void newSlab(int n){
+		slab = new BipartiteEdge[n];
+		for(int k=0; k<n; ++k)
+			slab[k] = new BipartiteEdge(null, null, null);
+		this.next = 0;
+		capacity += n;
+	}
+
+	/**
+	 * Gives back an edge already unlinked from the lists of its nodes.
+	 */
+	void put(BipartiteEdge e){
+		e.node1 = e.node2 = null;
+		e.prev = e.next = null;
+		e.twin = free;
+		free = e;
+		++size;
+	}
+
+	/**
+	 * @return the number of free edges
+	 */
+	int size(){
+		return size;
+	}
+
+	/**
+	 * @return the number of edge objects created by the arena, the ones in the graph, the free
+	 * ones and the ones of the current slab not handed out yet
+	 */
+	int capacity(){
+		return capacity;
+	}
+}
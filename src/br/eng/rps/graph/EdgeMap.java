@@ -0,0 +1,84 @@
+package br.eng.rps.graph;
+
+/**
+ * Open addressing hash map from an edge to another, keyed on the identity of the edge.
+ *
+ * <p>Used by {@link BipartiteGraph#snapshot()} to find the copy of the reverse edge of an
+ * edge being copied, without writing into the graph copied (which may be analyzed by
+ * other threads at the same time). Each copy waits in the map until the copy of its
+ * reverse edge takes it, so the map holds only the pairs with one edge copied.
+ *
+ * @author rafael
+ */
+final class EdgeMap {
+	private BipartiteEdge[] keys = new BipartiteEdge[16];
+	private BipartiteEdge[] values = new BipartiteEdge[16];
+	private int size;
+	private int mask = 15;
+
+	private static int hash(BipartiteEdge e){
+		int h = System.identityHashCode(e) * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Maps an edge not in the map yet.
+	 */
+	void put(BipartiteEdge key, BipartiteEdge value){
+		int i = hash(key) & mask;
+		while(keys[i] != null)
+			i = (i+1) & mask;
+		keys[i] = key;
+		values[i] = value;
+		if(++size*2 > mask)
+			grow();
+	}
+
+	/**
+	 * Removes an edge from the map, shifting back the following entries of its cluster.
+	 * @return the value of the edge or <code>null</code> if the edge is not in the map
+	 */
+	BipartiteEdge take(BipartiteEdge key){
+		int i = hash(key) & mask;
+		while(keys[i] != null){
+			if(keys[i] == key){
+				BipartiteEdge value = values[i];
+				for(int j=(i+1)&mask; keys[j]!=null; j=(j+1)&mask){
+					int k = hash(keys[j]) & mask;
+					// the entry stays if its home is cyclically in (i, j]
+					if(i<=j ? (i<k && k<=j) : (i<k || k<=j))
+						continue;
+					keys[i] = keys[j];
+					values[i] = values[j];
+					i = j;
+				}
+				keys[i] = null;
+				values[i] = null;
+				--size;
+				return value;
+			}
+			i = (i+1) & mask;
+		}
+		return null;
+	}
+
+	int size(){
+		return size;
+	}
+
+	private void grow(){
+		BipartiteEdge oldKeys[] = keys, oldValues[] = values;
+		keys = new BipartiteEdge[oldKeys.length*2];
+		values = new BipartiteEdge[oldKeys.length*2];
+		mask = keys.length - 1;
+		for(int j=0; j<oldKeys.length; ++j){
+			if(oldKeys[j] == null)
+				continue;
+			int i = hash(oldKeys[j]) & mask;
+			while(keys[i] != null)
+				i = (i+1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+}
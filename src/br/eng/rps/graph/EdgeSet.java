@@ -0,0 +1,132 @@
+package br.eng.rps.graph;
+
+/**
+ * Open addressing hash set of edges, keyed on the identity of the (V_e, V_v) pair.
+ *
+ * <p>Used by {@link BipartiteGraph} in the {@link BipartiteGraph#EDGES_HASH} mode
+ * to detect duplicated edges in constant time, instead of scanning the adjacency
+ * lists of both nodes.
+ *
+ * @author rafael
+ */
+final class EdgeSet {
+	private BipartiteNode[] eqs;
+	private BipartiteNode[] vars;
+	private int size;
+	private int mask;
+
+	/**
+	 * @param expected the expected number of edges
+	 */
+	EdgeSet(int expected){
+		int cap = 16;
+		while(cap < 2*expected)
+			cap <<= 1;
+		eqs = new BipartiteNode[cap];
+		vars = new BipartiteNode[cap];
+		mask = cap - 1;
+	}
+
+	/**
+	 * Creates the set with all the edges currently in the given graph.
+	 */
+	EdgeSet(BipartiteGraph G){
+		this(count(G));
+		for(BipartiteNode ve : G.getEqs()){
+			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext())
+				add(ve, ed.getNode2());
+		}
+	}
+
+	private static int count(BipartiteGraph G){
+		int n = 0;
+		for(BipartiteNode ve : G.getEqs()){
+			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext())
+				++n;
+		}
+		return n;
+	}
+
+	private static int hash(BipartiteNode ve, BipartiteNode vv){
+		int h = System.identityHashCode(ve) * 0x9E3779B1 + System.identityHashCode(vv);
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Adds an edge to the set.
+	 * @return <code>true</code> if the edge was not in the set yet
+	 */
+	boolean add(BipartiteNode ve, BipartiteNode vv){
+		int i = hash(ve, vv) & mask;
+		while(eqs[i] != null){
+			if(eqs[i]==ve && vars[i]==vv)
+				return false;
+			i = (i+1) & mask;
+		}
+		eqs[i] = ve;
+		vars[i] = vv;
+		if(++size*2 > mask)
+			grow();
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the edge is in the set
+	 */
+	boolean contains(BipartiteNode ve, BipartiteNode vv){
+		int i = hash(ve, vv) & mask;
+		while(eqs[i] != null){
+			if(eqs[i]==ve && vars[i]==vv)
+				return true;
+			i = (i+1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes an edge from the set, shifting back the following entries of its cluster.
+	 * @return <code>true</code> if the edge was in the set
+	 */
+	boolean remove(BipartiteNode ve, BipartiteNode vv){
+		int i = hash(ve, vv) & mask;
+		while(eqs[i] != null){
+			if(eqs[i]==ve && vars[i]==vv){
+				for(int j=(i+1)&mask; eqs[j]!=null; j=(j+1)&mask){
+					int k = hash(eqs[j], vars[j]) & mask;
+					// the entry stays if its home is cyclically in (i, j]
+					if(i<=j ? (i<k && k<=j) : (i<k || k<=j))
+						continue;
+					eqs[i] = eqs[j];
+					vars[i] = vars[j];
+					i = j;
+				}
+				eqs[i] = null;
+				vars[i] = null;
+				--size;
+				return true;
+			}
+			i = (i+1) & mask;
+		}
+		return false;
+	}
+
+	int size(){
+		return size;
+	}
+
+	private void grow(){
+		BipartiteNode oldEqs[] = eqs, oldVars[] = vars;
+		eqs = new BipartiteNode[oldEqs.length*2];
+		vars = new BipartiteNode[oldEqs.length*2];
+		mask = eqs.length - 1;
+		for(int j=0; j<oldEqs.length; ++j){
+			if(oldEqs[j] == null)
+				continue;
+			int i = hash(oldEqs[j], oldVars[j]) & mask;
+			while(eqs[i] != null)
+				i = (i+1) & mask;
+			eqs[i] = oldEqs[j];
+			vars[i] = oldVars[j];
+		}
+	}
+}
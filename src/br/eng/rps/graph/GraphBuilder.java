@@ -0,0 +1,287 @@
+package br.eng.rps.graph;
+
+/**
+ * Bulk builder of {@link BipartiteGraph}s from integer ids.
+ *
+ * <p>When the number of equations, variables and edges (nonzeros) are known up front,
+ * building the graph with {@link BipartiteGraph#addEdge(String, String)} wastes time
+ * creating strings, looking up the nodes and checking for duplicated edges one edge
+ * at a time. With this builder the edges are given by the equation and variable indices
+ * and are only collected in <code>int</code> arrays; the nodes and edges are created in
+ * a single pass by {@link #build()}:
+ * <blockquote><pre>
+ * GraphBuilder b = new GraphBuilder(ne, nv, nnz);
+ * b.addEdge(0, 0); b.addEdge(0, 1);
+ * b.addRow(1, new int[]{1, 2});
+ * BipartiteGraph G = b.build();
+ * </pre></blockquote>
+ * The equation <code>i</code> is at the position <code>i</code> of {@link BipartiteGraph#getEqs()}
+ * and the same holds for the variables.
+ * Duplicated edges are discarded by {@link #build()} in linear time.
+ *
+ * <p>Labels are optional: the labels given by {@link #setEqLabels(Object[])} and
+ * {@link #setVarLabels(Object[])} that are strings are copied into the label arena of the
+ * graph, other objects are used as the node objects without any conversion.
+ * Nodes without a label have a <code>null</code> object and are numbered by their index,
+ * so a graph built without labels is anonymous: its nodes are printed and looked up
+ * as <code>e</code><i>i</i> and <code>v</code><i>j</i>, without a label object or string
+ * per node, and the numbers are given by {@link BipartiteNode#getNumber()}.
+ * Labels can be attached later by {@link BipartiteGraph#setLabels(Object[], Object[])}.
+ * An anonymous graph can also be built at once from its rows, see
+ * {@link #fromRows(int, int, int[], int[])}.
+ *
+ * @author rafael
+ */
+public class GraphBuilder {
+	private final int ne;
+	private final int nv;
+	/** Equation of each edge */
+	private int[] edgeEq;
+	/** Variable of each edge */
+	private int[] edgeVar;
+	/** Number of edges added */
+	private int nnz;
+	/** Differentiated version of each variable (or -1), allocated on demand */
+	private int[] varDiff;
+	private Object[] eqLabels;
+	private Object[] varLabels;
+	private String name = "unamed";
+
+	/**
+	 * Creates a builder for a graph of the given sizes.
+	 * @param ne the number of equations
+	 * @param nv the number of variables
+	 * @param nnz the expected number of edges (more edges can be added)
+	 */
+	public GraphBuilder(int ne, int nv, int nnz){
+		if(ne<0 || nv<0)
+			throw new IllegalArgumentException("Invalid graph size: " + ne + 'x' + nv);
+		this.ne = ne;
+		this.nv = nv;
+		edgeEq = new int[Math.max(nnz, 16)];
+		edgeVar = new int[edgeEq.length];
+	}
+
+	/**
+	 * @return the number of equations
+	 */
+	public int ne(){
+		return ne;
+	}
+
+	/**
+	 * @return the number of variables
+	 */
+	public int nv(){
+		return nv;
+	}
+
+	/**
+	 * @return the number of edges added so far (including duplicates)
+	 */
+	public int nnz(){
+		return nnz;
+	}
+
+	/**
+	 * Sets the name of the graph to be built.
+	 */
+	public void setName(String name){
+		this.name = name;
+	}
+
+	/**
+	 * Adds an edge between the equation <code>eq</code> and the variable <code>var</code>.
+	 * @throws IndexOutOfBoundsException if one of the indices is not valid
+	 */
+	public void addEdge(int eq, int var){
+		checkEq(eq);
+		checkVar(var);
+		if(nnz == edgeEq.length)
+			grow(nnz + 1);
+		edgeEq[nnz] = eq;
+		edgeVar[nnz++] = var;
+	}
+
+	/**
+	 * Adds all edges of an equation.
+	 * @param eq the equation index
+	 * @param vars the variables of the equation
+	 */
+	public void addRow(int eq, int[] vars){
+		addRow(eq, vars, vars.length);
+	}
+
+	/**
+	 * Adds the edges of an equation.
+	 * @param eq the equation index
+	 * @param vars the variables of the equation
+	 * @param n the number of elements of <code>vars</code> to add
+	 */
+	public void addRow(int eq, int[] vars, int n){
+		checkEq(eq);
+		if(nnz + n > edgeEq.length)
+			grow(nnz + n);
+		for(int k=0; k<n; ++k){
+			checkVar(vars[k]);
+			edgeEq[nnz] = eq;
+			edgeVar[nnz++] = vars[k];
+		}
+	}
+
+	/**
+	 * Sets the variable <code>diff</code> as the differentiated version of the variable <code>var</code>.
+	 * @see BipartiteNode#getDiff()
+	 */
+	public void setDiff(int var, int diff){
+		checkVar(var);
+		checkVar(diff);
+		if(varDiff == null){
+			varDiff = new int[nv];
+			for(int j=0; j<nv; ++j)
+				varDiff[j] = -1;
+		}
+		varDiff[var] = diff;
+	}
+
+	/**
+	 * Sets the labels of the equations.
+	 * @param labels the labels, by equation index, or <code>null</code>
+	 */
+	public void setEqLabels(Object[] labels){
+		eqLabels = labels;
+	}
+
+	/**
+	 * Sets the labels of the variables.
+	 * @param labels the labels, by variable index, or <code>null</code>
+	 */
+	public void setVarLabels(Object[] labels){
+		varLabels = labels;
+	}
+
+	private void checkEq(int eq){
+		if(eq<0 || eq>=ne)
+			throw new IndexOutOfBoundsException("Equation index: " + eq);
+	}
+
+	private void checkVar(int var){
+		if(var<0 || var>=nv)
+			throw new IndexOutOfBoundsException("Variable index: " + var);
+	}
+
+	private void grow(int capacity){
+		capacity = Math.max(capacity, edgeEq.length + (edgeEq.length >> 1));
+		int e[] = new int[capacity], v[] = new int[capacity];
+		System.arraycopy(edgeEq, 0, e, 0, nnz);
+		System.arraycopy(edgeVar, 0, v, 0, nnz);
+		edgeEq = e;
+		edgeVar = v;
+	}
+
+	private static Object label(Object[] labels, int i){
+		return labels!=null && i<labels.length ? labels[i] : null;
+	}
+
+	/**
+	 * Creates a node with the given label, or numbered if there is no label.
+	 */
+	private static BipartiteNode node(NodeStore store, Object label, int number, boolean var){
+		if(label != null)
+			return BipartiteNode.labeled(store, label);
+		BipartiteNode n = new BipartiteNode(store, null, null);
+		store.setNumber(n.id, number, var);
+		return n;
+	}
+
+	/**
+	 * Builds an anonymous graph from its rows, in the compressed sparse row format.
+	 *
+	 * <p>The variables of the equation <code>i</code> are <code>cols[rowStart[i]]</code> to
+	 * <code>cols[rowStart[i+1]-1]</code>, as in the sparsity pattern of a Jacobian.
+	 *
+	 * @param ne the number of equations
+	 * @param nv the number of variables
+	 * @param rowStart the start of each row in <code>cols</code>, with <code>ne+1</code> elements
+	 * @param cols the variable indices of the rows
+	 * @return the graph, with numbered nodes
+	 * @throws IllegalArgumentException if <code>rowStart</code> is too short
+	 * @throws IndexOutOfBoundsException if one of the indices is not valid
+	 */
+	public static BipartiteGraph fromRows(int ne, int nv, int[] rowStart, int[] cols){
+		if(rowStart.length < ne+1)
+			throw new IllegalArgumentException("Row starts: " + rowStart.length + " for " + ne + " rows");
+		GraphBuilder b = new GraphBuilder(ne, nv, rowStart[ne] - rowStart[0]);
+		for(int i=0; i<ne; ++i){
+			for(int p=rowStart[i]; p<rowStart[i+1]; ++p)
+				b.addEdge(i, cols[p]);
+		}
+		return b.build();
+	}
+
+	/**
+	 * Builds the graph.
+	 *
+	 * <p>The builder can still be used after this call, a new graph is built each time.
+	 *
+	 * @return the graph with the given edges
+	 */
+	public BipartiteGraph build(){
+		// sort the edges by equation (counting sort), keeping the order within the rows
+		int start[] = new int[ne+1];
+		for(int k=0; k<nnz; ++k)
+			++start[edgeEq[k]+1];
+		for(int i=0; i<ne; ++i)
+			start[i+1] += start[i];
+		int pos[] = new int[ne];
+		System.arraycopy(start, 0, pos, 0, ne);
+		int adj[] = new int[nnz];
+		for(int k=0; k<nnz; ++k)
+			adj[pos[edgeEq[k]]++] = edgeVar[k];
+
+		// create the nodes, equations first
+		BipartiteGraph G = new BipartiteGraph(name);
+		NodeStore store = new NodeStore(ne + nv);
+		G.store = store;
+		BipartiteNode eqs[] = new BipartiteNode[ne], vars[] = new BipartiteNode[nv];
+		for(int i=0; i<ne; ++i)
+			G.Ve.add(eqs[i] = node(store, label(eqLabels, i), i, false));
+		for(int j=0; j<nv; ++j)
+			G.Vv.add(vars[j] = node(store, label(varLabels, j), j, true));
+		if(varDiff != null){
+			for(int j=0; j<nv; ++j){
+				if(varDiff[j] >= 0){
+					store.diff[vars[j].id] = vars[varDiff[j]].id;
+					store.orig[vars[varDiff[j]].id] = vars[j].id;
+				}
+			}
+		}
+
+		// create the edges backwards (they are prepended to the lists), skipping duplicates,
+		// all of them taken from a single slab of the arena of the graph
+		G.edgeArena.reserve(2*nnz);
+		int last[] = new int[nv];
+		for(int j=0; j<nv; ++j)
+			last[j] = -1;
+		for(int i=ne-1; i>=0; --i){
+			BipartiteNode ve = eqs[i];
+			// first occurrence of each variable in the row wins
+			for(int p=start[i]; p<start[i+1]; ++p){
+				if(last[adj[p]] == i)
+					adj[p] = -1;
+				else
+					last[adj[p]] = i;
+			}
+			for(int p=start[i+1]-1; p>=start[i]; --p){
+				if(adj[p] < 0)
+					continue;
+				BipartiteNode vv = vars[adj[p]];
+				ve.edges = G.edgeArena.get(ve, vv, ve.edges);
+				vv.edges = G.edgeArena.get(vv, ve, vv.edges);
+				ve.edges.twin = vv.edges;
+				vv.edges.twin = ve.edges;
+			}
+		}
+		return G;
+	}
+}
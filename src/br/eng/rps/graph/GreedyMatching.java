@@ -0,0 +1,147 @@
+package br.eng.rps.graph;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The Karp-Sipser greedy matching, see {@link Algorithms#KarpSipser(BipartiteGraph, boolean)}.
+ *
+ * <p>The degree of each unmatched equation (and eligible variable) counts its unmatched
+ * neighbours and is kept in an array indexed by the node id in the store of the graph.
+ * The nodes whose degree drops to one are queued: a node with a single neighbour
+ * left is matched with it, as this pair is in some maximum matching. When the queue is
+ * empty an equation is taken in random order and matched with a random neighbour.
+ * Each edge is followed a constant number of times.
+ *
+ * @author rafael
+ */
+final class GreedyMatching {
+	private final NodeStore store;
+	private final boolean alg;
+	/** Degree of each node, by id */
+	private final int[] deg;
+	/** If the node is an equation to be matched, by id */
+	private final boolean[] eq;
+	/** The nodes of degree one, by id */
+	private final int[] queue;
+	private int head, tail;
+	/** Number of pairs added */
+	private int pairs;
+
+	/**
+	 * @param alg if <code>false</code> only the variables without a differentiated version are matched
+	 */
+	GreedyMatching(BipartiteGraph G, boolean alg){
+		this.store = G.store();
+		this.alg = alg;
+		deg = new int[store.size];
+		eq = new boolean[store.size];
+		queue = new int[store.size];
+	}
+
+	/**
+	 * @return if the variable can still be matched
+	 */
+	private boolean free(BipartiteNode vv){
+		return vv.getConnected()==null && !vv.hasFlag(Algorithms.FLAG_DELETED) && (alg || vv.getDiff()==null);
+	}
+
+	/**
+	 * Matches the given equations, the ones already matched are skipped.
+	 * @param eqs the equations
+	 * @param skipDiff if the equations already differentiated are skipped (as by the Pantelides's algorithm)
+	 * @return the number of pairs added to the matching
+	 */
+	int run(List<BipartiteNode> eqs, boolean skipDiff){
+		BipartiteNode order[] = new BipartiteNode[eqs.size()];
+		int n = 0;
+		for(BipartiteNode ve : eqs){
+			if(ve!=null && ve.getConnected()==null && !(skipDiff && ve.getDiff()!=null)){
+				eq[ve.id] = true;
+				order[n++] = ve;
+			}
+		}
+		for(int k=0; k<n; ++k){
+			BipartiteNode ve = order[k];
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+				BipartiteNode vv = e.getNode2();
+				if(free(vv)){
+					++deg[ve.id];
+					++deg[vv.id];
+				}
+			}
+		}
+		// the nodes of degree one (each one is found once)
+		for(int k=0; k<n; ++k){
+			BipartiteNode ve = order[k];
+			if(deg[ve.id] == 1)
+				queue[tail++] = ve.id;
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+				BipartiteNode vv = e.getNode2();
+				if(deg[vv.id]==1 && free(vv))
+					queue[tail++] = vv.id;
+			}
+		}
+		// the equations in random order (with a fixed seed, so the results can be reproduced)
+		Random random = new Random(n);
+		for(int k=n-1; k>0; --k){
+			int r = random.nextInt(k+1);
+			BipartiteNode t = order[k];
+			order[k] = order[r];
+			order[r] = t;
+		}
+
+		for(int next=0; ; ){
+			if(head < tail){
+				BipartiteNode u = store.nodes[queue[head++]];
+				if(u.getConnected()!=null || deg[u.id]==0)
+					continue;
+				// the single neighbour left
+				for(BipartiteEdge e=u.getEdges(); e!=null; e=e.getNext()){
+					BipartiteNode w = e.getNode2();
+					if(eq[u.id] ? free(w) : eq[w.id] && w.getConnected()==null){
+						if(eq[u.id])
+							match(u, w);
+						else
+							match(w, u);
+						break;
+					}
+				}
+				continue;
+			}
+			// no forced choice, a random one
+			while(next<n && (order[next].getConnected()!=null || deg[order[next].id]==0))
+				++next;
+			if(next == n)
+				break;
+			BipartiteNode ve = order[next++];
+			int r = random.nextInt(deg[ve.id]);
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+				BipartiteNode vv = e.getNode2();
+				if(free(vv) && r-- == 0){
+					match(ve, vv);
+					break;
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Matches an equation with a variable and updates the degrees of their neighbours.
+	 */
+	private void match(BipartiteNode ve, BipartiteNode vv){
+		ve.connect(vv);
+		++pairs;
+		for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext()){
+			BipartiteNode w = e.getNode2();
+			if(free(w) && --deg[w.id]==1)
+				queue[tail++] = w.id;
+		}
+		for(BipartiteEdge e=vv.getEdges(); e!=null; e=e.getNext()){
+			BipartiteNode w = e.getNode2();
+			if(eq[w.id] && w.getConnected()==null && --deg[w.id]==1)
+				queue[tail++] = w.id;
+		}
+	}
+}
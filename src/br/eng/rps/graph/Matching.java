@@ -0,0 +1,215 @@
+package br.eng.rps.graph;
+
+/**
+ * A matching over a compact (CSR) snapshot of a bipartite graph, kept apart from the graph.
+ *
+ * <p>The matching stored in the nodes ({@link BipartiteNode#getConnected()}) is unique
+ * for a graph. A {@link Matching} instead is just a pair of <code>int</code> arrays
+ * with the variable matched with each equation and the equation matched with each variable,
+ * indexed by the positions of the nodes in a {@link CompactGraph}. So, several matchings
+ * can be kept for the same (read-only) graph, and {@link #copy()} and {@link #restore(Matching)}
+ * take linear time:
+ * <blockquote><pre>
+ * CompactGraph C = G.freeze();
+ * Matching M = C.getMatching();
+ * Matching saved = M.copy();
+ * Algorithms.MaximumMatching(M);
+ * ...
+ * M.restore(saved); // try something else
+ * </pre></blockquote>
+ * The algorithms taking a {@link Matching} ({@link Algorithms#MaximumMatching(Matching)},
+ * {@link Algorithms#AugmentMatching(Matching, int)}, {@link Algorithms#AugmentMatching2(Matching, int, boolean)},
+ * {@link Algorithms#DulmageMendelshon(Matching, int[], boolean[], boolean[])} and {@link Tarjan#tarjan(Matching)})
+ * do not write into the nodes. A matching is stored into the nodes only by {@link #apply()}.
+ *
+ * @author rafael
+ */
+public class Matching {
+	/** The graph of this matching */
+	final CompactGraph graph;
+	/** Variable matched with each equation (or -1) */
+	final int[] eqMate;
+	/** Equation matched with each variable (or -1) */
+	final int[] varMate;
+
+	/** Work space of the augmenting path searches, allocated on demand */
+	int[] visited, cursor, stack, via;
+	/** The equations with <code>visited[i]==stamp</code> were reached by the last search */
+	int stamp;
+	/** Layer of each equation in a Hopcroft-Karp phase (or -1) and the queue of its search, allocated on demand */
+	int[] layer, queue;
+	/** Next adjacency position of each equation to be tried for a cheap assignment by {@link Algorithms#MC21(Matching)} */
+	int[] cheap;
+
+	/**
+	 * Creates an empty matching for the given graph.
+	 * @param C the snapshot of the graph
+	 */
+	public Matching(CompactGraph C){
+		graph = C;
+		eqMate = new int[C.ne()];
+		varMate = new int[C.nv()];
+		clear();
+	}
+
+	/**
+	 * @return the graph of this matching
+	 */
+	public CompactGraph getGraph(){
+		return graph;
+	}
+
+	/**
+	 * Removes all pairs of the matching.
+	 */
+	public void clear(){
+		for(int i=0; i<eqMate.length; ++i)
+			eqMate[i] = -1;
+		for(int j=0; j<varMate.length; ++j)
+			varMate[j] = -1;
+	}
+
+	/**
+	 * @return a copy of this matching (the graph is shared)
+	 */
+	public Matching copy(){
+		Matching M = new Matching(graph);
+		M.restore(this);
+		return M;
+	}
+
+	/**
+	 * Makes this matching equal to the given one.
+	 * @param M a matching of the same graph
+	 * @throws IllegalArgumentException if the matching is of another graph
+	 */
+	public void restore(Matching M){
+		if(M.graph != graph)
+			throw new IllegalArgumentException("Matching of another graph");
+		System.arraycopy(M.eqMate, 0, eqMate, 0, eqMate.length);
+		System.arraycopy(M.varMate, 0, varMate, 0, varMate.length);
+	}
+
+	/**
+	 * Stores this matching into the nodes of the graph, see {@link BipartiteNode#getConnected()}.
+	 */
+	public void apply(){
+		graph.writeMatching(eqMate);
+	}
+
+	/**
+	 * @param i the equation index
+	 * @return the index of the variable matched with the equation or -1
+	 */
+	public int getEqMate(int i){
+		return eqMate[i];
+	}
+
+	/**
+	 * @param j the variable index
+	 * @return the index of the equation matched with the variable or -1
+	 */
+	public int getVarMate(int j){
+		return varMate[j];
+	}
+
+	/**
+	 * Returns the node matched with the given one.
+	 * @param n an equation or variable of the graph
+	 * @return the matched node or <code>null</code> if not matched (or not in the graph)
+	 * @see BipartiteNode#getConnected()
+	 */
+	public BipartiteNode getConnected(BipartiteNode n){
+		int k = graph.indexOf(n);
+		if(k < 0)
+			return null;
+		if(k<graph.eqs.length && graph.eqs[k]==n)
+			return eqMate[k]<0 ? null : graph.vars[eqMate[k]];
+		return varMate[k]<0 ? null : graph.eqs[varMate[k]];
+	}
+
+	/**
+	 * Matches the equation <code>i</code> with the variable <code>j</code>, their
+	 * previous mates become unmatched.
+	 */
+	public void connect(int i, int j){
+		disconnectEq(i);
+		if(varMate[j] >= 0)
+			eqMate[varMate[j]] = -1;
+		eqMate[i] = j;
+		varMate[j] = i;
+	}
+
+	/**
+	 * Removes the equation <code>i</code> (and its mate) from the matching.
+	 */
+	public void disconnectEq(int i){
+		if(eqMate[i] >= 0){
+			varMate[eqMate[i]] = -1;
+			eqMate[i] = -1;
+		}
+	}
+
+	/**
+	 * @return the number of pairs in the matching
+	 */
+	public int size(){
+		int n = 0;
+		for(int i=0; i<eqMate.length; ++i){
+			if(eqMate[i] >= 0)
+				++n;
+		}
+		return n;
+	}
+
+	/**
+	 * Checks if the equation was reached by the last call to {@link Algorithms#AugmentMatching(Matching, int)}
+	 * or {@link Algorithms#AugmentMatching2(Matching, int, boolean)}.
+	 *
+	 * <p>These are the equations that would be coloured by the node based versions.
+	 */
+	public boolean isColored(int i){
+		return visited!=null && visited[i]==stamp;
+	}
+
+	/**
+	 * Starts a new augmenting path search: allocates the work space if needed and
+	 * takes a new stamp, so no equation is visited.
+	 */
+	void newSearch(){
+		int ne = eqMate.length;
+		if(visited == null){
+			visited = new int[ne];
+			cursor = new int[ne];
+			stack = new int[ne];
+			via = new int[ne];
+		}
+		if(++stamp == Integer.MAX_VALUE){
+			for(int i=0; i<ne; ++i)
+				visited[i] = 0;
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Allocates the work space of the Hopcroft-Karp phases (if not yet).
+	 */
+	void ensureLayers(){
+		newSearch();
+		if(layer == null){
+			layer = new int[eqMate.length];
+			queue = new int[eqMate.length];
+		}
+	}
+
+	/**
+	 * Allocates the cheap assignment positions (if not yet) and starts them at the first
+	 * edge of each equation.
+	 */
+	void ensureCheap(){
+		newSearch();
+		if(cheap == null)
+			cheap = new int[eqMate.length];
+		System.arraycopy(graph.eqStart, 0, cheap, 0, cheap.length);
+	}
+}
@@ -0,0 +1,236 @@
+package br.eng.rps.graph;
+
+/**
+ * Explicit stack of the depth first searches over the nodes, see
+ * {@link Algorithms#AugmentMatching(BipartiteGraph, BipartiteNode)} and
+ * {@link Algorithms#markAlternating(BipartiteNode, int)}.
+ *
+ * <p>Each level holds a node of the current path, the next edge of the node to be
+ * followed (so no edge is scanned twice) and the variable leading to the node of the
+ * next level. The searches that used to recurse once per step of an alternating path
+ * keep these levels here instead of on the call stack, so the length of the paths is
+ * limited only by the heap. The arrays grow as needed and are reused by the following searches.
+ *
+ * <p>The equations reached by the augmenting path searches are stamped in their store (see
+ * {@link NodeStore#visit(int)}) instead of flagged, and also collected in {@link #reached}.
+ * So, the visits are forgotten by taking a new stamp, and not by removing the flag
+ * of all nodes of the graph after each search, and the equations reached by a failed search
+ * are found without scanning the graph. They are flagged {@link Algorithms#FLAG_COLORED}
+ * only when the caller must see them, see {@link #color(int)}. In the same way, the equations
+ * flagged {@link Algorithms#FLAG_MARKED} to be differentiated are collected in {@link #marked}.
+ *
+ * <p>The public searches ({@link Algorithms#AugmentMatching(BipartiteGraph, BipartiteNode)}
+ * and {@link Algorithms#AugmentMatching2(BipartiteGraph, BipartiteNode, boolean)}) are
+ * {@link #flagged}: their callers forget the visits by removing the flags, so the flag itself
+ * is the visit mark and nothing is collected.
+ *
+ * @author rafael
+ */
+final class NodeStack {
+	/** The node at each level */
+	BipartiteNode[] node;
+	/** The next edge of the node at each level to be followed */
+	BipartiteEdge[] cursor;
+	/** The variable leading from the node at each level to the one at the next level */
+	BipartiteNode[] via;
+	/** The equations reached since the visits were last forgotten */
+	BipartiteNode[] reached = new BipartiteNode[16];
+	/** Number of equations in {@link #reached} */
+	int nReached;
+	/** The equations flagged {@link Algorithms#FLAG_MARKED} to be differentiated, see {@link #mark(BipartiteNode)} */
+	BipartiteNode[] marked = new BipartiteNode[16];
+	/** Number of equations in {@link #marked} */
+	int nMarked;
+	/** If some of the equations reached were flagged by {@link #color(int)} */
+	boolean colored;
+	/** If the equations reached are flagged {@link Algorithms#FLAG_COLORED} instead of stamped */
+	boolean flagged;
+	/** If some equations were flagged by a {@link #flagged} search since the last {@link #reset(NodeStore)} */
+	boolean flaggedSome;
+	/** The next edge of each equation to be tried for a cheap assignment, by id, see {@link #newCheap(NodeStore)} */
+	BipartiteEdge[] cheap;
+	/** The edges in {@link #cheap} are valid for the ids with <code>cheapStamp[id]==cheapEpoch</code> */
+	int[] cheapStamp;
+	int cheapEpoch;
+
+	NodeStack(int capacity){
+		capacity = Math.max(capacity, 16);
+		node = new BipartiteNode[capacity];
+		cursor = new BipartiteEdge[capacity];
+		via = new BipartiteNode[capacity];
+	}
+
+	/**
+	 * Makes room for the given number of levels.
+	 */
+	void ensure(int levels){
+		if(levels <= node.length)
+			return;
+		int capacity = Math.max(levels, node.length + (node.length >> 1));
+		BipartiteNode n[] = new BipartiteNode[capacity], v[] = new BipartiteNode[capacity];
+		BipartiteEdge c[] = new BipartiteEdge[capacity];
+		System.arraycopy(node, 0, n, 0, node.length);
+		System.arraycopy(cursor, 0, c, 0, cursor.length);
+		System.arraycopy(via, 0, v, 0, via.length);
+		node = n;
+		cursor = c;
+		via = v;
+	}
+
+	/**
+	 * Stamps a node as reached and collects it (or flags it, if {@link #flagged}).
+	 */
+	void visit(BipartiteNode n){
+		if(flagged){
+			n.setFlag(Algorithms.FLAG_COLORED);
+			flaggedSome = true;
+			return;
+		}
+		n.store.visit(n.id);
+		if(nReached == reached.length){
+			BipartiteNode r[] = new BipartiteNode[2*nReached];
+			System.arraycopy(reached, 0, r, 0, nReached);
+			reached = r;
+		}
+		reached[nReached++] = n;
+	}
+
+	/**
+	 * Flags an equation as {@link Algorithms#FLAG_MARKED} and collects it in {@link #marked},
+	 * unless it is already flagged.
+	 */
+	void mark(BipartiteNode ve){
+		if(ve.hasFlag(Algorithms.FLAG_MARKED))
+			return;
+		ve.setFlag(Algorithms.FLAG_MARKED);
+		if(nMarked == marked.length){
+			BipartiteNode m[] = new BipartiteNode[2*nMarked];
+			System.arraycopy(marked, 0, m, 0, nMarked);
+			marked = m;
+		}
+		marked[nMarked++] = ve;
+	}
+
+	/**
+	 * @return if the node was reached, see {@link #visit(BipartiteNode)}
+	 */
+	boolean visited(BipartiteNode n){
+		return flagged ? n.hasFlag(Algorithms.FLAG_COLORED) : n.store.visited(n.id);
+	}
+
+	/**
+	 * Flags the equations reached, from the given position of {@link #reached} on, as
+	 * {@link Algorithms#FLAG_COLORED}.
+	 */
+	void color(int from){
+		for(int k=from; k<nReached; ++k)
+			reached[k].setFlag(Algorithms.FLAG_COLORED);
+		colored |= from < nReached;
+	}
+
+	/**
+	 * Forgets the equations reached, removing their {@link Algorithms#FLAG_COLORED} if
+	 * they were flagged.
+	 * @param s the store of the graph searched
+	 */
+	void clear(NodeStore s){
+		if(colored){
+			for(int k=0; k<nReached; ++k){
+				if(reached[k].hasFlag(Algorithms.FLAG_COLORED))
+					reached[k].removeFlag(Algorithms.FLAG_COLORED);
+			}
+		}
+		forget(s);
+	}
+
+	/**
+	 * Forgets the equations reached before a sequence of searches, also removing the
+	 * {@link Algorithms#FLAG_COLORED} left by the {@link #flagged} searches (if any).
+	 * @param s the store of the graph searched
+	 */
+	void reset(NodeStore s){
+		if(flaggedSome){
+			s.removeFlag(Algorithms.FLAG_COLORED);
+			flaggedSome = false;
+		}
+		forget(s);
+	}
+
+	/**
+	 * Forgets the equations reached before a sequence of searches, as {@link #reset(NodeStore)},
+	 * except the ones flagged by {@link #color(int)} and still flagged: they stay reached and
+	 * flagged, as the equations left flagged by the previous step of an algorithm.
+	 * @param s the store of the graph searched
+	 */
+	void resume(NodeStore s){
+		int n = 0;
+		if(colored){
+			for(int k=0; k<nReached; ++k){
+				BipartiteNode ve = reached[k];
+				if(ve.id<s.size && s.nodes[ve.id]==ve && ve.hasFlag(Algorithms.FLAG_COLORED))
+					reached[n++] = ve;
+			}
+		}
+		reset(s);
+		for(int k=0; k<n; ++k)
+			visit(reached[k]);
+		color(0);
+	}
+
+	/**
+	 * Forgets the equations reached, in constant time.
+	 * @param s the store of the graph searched
+	 */
+	void forget(NodeStore s){
+		s.newEpoch();
+		nReached = 0;
+		colored = false;
+	}
+
+	/**
+	 * Starts the cheap assignments of all equations at their first edge, in constant time.
+	 * 
+	 * <p>A variable once matched stays matched while the matching is augmented, so the edges
+	 * skipped by a cheap assignment are not tried again. This holds while the graph and its
+	 * matching are changed only by the augmenting searches: the cheap assignments must be
+	 * started again when they are changed otherwise (a differentiation, a compaction, etc.).
+	 * @param s the store of the graph searched
+	 */
+	void newCheap(NodeStore s){
+		if(cheap==null || cheap.length<s.size){
+			int capacity = Math.max(s.size, 16);
+			cheap = new BipartiteEdge[capacity];
+			cheapStamp = new int[capacity];
+			cheapEpoch = 0;
+		}
+		if(++cheapEpoch == Integer.MAX_VALUE){
+			for(int k=0; k<cheapStamp.length; ++k)
+				cheapStamp[k] = 0;
+			cheapEpoch = 1;
+		}
+	}
+
+	/**
+	 * @return the next edge of the equation to be tried for a cheap assignment
+	 */
+	BipartiteEdge cheap(BipartiteNode ve){
+		return cheapStamp[ve.id]==cheapEpoch ? cheap[ve.id] : ve.getEdges();
+	}
+
+	/**
+	 * Sets the next edge of the equation to be tried for a cheap assignment.
+	 */
+	void setCheap(BipartiteNode ve, BipartiteEdge e){
+		cheap[ve.id] = e;
+		cheapStamp[ve.id] = cheapEpoch;
+	}
+
+	/**
+	 * Pushes a node at the given level, its edges are followed from the first one.
+	 */
+	void push(int level, BipartiteNode n){
+		ensure(level + 1);
+		node[level] = n;
+		cursor[level] = n.getEdges();
+	}
+}
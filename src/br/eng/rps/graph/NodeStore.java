@@ -0,0 +1,753 @@
+package br.eng.rps.graph;
+
+import java.util.List;
+
+/**
+ * Structure of arrays holding the state of a set of {@link BipartiteNode}s.
+ *
+ * <p>Each node has a dense <code>int</code> id in its store and its flags, matching,
+ * derivative links and Tarjan indices live in parallel arrays indexed by that id.
+ * The links between nodes (matching and derivatives) are stored as ids, so all linked
+ * nodes must share the same store: when two nodes of different stores are linked, or a
+ * node is added to a graph, the stores are merged by moving the smaller one into the larger.
+ * A merged store keeps a reference to the store it was moved into, see {@link #resolve()}.
+ *
+ * <p>A {@link BipartiteGraph} owns one store holding all its nodes, so bulk operations
+ * like {@link #removeFlag(int)} are linear sweeps over one array.
+ *
+ * <p>While the graph is in a transaction the changes of flags, matching and derivative links
+ * are made through the writers like {@link #setFlag(int, int)}, which save the old values
+ * in the {@link #log}.
+ *
+ * <p>The string labels of the nodes are also kept here, as UTF-8 bytes in a single
+ * arena, see {@link #setLabel(int, String)}. The arena only grows, so it can be shared
+ * by the copies of a store until one of them adds a label.
+ *
+ * <p>The nodes of anonymous graphs (see {@link GraphBuilder}) have no label in the arena
+ * but a number, their index in the graph, kept in the label arrays too: a position
+ * <code>-2-number</code> and the length {@link #NUMBER_EQ} or {@link #NUMBER_VAR}.
+ *
+ * @author rafael
+ */
+final class NodeStore {
+	/** The nodes, by id */
+	BipartiteNode[] nodes;
+	/** Bit flags of the nodes */
+	int[] flag;
+	/** Id of the connected node or -1 */
+	int[] mate;
+	/** Id of the differentiated version of the node or -1 */
+	int[] diff;
+	/** Id of the original version of the node or -1 */
+	int[] orig;
+	/**
+	 * Id of the equation whose edges are derived for the node or -1, only allocated
+	 * when equations are differentiated in the {@link BipartiteGraph#DIFF_DERIVED} mode
+	 */
+	int[] base;
+	/** Derivative order of the node with respect to its {@link #base} */
+	int[] order;
+	/** If the node (a variable) has edges derived from the ones of its original versions */
+	boolean[] lifted;
+	/** Length of the number of an anonymous equation, which is labeled <code>e</code><i>number</i> */
+	static final int NUMBER_EQ = -1;
+	/** Length of the number of an anonymous variable, which is labeled <code>v</code><i>number</i> */
+	static final int NUMBER_VAR = -2;
+	/**
+	 * Position of the label of each node in the {@link #arena}, -1 or the encoded number of the
+	 * node, allocated with the first label or number
+	 */
+	int[] labelPos;
+	/** Length in bytes of the label of each node, or the kind of the number */
+	int[] labelLen;
+	/** UTF-8 bytes of the labels */
+	private byte[] arena;
+	/** Number of bytes used in the arena */
+	private int arenaSize;
+	/** If the arena is shared with another store (and should be copied before written) */
+	private boolean arenaShared;
+	/** Tarjan depth, only allocated when the Tarjan's algorithm runs */
+	int[] depth;
+	/** Tarjan low depth, only allocated when the Tarjan's algorithm runs */
+	int[] lowDepth;
+	/**
+	 * Visit stamp of each node, only allocated when an augmenting path search runs: the
+	 * nodes with <code>visit[id]==epoch</code> were reached since the last {@link #newEpoch()}
+	 */
+	int[] visit;
+	/** The current visit stamp */
+	int epoch;
+	/**
+	 * Position of each node in its list of the graph (equations or variables), only allocated
+	 * when a node is removed (see {@link #indexOf(List, BipartiteNode)}). It is only a hint,
+	 * checked against the list, so the lists can be changed without updating it.
+	 */
+	int[] pos;
+	/**
+	 * Version of the edges and derivative links of the nodes, changed by every change of them:
+	 * the derived edge lists cached in the nodes (see {@link BipartiteNode#getEdges()}) are
+	 * valid while it does not change
+	 */
+	int edgeVersion;
+	/** Version of the ids of the nodes, changed when they are renumbered by {@link #permute(int[])} */
+	int idVersion;
+	/** Number of nodes in the store */
+	int size;
+	/** The store this one was merged into, if some */
+	private NodeStore merged;
+	/** Log of the changes while a transaction is open, see {@link BipartiteGraph#begin()} */
+	UndoLog log;
+
+	/**
+	 * @param capacity the initial capacity
+	 */
+	NodeStore(int capacity){
+		capacity = Math.max(capacity, 1);
+		nodes = new BipartiteNode[capacity];
+		flag = new int[capacity];
+		mate = new int[capacity];
+		diff = new int[capacity];
+		orig = new int[capacity];
+	}
+
+	/**
+	 * Adds a node to the store.
+	 * @return the id of the node
+	 */
+	int add(BipartiteNode n){
+		if(size == nodes.length)
+			ensureCapacity(size + 1);
+		nodes[size] = n;
+		flag[size] = 0;
+		mate[size] = diff[size] = orig[size] = -1;
+		if(depth != null)
+			depth[size] = lowDepth[size] = -1;
+		if(visit != null)
+			visit[size] = 0;
+		if(pos != null)
+			pos[size] = -1;
+		if(base != null){
+			base[size] = -1;
+			order[size] = 0;
+			lifted[size] = false;
+		}
+		if(labelPos != null)
+			labelPos[size] = -1;
+		++edgeVersion;
+		return size++;
+	}
+
+	/**
+	 * Makes room for at least the given number of nodes.
+	 */
+	void ensureCapacity(int capacity){
+		if(capacity <= nodes.length)
+			return;
+		capacity = Math.max(capacity, nodes.length + (nodes.length >> 1) + 1);
+		BipartiteNode n[] = new BipartiteNode[capacity];
+		System.arraycopy(nodes, 0, n, 0, size);
+		nodes = n;
+		flag = grow(flag, capacity);
+		mate = grow(mate, capacity);
+		diff = grow(diff, capacity);
+		orig = grow(orig, capacity);
+		if(depth != null){
+			depth = grow(depth, capacity);
+			lowDepth = grow(lowDepth, capacity);
+		}
+		if(visit != null)
+			visit = grow(visit, capacity);
+		if(pos != null)
+			pos = grow(pos, capacity);
+		if(base != null){
+			base = grow(base, capacity);
+			order = grow(order, capacity);
+			boolean l[] = new boolean[capacity];
+			System.arraycopy(lifted, 0, l, 0, size);
+			lifted = l;
+		}
+		if(labelPos != null){
+			labelPos = grow(labelPos, capacity);
+			labelLen = grow(labelLen, capacity);
+		}
+	}
+
+	private int[] grow(int[] a, int capacity){
+		int b[] = new int[capacity];
+		System.arraycopy(a, 0, b, 0, size);
+		return b;
+	}
+
+	/**
+	 * Allocates the arrays used by the Tarjan's algorithm (if not yet).
+	 */
+	void ensureTarjan(){
+		if(depth != null)
+			return;
+		depth = new int[nodes.length];
+		lowDepth = new int[nodes.length];
+		for(int i=0; i<size; ++i)
+			depth[i] = lowDepth[i] = -1;
+	}
+
+	/**
+	 * Marks a node as reached by the current search.
+	 */
+	void visit(int id){
+		if(visit == null){
+			visit = new int[nodes.length];
+			epoch = 1;
+		}
+		visit[id] = epoch;
+	}
+
+	/**
+	 * @return if the node was reached since the last {@link #newEpoch()}
+	 */
+	boolean visited(int id){
+		return visit!=null && visit[id]==epoch;
+	}
+
+	/**
+	 * Forgets all visits in constant time, by taking a new stamp.
+	 */
+	void newEpoch(){
+		if(visit==null || ++epoch<Integer.MAX_VALUE)
+			return;
+		for(int i=0; i<size; ++i)
+			visit[i] = 0;
+		epoch = 1;
+	}
+
+	/**
+	 * Finds a node of this store in a list of the graph in constant time, using the position
+	 * recorded for it. When the position is stale (the list was changed since it was
+	 * recorded) the positions are taken again from the whole list.
+	 * @return the position of the node in the list, or -1 if it is not there
+	 */
+	int indexOf(List<BipartiteNode> list, BipartiteNode n){
+		if(n.id>=size || nodes[n.id]!=n)
+			return -1;
+		if(pos == null){
+			pos = new int[nodes.length];
+			for(int i=0; i<size; ++i)
+				pos[i] = -1;
+		}
+		int k = pos[n.id];
+		if(k<0 || k>=list.size() || list.get(k)!=n){
+			positions(list, 0);
+			k = pos[n.id];
+			if(k<0 || k>=list.size() || list.get(k)!=n)
+				return -1;
+		}
+		return k;
+	}
+
+	/**
+	 * Records the positions of the nodes of a list, from the given one on.
+	 */
+	void positions(List<BipartiteNode> list, int from){
+		for(int k=from, n=list.size(); k<n; ++k){
+			BipartiteNode node = list.get(k);
+			if(node != null)
+				pos[node.id] = k;
+		}
+	}
+
+	/**
+	 * Allocates the arrays of the derived edges (if not yet).
+	 * @see BipartiteGraph#DIFF_DERIVED
+	 */
+	void ensureDerived(){
+		if(base != null)
+			return;
+		base = new int[nodes.length];
+		order = new int[nodes.length];
+		lifted = new boolean[nodes.length];
+		for(int i=0; i<size; ++i)
+			base[i] = -1;
+	}
+
+	/**
+	 * Allocates the label arrays (if not yet).
+	 */
+	private void ensureLabelArrays(){
+		if(labelPos != null)
+			return;
+		labelPos = new int[nodes.length];
+		labelLen = new int[nodes.length];
+		for(int i=0; i<size; ++i)
+			labelPos[i] = -1;
+	}
+
+	/**
+	 * Allocates the label arrays and the arena (if not yet) and makes room for more bytes in the arena.
+	 * @param bytes the number of bytes to be added
+	 */
+	private void ensureLabels(int bytes){
+		ensureLabelArrays();
+		if(arena == null)
+			arena = new byte[Math.max(64, bytes)];
+		if(arenaShared || arenaSize + bytes > arena.length){
+			int capacity = arena.length;
+			while(arenaSize + bytes > capacity)
+				capacity += (capacity >> 1) + 1;
+			byte a[] = new byte[capacity];
+			System.arraycopy(arena, 0, a, 0, arenaSize);
+			arena = a;
+			arenaShared = false;
+		}
+	}
+
+	/**
+	 * Sets the label of a node, stored as UTF-8 bytes in the arena.
+	 */
+	void setLabel(int id, String label){
+		int n = label.length(), bytes = 0;
+		for(int k=0; k<n; ++k){
+			char c = label.charAt(k);
+			if(Character.isHighSurrogate(c) && k+1<n && Character.isLowSurrogate(label.charAt(k+1))){
+				bytes += 4;
+				++k;
+			}
+			else
+				bytes += c<0x80 ? 1 : (c<0x800 ? 2 : 3);
+		}
+		ensureLabels(bytes);
+		byte a[] = arena;
+		int p = arenaSize;
+		for(int k=0; k<n; ++k){
+			int c = label.charAt(k);
+			if(Character.isHighSurrogate((char)c) && k+1<n && Character.isLowSurrogate(label.charAt(k+1)))
+				c = Character.toCodePoint((char)c, label.charAt(++k));
+			if(c < 0x80)
+				a[p++] = (byte)c;
+			else if(c < 0x800){
+				a[p++] = (byte)(0xC0 | (c >> 6));
+				a[p++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else if(c < 0x10000){
+				a[p++] = (byte)(0xE0 | (c >> 12));
+				a[p++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				a[p++] = (byte)(0x80 | (c & 0x3F));
+			}
+			else{
+				a[p++] = (byte)(0xF0 | (c >> 18));
+				a[p++] = (byte)(0x80 | ((c >> 12) & 0x3F));
+				a[p++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				a[p++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		labelPos[id] = arenaSize;
+		labelLen[id] = p - arenaSize;
+		arenaSize = p;
+	}
+
+	/**
+	 * @return if the node has a label in the arena
+	 */
+	boolean hasLabel(int id){
+		return labelPos!=null && labelPos[id]>=0;
+	}
+
+	/**
+	 * Sets the number of a node of an anonymous graph, replacing its label.
+	 * @param var if the node is a variable
+	 */
+	void setNumber(int id, int number, boolean var){
+		ensureLabelArrays();
+		labelPos[id] = -2 - number;
+		labelLen[id] = var ? NUMBER_VAR : NUMBER_EQ;
+	}
+
+	/**
+	 * @return the number of the node or -1 if it has none
+	 */
+	int number(int id){
+		return labelPos==null || labelPos[id]>=-1 ? -1 : -2 - labelPos[id];
+	}
+
+	/**
+	 * @return the prefix of the label of a numbered node
+	 */
+	char numberPrefix(int id){
+		return labelLen[id]==NUMBER_VAR ? 'v' : 'e';
+	}
+
+	/**
+	 * Builds the label of a numbered node, like <code>e12</code>.
+	 */
+	String numberLabel(int id){
+		return numberPrefix(id) + Integer.toString(number(id));
+	}
+
+	/**
+	 * Continues the computation of a {@link String#hashCode()} over the label of a numbered
+	 * node, without building it.
+	 */
+	int numberHash(int id, int h){
+		h = 31*h + numberPrefix(id);
+		int n = number(id), p = 1;
+		while(p <= n/10)
+			p *= 10;
+		for(; p>0; p/=10)
+			h = 31*h + ('0' + (n/p)%10);
+		return h;
+	}
+
+	/**
+	 * Checks if the label of a numbered node is a prefix of the given string.
+	 * @return the number of characters of the string matched or -1 if the label is not a prefix
+	 */
+	int numberMatch(int id, String s){
+		if(s.length()==0 || s.charAt(0)!=numberPrefix(id))
+			return -1;
+		int n = number(id), p = 1, k = 1;
+		while(p <= n/10)
+			p *= 10;
+		for(; p>0; p/=10){
+			if(k>=s.length() || s.charAt(k++)!='0' + (n/p)%10)
+				return -1;
+		}
+		return k;
+	}
+
+	/**
+	 * Decodes the UTF-8 character starting at the position <code>p</code> of the arena.
+	 * @return the code point, with the number of bytes read in the bits 24 and up
+	 */
+	private int codePoint(int p){
+		int b = arena[p];
+		if(b >= 0)
+			return (1 << 24) | b;
+		if((b & 0xE0) == 0xC0)
+			return (2 << 24) | ((b & 0x1F) << 6) | (arena[p+1] & 0x3F);
+		if((b & 0xF0) == 0xE0)
+			return (3 << 24) | ((b & 0x0F) << 12) | ((arena[p+1] & 0x3F) << 6) | (arena[p+2] & 0x3F);
+		return (4 << 24) | ((b & 0x07) << 18) | ((arena[p+1] & 0x3F) << 12)
+			| ((arena[p+2] & 0x3F) << 6) | (arena[p+3] & 0x3F);
+	}
+
+	/**
+	 * Decodes the label of a node.
+	 * @return the label or <code>null</code> if the node has no label in the arena
+	 */
+	String label(int id){
+		if(!hasLabel(id))
+			return null;
+		char chars[] = new char[labelLen[id]];
+		int n = 0;
+		for(int p=labelPos[id], end=p+labelLen[id]; p<end; ){
+			int c = codePoint(p);
+			p += c >>> 24;
+			n += Character.toChars(c & 0xFFFFFF, chars, n);
+		}
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Continues the computation of a {@link String#hashCode()} over the label of a node,
+	 * without decoding it into a string.
+	 * @param h the hash of the previous characters
+	 */
+	int labelHash(int id, int h){
+		for(int p=labelPos[id], end=p+labelLen[id]; p<end; ){
+			int c = codePoint(p);
+			p += c >>> 24;
+			c &= 0xFFFFFF;
+			if(c < 0x10000)
+				h = 31*h + c;
+			else
+				h = 31*(31*h + highSurrogate(c)) + lowSurrogate(c);
+		}
+		return h;
+	}
+
+	/**
+	 * Checks if the label of a node is a prefix of the given string.
+	 * @return the number of characters of the string matched or -1 if the label is not a prefix
+	 */
+	int labelMatch(int id, String s){
+		int k = 0, n = s.length();
+		for(int p=labelPos[id], end=p+labelLen[id]; p<end; ){
+			int c = codePoint(p);
+			p += c >>> 24;
+			c &= 0xFFFFFF;
+			if(c < 0x10000){
+				if(k>=n || s.charAt(k++)!=c)
+					return -1;
+			}
+			else if(k+1>=n || s.charAt(k++)!=highSurrogate(c) || s.charAt(k++)!=lowSurrogate(c))
+				return -1;
+		}
+		return k;
+	}
+
+	private static char highSurrogate(int c){
+		return (char)(((c - 0x10000) >> 10) + 0xD800);
+	}
+
+	private static char lowSurrogate(int c){
+		return (char)(((c - 0x10000) & 0x3FF) + 0xDC00);
+	}
+
+	/**
+	 * Returns the <code>m</code>-th differentiated version of a node.
+	 * @return the node id or -1 if the node was not differentiated so many times
+	 */
+	int lift(int i, int m){
+		for(; m>0 && i>=0; --m)
+			i = diff[i];
+		return i;
+	}
+
+	/**
+	 * @param version an {@link #idVersion} of this store
+	 * @return if the nodes still have the ids they had at that version: the store was not
+	 * merged into another one and not renumbered since
+	 */
+	boolean sameIds(int version){
+		return merged==null && idVersion==version;
+	}
+
+	/**
+	 * @return the store currently holding the nodes of this one
+	 */
+	NodeStore resolve(){
+		NodeStore s = this;
+		while(s.merged != null)
+			s = s.merged;
+		// compress the path
+		for(NodeStore t = this; t.merged != null && t.merged != s; ){
+			NodeStore next = t.merged;
+			t.merged = s;
+			t = next;
+		}
+		return s;
+	}
+
+	/**
+	 * Merges two stores, the smaller one is moved into the larger.
+	 * @return the store holding the nodes of both
+	 */
+	static NodeStore union(NodeStore a, NodeStore b){
+		a = a.resolve();
+		b = b.resolve();
+		if(a == b)
+			return a;
+		if(a.log!=null && b.log!=null)
+			throw new IllegalStateException("Both graphs are in a transaction");
+		// the ids of a store in a transaction must not change
+		if(b.log!=null || (a.size<b.size && a.log==null)){
+			NodeStore t = a;
+			a = b;
+			b = t;
+		}
+		a.moveIn(b);
+		return a;
+	}
+
+	/**
+	 * Moves all nodes of the given store into this one.
+	 */
+	private void moveIn(NodeStore b){
+		int offset = size;
+		ensureCapacity(size + b.size);
+		if(b.depth != null)
+			ensureTarjan();
+		if(b.visit!=null && visit==null){
+			visit = new int[nodes.length];
+			epoch = 1;
+		}
+		if(b.base != null)
+			ensureDerived();
+		if(b.arena != null){
+			ensureLabels(b.arenaSize);
+			System.arraycopy(b.arena, 0, arena, arenaSize, b.arenaSize);
+		}
+		else if(b.labelPos != null)
+			ensureLabelArrays();
+		for(int k=0; k<b.size; ++k){
+			int i = offset + k;
+			BipartiteNode n = b.nodes[k];
+			nodes[i] = n;
+			flag[i] = b.flag[k];
+			mate[i] = b.mate[k]<0 ? -1 : b.mate[k] + offset;
+			diff[i] = b.diff[k]<0 ? -1 : b.diff[k] + offset;
+			orig[i] = b.orig[k]<0 ? -1 : b.orig[k] + offset;
+			if(depth != null){
+				depth[i] = b.depth==null ? -1 : b.depth[k];
+				lowDepth[i] = b.lowDepth==null ? -1 : b.lowDepth[k];
+			}
+			if(visit != null)
+				visit[i] = b.visited(k) ? epoch : 0;
+			if(pos != null)
+				pos[i] = -1;
+			if(base != null){
+				base[i] = b.base==null || b.base[k]<0 ? -1 : b.base[k] + offset;
+				order[i] = b.order==null ? 0 : b.order[k];
+				lifted[i] = b.lifted!=null && b.lifted[k];
+			}
+			if(labelPos != null){
+				labelPos[i] = b.labelPos==null ? -1 : b.labelPos[k]<0 ? b.labelPos[k] : b.labelPos[k] + arenaSize;
+				labelLen[i] = b.labelPos==null ? 0 : b.labelLen[k];
+			}
+			n.store = this;
+			n.id = i;
+		}
+		size += b.size;
+		if(b.arena != null)
+			arenaSize += b.arenaSize;
+		// no derived list cached with either store is valid
+		edgeVersion = Math.max(edgeVersion, b.edgeVersion) + 1;
+
+		b.merged = this;
+		b.nodes = null;
+		b.flag = b.mate = b.diff = b.orig = b.depth = b.lowDepth = b.base = b.order = b.visit = b.pos = null;
+		b.lifted = null;
+		b.labelPos = b.labelLen = null;
+		b.arena = null;
+		b.size = 0;
+	}
+
+	/**
+	 * Copies the state (flags, matching and derivative links) of the nodes of another store.
+	 *
+	 * <p>This store must hold one node for each node of <code>src</code>, with the same ids
+	 * and no labels of its own.
+	 * The derived edges and the labels are also copied, but not the Tarjan indices.
+	 */
+	void copyState(NodeStore src){
+		int n = src.size;
+		System.arraycopy(src.flag, 0, flag, 0, n);
+		System.arraycopy(src.mate, 0, mate, 0, n);
+		System.arraycopy(src.diff, 0, diff, 0, n);
+		System.arraycopy(src.orig, 0, orig, 0, n);
+		if(src.base != null){
+			ensureDerived();
+			System.arraycopy(src.base, 0, base, 0, n);
+			System.arraycopy(src.order, 0, order, 0, n);
+			System.arraycopy(src.lifted, 0, lifted, 0, n);
+		}
+		if(src.labelPos != null){
+			labelPos = new int[nodes.length];
+			labelLen = new int[nodes.length];
+			System.arraycopy(src.labelPos, 0, labelPos, 0, n);
+			System.arraycopy(src.labelLen, 0, labelLen, 0, n);
+			for(int i=n; i<size; ++i)
+				labelPos[i] = -1;
+			// the arena is shared until one of the stores adds a label
+			arena = src.arena;
+			arenaSize = src.arenaSize;
+			arenaShared = src.arenaShared = true;
+		}
+	}
+
+	/**
+	 * Renumbers the nodes of the store, the node with id <code>i</code> gets the id <code>newId[i]</code>.
+	 *
+	 * <p>All the state is moved along and the links between nodes (matching and derivatives)
+	 * are renamed. The labels stay where they are in the arena.
+	 * @param newId a permutation of the ids <code>0..size-1</code>
+	 */
+	void permute(int[] newId){
+		BipartiteNode n[] = new BipartiteNode[nodes.length];
+		for(int i=0; i<size; ++i){
+			n[newId[i]] = nodes[i];
+			nodes[i].id = newId[i];
+		}
+		nodes = n;
+		flag = permute(flag, newId, false);
+		mate = permute(mate, newId, true);
+		diff = permute(diff, newId, true);
+		orig = permute(orig, newId, true);
+		if(base != null){
+			base = permute(base, newId, true);
+			order = permute(order, newId, false);
+			boolean l[] = new boolean[lifted.length];
+			for(int i=0; i<size; ++i)
+				l[newId[i]] = lifted[i];
+			lifted = l;
+		}
+		if(labelPos != null){
+			labelPos = permute(labelPos, newId, false);
+			labelLen = permute(labelLen, newId, false);
+		}
+		if(depth != null){
+			depth = permute(depth, newId, false);
+			lowDepth = permute(lowDepth, newId, false);
+		}
+		if(visit != null)
+			visit = permute(visit, newId, false);
+		if(pos != null)
+			pos = permute(pos, newId, false);
+		++edgeVersion;
+		++idVersion;
+	}
+
+	/**
+	 * @param ids the values are node ids to be renamed too
+	 */
+	private int[] permute(int[] a, int[] newId, boolean ids){
+		int b[] = new int[a.length];
+		for(int i=0; i<size; ++i)
+			b[newId[i]] = ids && a[i]>=0 ? newId[a[i]] : a[i];
+		return b;
+	}
+
+	/**
+	 * Sets the flags of a node, saving the old ones in the log if some.
+	 */
+	void setFlag(int id, int f){
+		if(log != null)
+			log.save(UndoLog.FLAG, id, flag[id]);
+		flag[id] = f;
+	}
+
+	/**
+	 * Sets the mate of a node, saving the old one in the log if some.
+	 */
+	void setMate(int id, int m){
+		if(log != null)
+			log.save(UndoLog.MATE, id, mate[id]);
+		mate[id] = m;
+	}
+
+	/**
+	 * Sets the differentiated version of a node, saving the old one in the log if some.
+	 */
+	void setDiff(int id, int d){
+		if(log != null)
+			log.save(UndoLog.DIFF, id, diff[id]);
+		diff[id] = d;
+		++edgeVersion;
+	}
+
+	/**
+	 * Marks a variable as having derived edges, saving the old state in the log if some.
+	 */
+	void setLifted(int id){
+		if(lifted[id])
+			return;
+		if(log != null)
+			log.save(UndoLog.LIFTED, id, 0);
+		lifted[id] = true;
+		++edgeVersion;
+	}
+
+	/**
+	 * Removes the given bit flag of all nodes in the store.
+	 */
+	void removeFlag(int f){
+		int mask = ~f;
+		if(log != null){
+			for(int i=0; i<size; ++i){
+				if((flag[i] & f) != 0)
+					setFlag(i, flag[i] & mask);
+			}
+			return;
+		}
+		for(int i=0; i<size; ++i)
+			flag[i] &= mask;
+	}
+}
@@ -0,0 +1,610 @@
+package br.eng.rps.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Bipartite graph stored outside the Java heap, for very large models.
+ *
+ * <p>The structure is the same of {@link CompactGraph} (compressed sparse rows for
+ * both partitions), but the offsets are <code>long</code>s and all arrays, including
+ * the matching, the flags and the node labels (as UTF-8 bytes), live in an
+ * {@link OffHeapMemory} block.
+ * The block is either allocated directly ({@link #allocate(int, int, long, long)})
+ * or mapped from a file ({@link #create(File, int, int, long, long)} and
+ * {@link #open(File)}), so graphs with hundreds of millions of edges can be analyzed
+ * with a small heap and almost no work for the garbage collector.
+ *
+ * <p>A graph is filled row by row, the equations in order, and then finished:
+ * <blockquote><pre>
+ * OffHeapGraph G = OffHeapGraph.create(file, ne, nv, nnz, 0);
+ * for(int i=0; i&lt;ne; ++i)
+ * 	G.addRow(vars, n); // the variable indices of equation i
+ * G.finish();
+ *
+ * Algorithms.MaximumMatching(G);
+ * </pre></blockquote>
+ * Once finished, {@link Algorithms#MaximumMatching(OffHeapGraph)},
+ * {@link Algorithms#DulmageMendelshon(OffHeapGraph, int[])} and {@link Tarjan#tarjan(OffHeapGraph)}
+ * can be executed. Their scratch space is also allocated outside the heap.
+ *
+ * <p><b>NOTE</b> the file format uses the native byte order of the machine.
+ *
+ * @author rafael
+ */
+public class OffHeapGraph {
+	/** "RPSGRAPH" */
+	private static final long MAGIC = 0x5250534752415048L;
+	private static final int HEADER = 64;
+
+	private final OffHeapMemory mem;
+	private final RandomAccessFile file;
+
+	private final int ne;
+	private final int nv;
+	private final long nnz;
+	private final long labelBytes;
+
+	// offsets of the sections
+	private final long eqStart;
+	private final long varStart;
+	private final long eqAdj;
+	private final long varAdj;
+	private final long eqMate;
+	private final long varMate;
+	private final long eqFlag;
+	private final long varFlag;
+	private final long varComp;
+	private final long labelPos;
+	private final long labelLen;
+	private final long labels;
+	private final long size;
+
+	private static long align(long off){
+		return (off + 7) & ~7L;
+	}
+
+	private OffHeapGraph(OffHeapMemory mem, RandomAccessFile file, int ne, int nv, long nnz, long labelBytes){
+		this.file = file;
+		this.ne = ne;
+		this.nv = nv;
+		this.nnz = nnz;
+		this.labelBytes = labelBytes;
+		eqStart = HEADER;
+		varStart = eqStart + 8L*(ne+1);
+		eqAdj = varStart + 8L*(nv+1);
+		varAdj = align(eqAdj + 4L*nnz);
+		eqMate = align(varAdj + 4L*nnz);
+		varMate = align(eqMate + 4L*ne);
+		eqFlag = align(varMate + 4L*nv);
+		varFlag = align(eqFlag + 4L*ne);
+		varComp = align(varFlag + 4L*nv);
+		labelPos = align(varComp + 4L*nv);
+		labelLen = labelPos + 8L*(ne+nv);
+		labels = align(labelLen + 4L*(ne+nv));
+		size = align(labels + labelBytes);
+		this.mem = mem;
+	}
+
+	private OffHeapGraph(OffHeapGraph layout, OffHeapMemory mem){
+		this(mem, layout.file, layout.ne, layout.nv, layout.nnz, layout.labelBytes);
+	}
+
+	/**
+	 * Allocates a new (empty) graph outside the heap.
+	 * @param ne the number of equations
+	 * @param nv the number of variables
+	 * @param nnz the number of edges
+	 * @param labelBytes room for the labels (UTF-8 bytes), 0 if the nodes have no labels
+	 */
+	public static OffHeapGraph allocate(int ne, int nv, long nnz, long labelBytes){
+		OffHeapGraph layout = new OffHeapGraph(null, null, ne, nv, nnz, labelBytes);
+		OffHeapGraph G = new OffHeapGraph(layout, OffHeapMemory.allocate(layout.size));
+		G.init();
+		return G;
+	}
+
+	/**
+	 * Creates a new (empty) graph mapped into the given file.
+	 * @see #allocate(int, int, long, long)
+	 * @throws IOException if the file cannot be created
+	 */
+	public static OffHeapGraph create(File f, int ne, int nv, long nnz, long labelBytes) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(f, "rw");
+		file.setLength(0);
+		OffHeapGraph layout = new OffHeapGraph(null, file, ne, nv, nnz, labelBytes);
+		file.setLength(layout.size);
+		OffHeapGraph G = new OffHeapGraph(layout, OffHeapMemory.map(file.getChannel(), layout.size, false));
+		G.init();
+		return G;
+	}
+
+	/**
+	 * Opens a graph previously stored in the given file.
+	 * @throws IOException if the file cannot be read or is not a graph file
+	 */
+	public static OffHeapGraph open(File f) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(f, "rw");
+		if(file.length() < HEADER){
+			file.close();
+			throw new IOException("Not a graph file: " + f);
+		}
+		OffHeapMemory header = OffHeapMemory.map(file.getChannel(), HEADER, true);
+		if(header.getLong(0) != MAGIC){
+			file.close();
+			throw new IOException("Not a graph file (or other byte order): " + f);
+		}
+		OffHeapGraph layout = new OffHeapGraph(null, file, header.getInt(8), header.getInt(12),
+				header.getLong(16), header.getLong(24));
+		if(file.length() < layout.size){
+			file.close();
+			throw new IOException("Truncated graph file: " + f);
+		}
+		return new OffHeapGraph(layout, OffHeapMemory.map(file.getChannel(), layout.size, false));
+	}
+
+	/**
+	 * Copies a graph (including its current matching and flags) outside the heap.
+	 * @param G the graph to copy
+	 * @param f the file where to store the copy or <code>null</code> for memory not backed by a file
+	 * @throws IOException if the file cannot be created
+	 */
+	public static OffHeapGraph copyOf(BipartiteGraph G, File f) throws IOException {
+		CompactGraph C = G.freeze();
+		int ne = C.ne(), nv = C.nv();
+		byte eqLabels[][] = new byte[ne][], varLabels[][] = new byte[nv][];
+		long labelBytes = 0;
+		for(int i=0; i<ne; ++i)
+			labelBytes += (eqLabels[i] = utf8(C.eqs[i].toString())).length;
+		for(int j=0; j<nv; ++j)
+			labelBytes += (varLabels[j] = utf8(C.vars[j].toString())).length;
+
+		OffHeapGraph O = f==null ? allocate(ne, nv, C.nnz(), labelBytes) : create(f, ne, nv, C.nnz(), labelBytes);
+		for(int i=0; i<ne; ++i){
+			O.addRow(C.eqAdj, C.eqStart[i], C.eqStart[i+1]-C.eqStart[i]);
+			O.setLabel(i, eqLabels[i]);
+			O.mem.putInt(O.eqFlag + 4L*i, C.eqs[i].store.flag[C.eqs[i].id]);
+		}
+		for(int j=0; j<nv; ++j){
+			O.setLabel(ne+j, varLabels[j]);
+			O.mem.putInt(O.varFlag + 4L*j, C.vars[j].store.flag[C.vars[j].id]);
+		}
+		O.finish();
+
+		int mate[] = new int[ne], varMate[] = new int[nv];
+		C.readMatching(mate, varMate);
+		for(int i=0; i<ne; ++i){
+			if(mate[i]>=0)
+				O.connect(i, mate[i]);
+		}
+		return O;
+	}
+
+	private static byte[] utf8(String s){
+		try{
+			return s.getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	/** Writes the header and the initial state of an empty graph */
+	private void init(){
+		mem.putLong(0, MAGIC);
+		mem.putInt(8, ne);
+		mem.putInt(12, nv);
+		mem.putLong(16, nnz);
+		mem.putLong(24, labelBytes);
+		setRows(0);
+		setLabelEnd(0);
+		mem.putLong(eqStart, 0);
+		mem.fillInt(eqMate, ne, -1);
+		mem.fillInt(varMate, nv, -1);
+		mem.fillInt(varComp, nv, -1);
+		mem.fillInt(labelLen, ne+nv, -1);
+	}
+
+	/** Number of rows added, kept in the header so that a partially built file can be resumed */
+	private int rows(){
+		return mem.getInt(32);
+	}
+	private void setRows(int r){
+		mem.putInt(32, r);
+	}
+	private boolean finished(){
+		return mem.getInt(36) != 0;
+	}
+	private long labelEnd(){
+		return mem.getLong(40);
+	}
+	private void setLabelEnd(long e){
+		mem.putLong(40, e);
+	}
+
+	/**
+	 * Adds the edges of the next equation.
+	 * @param vars the variable indices adjacent to the equation
+	 * @param n the number of variables
+	 */
+	public void addRow(int[] vars, int n){
+		addRow(vars, 0, n);
+	}
+
+	private void addRow(int[] vars, int off, int n){
+		int r = rows();
+		if(finished() || r >= ne)
+			throw new IllegalStateException("All rows already added");
+		long p = mem.getLong(eqStart + 8L*r);
+		if(p + n > nnz)
+			throw new IllegalStateException("More edges than allocated: " + nnz);
+		for(int k=0; k<n; ++k){
+			int j = vars[off+k];
+			if(j<0 || j>=nv)
+				throw new IndexOutOfBoundsException("Variable index: " + j);
+			mem.putInt(eqAdj + 4L*(p+k), j);
+		}
+		mem.putLong(eqStart + 8L*(r+1), p + n);
+		setRows(r+1);
+	}
+
+	/**
+	 * Sets the label of an equation.
+	 * @throws IllegalStateException if there is no room left for the label
+	 */
+	public void setEqLabel(int i, String label){
+		setLabel(i, utf8(label));
+	}
+
+	/**
+	 * Sets the label of a variable.
+	 * @throws IllegalStateException if there is no room left for the label
+	 */
+	public void setVarLabel(int j, String label){
+		setLabel(ne+j, utf8(label));
+	}
+
+	private void setLabel(int k, byte[] b){
+		long end = labelEnd();
+		if(end + b.length > labelBytes)
+			throw new IllegalStateException("No room left for labels: " + labelBytes);
+		for(int i=0; i<b.length; ++i)
+			mem.put(labels + end + i, b[i]);
+		mem.putLong(labelPos + 8L*k, end);
+		mem.putInt(labelLen + 4L*k, b.length);
+		setLabelEnd(end + b.length);
+	}
+
+	private String getLabel(int k){
+		int n = mem.getInt(labelLen + 4L*k);
+		if(n < 0)
+			return null;
+		long p = labels + mem.getLong(labelPos + 8L*k);
+		byte b[] = new byte[n];
+		for(int i=0; i<n; ++i)
+			b[i] = mem.get(p + i);
+		try{
+			return new String(b, "UTF-8");
+		}
+		catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	/**
+	 * Builds the variable side of the graph, should be called after all rows were added.
+	 * @throws IllegalStateException if not all rows were added
+	 */
+	public void finish(){
+		if(finished())
+			return;
+		if(rows() != ne)
+			throw new IllegalStateException("Only " + rows() + " of " + ne + " rows added");
+		long n = mem.getLong(eqStart + 8L*ne);
+
+		// count the variable degrees
+		for(int j=0; j<=nv; ++j)
+			mem.putLong(varStart + 8L*j, 0);
+		for(long p=0; p<n; ++p){
+			long off = varStart + 8L*(mem.getInt(eqAdj + 4*p) + 1);
+			mem.putLong(off, mem.getLong(off) + 1);
+		}
+		for(int j=0; j<nv; ++j)
+			mem.putLong(varStart + 8L*(j+1), mem.getLong(varStart + 8L*(j+1)) + mem.getLong(varStart + 8L*j));
+
+		// fill the equations of each variable
+		OffHeapMemory pos = OffHeapMemory.allocate(8L*Math.max(nv, 1));
+		for(int j=0; j<nv; ++j)
+			pos.putLong(8L*j, mem.getLong(varStart + 8L*j));
+		for(int i=0; i<ne; ++i){
+			for(long p=eqBegin(i), end=eqEnd(i); p<end; ++p){
+				int j = mem.getInt(eqAdj + 4*p);
+				long q = pos.getLong(8L*j);
+				mem.putInt(varAdj + 4*q, i);
+				pos.putLong(8L*j, q+1);
+			}
+		}
+		mem.putInt(36, 1);
+	}
+
+	/**
+	 * Writes all changes back to the file (if any) and closes it.
+	 */
+	public void close() throws IOException {
+		mem.force();
+		if(file != null)
+			file.close();
+	}
+
+	/** @return The number of V_e nodes. */
+	public int ne(){
+		return ne;
+	}
+	/** @return The number of V_v nodes. */
+	public int nv(){
+		return nv;
+	}
+	/** @return The number of edges. */
+	public long nnz(){
+		return mem.getLong(eqStart + 8L*rows());
+	}
+	/** @return the position of the first variable of the equation i */
+	public long eqBegin(int i){
+		return mem.getLong(eqStart + 8L*i);
+	}
+	/** @return the position after the last variable of the equation i */
+	public long eqEnd(int i){
+		return mem.getLong(eqStart + 8L*(i+1));
+	}
+	/** @return the variable index at the given position, see {@link #eqBegin(int)} */
+	public int eqAdj(long p){
+		return mem.getInt(eqAdj + 4*p);
+	}
+	/** @return the position of the first equation of the variable j */
+	public long varBegin(int j){
+		return mem.getLong(varStart + 8L*j);
+	}
+	/** @return the position after the last equation of the variable j */
+	public long varEnd(int j){
+		return mem.getLong(varStart + 8L*(j+1));
+	}
+	/** @return the equation index at the given position, see {@link #varBegin(int)} */
+	public int varAdj(long p){
+		return mem.getInt(varAdj + 4*p);
+	}
+	/** @return the label of the equation or <code>null</code> */
+	public String getEqLabel(int i){
+		return getLabel(i);
+	}
+	/** @return the label of the variable or <code>null</code> */
+	public String getVarLabel(int j){
+		return getLabel(ne+j);
+	}
+	/** @return the variable connected with the equation i or -1 */
+	public int getEqMate(int i){
+		return mem.getInt(eqMate + 4L*i);
+	}
+	/** @return the equation connected with the variable j or -1 */
+	public int getVarMate(int j){
+		return mem.getInt(varMate + 4L*j);
+	}
+	/** @return <code>true</code> if the equation i has the given flag */
+	public boolean hasEqFlag(int i, int f){
+		return (mem.getInt(eqFlag + 4L*i) & f) != 0;
+	}
+	/** @return <code>true</code> if the variable j has the given flag */
+	public boolean hasVarFlag(int j, int f){
+		return (mem.getInt(varFlag + 4L*j) & f) != 0;
+	}
+	/** Adds a flag to the variable j (e.g. {@link Algorithms#FLAG_DELETED}) */
+	public void setVarFlag(int j, int f){
+		mem.putInt(varFlag + 4L*j, mem.getInt(varFlag + 4L*j) | f);
+	}
+	/**
+	 * @return the strongly connected component of the variable j computed by
+	 * {@link Tarjan#tarjan(OffHeapGraph)} or -1
+	 */
+	public int getComponent(int j){
+		return mem.getInt(varComp + 4L*j);
+	}
+
+	/**
+	 * Connects the equation i with the variable j (or disconnects it if j is -1).
+	 * @see BipartiteNode#connect(BipartiteNode)
+	 */
+	public void connect(int i, int j){
+		int old = getEqMate(i);
+		if(old >= 0)
+			mem.putInt(varMate + 4L*old, -1);
+		mem.putInt(eqMate + 4L*i, j);
+		if(j >= 0)
+			mem.putInt(varMate + 4L*j, i);
+	}
+
+	/**
+	 * Clears the current matching.
+	 */
+	public void clearMatching(){
+		mem.fillInt(eqMate, ne, -1);
+		mem.fillInt(varMate, nv, -1);
+	}
+
+	private void checkFinished(){
+		if(!finished())
+			throw new IllegalStateException("Graph not finished");
+	}
+
+	/**
+	 * @return the first free and not deleted variable of the equation or -1
+	 */
+	private int freeMate(int ve){
+		for(long p=eqBegin(ve), end=eqEnd(ve); p<end; ++p){
+			int vv = eqAdj(p);
+			if(getVarMate(vv)<0 && !hasVarFlag(vv, Algorithms.FLAG_DELETED))
+				return vv;
+		}
+		return -1;
+	}
+
+	/**
+	 * @see Algorithms#MaximumMatching(OffHeapGraph)
+	 */
+	boolean maximumMatching(){
+		checkFinished();
+		// scratch: cursor (long), visited, stack and via (int)
+		OffHeapMemory s = OffHeapMemory.allocate(20L*Math.max(ne, 1));
+		long cursor = 0, visited = 8L*ne, stack = 12L*ne, via = 16L*ne;
+
+		boolean isPerfect = true;
+		for(int root=0; root<ne; ++root){
+			if(getEqMate(root) >= 0)
+				continue;
+			int stamp = root+1, top = 0;
+			int free = freeMate(root);
+			s.putInt(stack, root);
+			s.putInt(visited + 4L*root, stamp);
+			s.putLong(cursor + 8L*root, eqBegin(root));
+			while(free<0 && top>=0){
+				int ve = s.getInt(stack + 4L*top);
+				long p = s.getLong(cursor + 8L*ve);
+				if(p == eqEnd(ve)){
+					--top;
+					continue;
+				}
+				s.putLong(cursor + 8L*ve, p+1);
+				int vv = eqAdj(p);
+				int ve2 = getVarMate(vv);
+				if(ve2>=0 && s.getInt(visited + 4L*ve2)!=stamp && !hasVarFlag(vv, Algorithms.FLAG_DELETED)){
+					s.putInt(via + 4L*top, vv);
+					s.putInt(stack + 4L*(++top), ve2);
+					s.putInt(visited + 4L*ve2, stamp);
+					s.putLong(cursor + 8L*ve2, eqBegin(ve2));
+					free = freeMate(ve2);
+				}
+			}
+			if(free < 0){
+				isPerfect = false;
+				continue;
+			}
+			// flip the alternating path
+			for(int vv=free; top>=0; --top){
+				int ve = s.getInt(stack + 4L*top);
+				mem.putInt(eqMate + 4L*ve, vv);
+				mem.putInt(varMate + 4L*vv, ve);
+				if(top>0)
+					vv = s.getInt(via + 4L*(top-1));
+			}
+		}
+		return isPerfect;
+	}
+
+	/**
+	 * @see Algorithms#DulmageMendelshon(OffHeapGraph, int[])
+	 */
+	void dulmageMendelshon(int[] partitionSizes){
+		checkFinished();
+		OffHeapMemory stack = OffHeapMemory.allocate(4L*Math.max(Math.max(ne, nv), 1));
+		partitionSizes[0] = partitionSizes[1] = 0;
+		// mark the over constrained partition
+		for(int i=0; i<ne; ++i){
+			if(getEqMate(i)<0)
+				partitionSizes[0] += mark(i, eqStart, eqAdj, varMate, eqFlag, Algorithms.FLAG_OVER, stack);
+		}
+		// mark the under constrained partition
+		for(int j=0; j<nv; ++j){
+			if(getVarMate(j)<0)
+				partitionSizes[1] += mark(j, varStart, varAdj, eqMate, varFlag, Algorithms.FLAG_UNDER, stack);
+		}
+	}
+
+	/**
+	 * Marks the alternating paths starting on the node v of one side.
+	 * @return the number of nodes marked
+	 */
+	private int mark(int v, long start, long adj, long mate, long flags, int flag, OffHeapMemory stack){
+		if((mem.getInt(flags + 4L*v) & flag) != 0)
+			return 0;
+		mem.putInt(flags + 4L*v, mem.getInt(flags + 4L*v) | flag);
+		int nMarked = 1, top = 0;
+		stack.putInt(0, v);
+		while(top>=0){
+			int u = stack.getInt(4L*top--);
+			for(long p=mem.getLong(start + 8L*u), end=mem.getLong(start + 8L*(u+1)); p<end; ++p){
+				int u2 = mem.getInt(mate + 4L*mem.getInt(adj + 4*p));
+				if(u2>=0 && (mem.getInt(flags + 4L*u2) & flag) == 0){
+					mem.putInt(flags + 4L*u2, mem.getInt(flags + 4L*u2) | flag);
+					stack.putInt(4L*(++top), u2);
+					++nMarked;
+				}
+			}
+		}
+		return nMarked;
+	}
+
+	/**
+	 * @see Tarjan#tarjan(OffHeapGraph)
+	 */
+	int tarjan(){
+		checkFinished();
+		// scratch: cursor (long), depth, lowDepth, path and open (int)
+		OffHeapMemory s = OffHeapMemory.allocate(24L*Math.max(nv, 1));
+		long cursor = 0, depth = 8L*nv, lowDepth = 12L*nv, path = 16L*nv, open = 20L*nv;
+		s.fillInt(depth, nv, -1);
+		mem.fillInt(varComp, nv, -1);
+		int index = 0, nOpen = 0, nComp = 0;
+
+		for(int root=0; root<nv; ++root){
+			if(s.getInt(depth + 4L*root) >= 0)
+				continue;
+			int top = 0;
+			s.putInt(path, root);
+			s.putInt(depth + 4L*root, index);
+			s.putInt(lowDepth + 4L*root, index++);
+			s.putInt(open + 4L*nOpen++, root);
+			int ve = getVarMate(root);
+			s.putLong(cursor + 8L*root, ve<0 ? 0 : eqBegin(ve));
+
+			while(top>=0){
+				int v = s.getInt(path + 4L*top);
+				ve = getVarMate(v);
+				long p = s.getLong(cursor + 8L*v);
+				if(ve>=0 && p<eqEnd(ve)){
+					s.putLong(cursor + 8L*v, p+1);
+					int n = eqAdj(p);
+					int dn = s.getInt(depth + 4L*n);
+					if(dn == -1){
+						s.putInt(path + 4L*(++top), n);
+						s.putInt(depth + 4L*n, index);
+						s.putInt(lowDepth + 4L*n, index++);
+						s.putInt(open + 4L*nOpen++, n);
+						int ve2 = getVarMate(n);
+						s.putLong(cursor + 8L*n, ve2<0 ? 0 : eqBegin(ve2));
+					}
+					else if(getComponent(n) < 0){
+						// visited and not assigned to a component yet, so it is in the stack
+						s.putInt(lowDepth + 4L*v, Math.min(s.getInt(lowDepth + 4L*v), dn));
+					}
+					continue;
+				}
+
+				// Is v the root of an SCC
+				int low = s.getInt(lowDepth + 4L*v);
+				if(low == s.getInt(depth + 4L*v)){
+					int n;
+					do{
+						n = s.getInt(open + 4L*(--nOpen));
+						mem.putInt(varComp + 4L*n, nComp);
+					}while(n != v);
+					++nComp;
+				}
+				if(--top>=0){
+					long up = lowDepth + 4L*s.getInt(path + 4L*top);
+					s.putInt(up, Math.min(s.getInt(up), low));
+				}
+			}
+		}
+		return nComp;
+	}
+}
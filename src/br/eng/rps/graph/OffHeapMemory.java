@@ -0,0 +1,105 @@
+package br.eng.rps.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A block of memory outside the Java heap addressed by <code>long</code> byte offsets.
+ *
+ * <p>A single {@link ByteBuffer} is limited to 2GB, so the memory is split in chunks
+ * of 2^30 bytes. The memory is either allocated directly or mapped from a file.
+ * Values are stored in the native byte order and the <code>int</code> and <code>long</code>
+ * accessors must be used with offsets aligned to their size, so that a value never
+ * crosses the boundary of a chunk.
+ *
+ * @author rafael
+ */
+final class OffHeapMemory {
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+	private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final ByteBuffer[] chunks;
+	/** The size in bytes */
+	final long size;
+
+	private OffHeapMemory(long size){
+		this.size = size;
+		chunks = new ByteBuffer[(int)((size + CHUNK_MASK) >>> CHUNK_BITS)];
+	}
+
+	/**
+	 * Allocates (zeroed) memory outside the heap.
+	 * @param size the size in bytes
+	 */
+	static OffHeapMemory allocate(long size){
+		OffHeapMemory m = new OffHeapMemory(size);
+		for(int c=0; c<m.chunks.length; ++c)
+			m.chunks[c] = ByteBuffer.allocateDirect(m.chunkSize(c)).order(ByteOrder.nativeOrder());
+		return m;
+	}
+
+	/**
+	 * Maps a region of a file into memory.
+	 * @param channel the file channel
+	 * @param size the size in bytes, the file grows if needed
+	 * @param readOnly if <code>true</code> the memory cannot be changed
+	 */
+	static OffHeapMemory map(FileChannel channel, long size, boolean readOnly) throws IOException {
+		OffHeapMemory m = new OffHeapMemory(size);
+		FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+		for(int c=0; c<m.chunks.length; ++c){
+			m.chunks[c] = channel.map(mode, (long)c << CHUNK_BITS, m.chunkSize(c)).order(ByteOrder.nativeOrder());
+		}
+		return m;
+	}
+
+	private int chunkSize(int c){
+		return (int)Math.min(CHUNK_SIZE, size - ((long)c << CHUNK_BITS));
+	}
+
+	/**
+	 * Writes any changes of a mapped memory back to the file.
+	 */
+	void force(){
+		for(ByteBuffer b : chunks){
+			if(b instanceof MappedByteBuffer)
+				((MappedByteBuffer)b).force();
+		}
+	}
+
+	int getInt(long off){
+		return chunks[(int)(off >>> CHUNK_BITS)].getInt((int)(off & CHUNK_MASK));
+	}
+
+	void putInt(long off, int v){
+		chunks[(int)(off >>> CHUNK_BITS)].putInt((int)(off & CHUNK_MASK), v);
+	}
+
+	long getLong(long off){
+		return chunks[(int)(off >>> CHUNK_BITS)].getLong((int)(off & CHUNK_MASK));
+	}
+
+	void putLong(long off, long v){
+		chunks[(int)(off >>> CHUNK_BITS)].putLong((int)(off & CHUNK_MASK), v);
+	}
+
+	byte get(long off){
+		return chunks[(int)(off >>> CHUNK_BITS)].get((int)(off & CHUNK_MASK));
+	}
+
+	void put(long off, byte v){
+		chunks[(int)(off >>> CHUNK_BITS)].put((int)(off & CHUNK_MASK), v);
+	}
+
+	/**
+	 * Fills <code>n</code> consecutive <code>int</code>s with the given value.
+	 */
+	void fillInt(long off, long n, int v){
+		for(long k=0; k<n; ++k)
+			putInt(off + 4*k, v);
+	}
+}
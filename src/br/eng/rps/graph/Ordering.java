@@ -0,0 +1,233 @@
+package br.eng.rps.graph;
+
+/**
+ * A renumbering of the equations and variables of a graph.
+ *
+ * <p>The nodes are kept in the order they were added (usually the order of the DOT file),
+ * so the searches of {@link Algorithms} and {@link Tarjan} jump all over the node arrays.
+ * An ordering such as {@link #reverseCuthillMcKee(CompactGraph)} places the nodes that
+ * share edges close to each other; it is applied by {@link BipartiteGraph#reorder(Ordering)}
+ * before the analysis:
+ * <blockquote><pre>
+ * Ordering P = Ordering.reverseCuthillMcKee(G.freeze());
+ * G.reorder(P);
+ * CompactGraph C = G.freeze();
+ * Algorithms.MaximumMatching(C);
+ * ...
+ * int i = P.oldEq(k); // the original position of the k-th equation
+ * G.reorder(P.inverse()); // back to the original order, if needed
+ * </pre></blockquote>
+ * The results stored in the nodes (matching, flags) do not depend on the order,
+ * only the positions in the lists do.
+ *
+ * @author rafael
+ */
+public class Ordering {
+	/** Original position of the equation at each new position */
+	final int[] eqOrder;
+	/** Original position of the variable at each new position */
+	final int[] varOrder;
+	/** New position of each equation, by original position */
+	private final int[] eqPos;
+	/** New position of each variable, by original position */
+	private final int[] varPos;
+
+	/**
+	 * Creates an ordering given the original position of the nodes at each new position.
+	 * @param eqOrder a permutation of the equation positions
+	 * @param varOrder a permutation of the variable positions
+	 * @throws IllegalArgumentException if one of the arrays is not a permutation
+	 */
+	public Ordering(int[] eqOrder, int[] varOrder){
+		this.eqOrder = eqOrder.clone();
+		this.varOrder = varOrder.clone();
+		eqPos = invert(eqOrder);
+		varPos = invert(varOrder);
+	}
+
+	private static int[] invert(int[] order){
+		int pos[] = new int[order.length];
+		for(int k=0; k<pos.length; ++k)
+			pos[k] = -1;
+		for(int k=0; k<order.length; ++k){
+			int i = order[k];
+			if(i<0 || i>=order.length || pos[i]>=0)
+				throw new IllegalArgumentException("Not a permutation");
+			pos[i] = k;
+		}
+		return pos;
+	}
+
+	public int ne(){
+		return eqOrder.length;
+	}
+
+	public int nv(){
+		return varOrder.length;
+	}
+
+	/**
+	 * @param k the new position of an equation
+	 * @return the original position of the equation
+	 */
+	public int oldEq(int k){
+		return eqOrder[k];
+	}
+
+	/**
+	 * @param i the original position of an equation
+	 * @return the new position of the equation
+	 */
+	public int newEq(int i){
+		return eqPos[i];
+	}
+
+	/**
+	 * @param k the new position of a variable
+	 * @return the original position of the variable
+	 */
+	public int oldVar(int k){
+		return varOrder[k];
+	}
+
+	/**
+	 * @param j the original position of a variable
+	 * @return the new position of the variable
+	 */
+	public int newVar(int j){
+		return varPos[j];
+	}
+
+	/**
+	 * @return the ordering that brings the nodes back to their original positions
+	 */
+	public Ordering inverse(){
+		return new Ordering(eqPos, varPos);
+	}
+
+	/**
+	 * Reverse Cuthill-McKee ordering of the bipartite graph.
+	 *
+	 * <p>The equations and variables are visited together in breadth first order, starting
+	 * each connected component from a node of minimum degree (moved to a pseudo-peripheral
+	 * node) and taking the neighbours of each node by increasing degree. Each partition is
+	 * then numbered in the reverse order of the visit, so the nonzeros of the incidence
+	 * matrix gather close to its diagonal.
+	 *
+	 * @param C the snapshot of the graph
+	 * @return the ordering, to be applied by {@link BipartiteGraph#reorder(Ordering)}
+	 */
+	public static Ordering reverseCuthillMcKee(CompactGraph C){
+		int ne = C.ne(), n = ne + C.nv();
+		int visit[] = new int[n], queue[] = new int[n], dist[] = new int[n];
+		boolean seen[] = new boolean[n];
+		int buf[] = new int[16];
+		int count = 0;
+
+		// the starting candidates by increasing degree (counting sort)
+		int maxDegree = 0;
+		for(int u=0; u<n; ++u)
+			maxDegree = Math.max(maxDegree, degree(C, u));
+		int first[] = new int[maxDegree+2];
+		for(int u=0; u<n; ++u)
+			++first[degree(C, u)+1];
+		for(int d=0; d<=maxDegree; ++d)
+			first[d+1] += first[d];
+		int byDegree[] = new int[n];
+		for(int u=0; u<n; ++u)
+			byDegree[first[degree(C, u)]++] = u;
+
+		for(int s : byDegree){
+			if(seen[s])
+				continue;
+			int root = peripheral(C, s, queue, dist);
+			// breadth first, neighbours by increasing degree
+			int head = count;
+			visit[count++] = root;
+			seen[root] = true;
+			while(head < count){
+				int u = visit[head++];
+				int m = 0;
+				int start[] = u<ne ? C.eqStart : C.varStart, adj[] = u<ne ? C.eqAdj : C.varAdj;
+				int r = u<ne ? u : u-ne, offset = u<ne ? ne : 0;
+				for(int p=start[r]; p<start[r+1]; ++p){
+					int w = adj[p] + offset;
+					if(seen[w])
+						continue;
+					seen[w] = true;
+					if(m == buf.length){
+						int b[] = new int[2*m];
+						System.arraycopy(buf, 0, b, 0, m);
+						buf = b;
+					}
+					// insertion by degree, the neighbour lists are short
+					int d = degree(C, w), k = m++;
+					for(; k>0 && degree(C, buf[k-1])>d; --k)
+						buf[k] = buf[k-1];
+					buf[k] = w;
+				}
+				System.arraycopy(buf, 0, visit, count, m);
+				count += m;
+			}
+		}
+
+		int eqOrder[] = new int[ne], varOrder[] = new int[n-ne];
+		int ke = 0, kv = 0;
+		for(int k=n-1; k>=0; --k){
+			int u = visit[k];
+			if(u < ne)
+				eqOrder[ke++] = u;
+			else
+				varOrder[kv++] = u - ne;
+		}
+		return new Ordering(eqOrder, varOrder);
+	}
+
+	/**
+	 * @param u a node, equations first then the variables
+	 */
+	private static int degree(CompactGraph C, int u){
+		int ne = C.ne();
+		return u<ne ? C.eqStart[u+1]-C.eqStart[u] : C.varStart[u-ne+1]-C.varStart[u-ne];
+	}
+
+	/**
+	 * Finds a pseudo-peripheral node of the component of s (George and Liu): moves to a
+	 * node of minimum degree in the last level of a breadth first search while the
+	 * number of levels grows.
+	 */
+	private static int peripheral(CompactGraph C, int s, int[] queue, int[] dist){
+		int ne = C.ne();
+		int levels = -1;
+		for(int iter=0; iter<8; ++iter){
+			// breadth first from s, dist[u]>=0 only for the nodes of this search
+			int count = 0, head = 0;
+			queue[count++] = s;
+			dist[s] = 1;
+			while(head < count){
+				int u = queue[head++];
+				int start[] = u<ne ? C.eqStart : C.varStart, adj[] = u<ne ? C.eqAdj : C.varAdj;
+				int r = u<ne ? u : u-ne, offset = u<ne ? ne : 0;
+				for(int p=start[r]; p<start[r+1]; ++p){
+					int w = adj[p] + offset;
+					if(dist[w] == 0){
+						dist[w] = dist[u] + 1;
+						queue[count++] = w;
+					}
+				}
+			}
+			int last = dist[queue[count-1]], next = s;
+			for(int k=count-1; k>=0 && dist[queue[k]]==last; --k){
+				if(degree(C, queue[k]) < degree(C, next) || next==s)
+					next = queue[k];
+			}
+			for(int k=0; k<count; ++k)
+				dist[queue[k]] = 0;
+			if(last <= levels)
+				break;
+			levels = last;
+			s = next;
+		}
+		return s;
+	}
+}
@@ -0,0 +1,586 @@
+package br.eng.rps.graph;
+
+import java.util.Arrays;
+
+/**
+ * Read-only bipartite graph with compressed adjacency, for very large models.
+ *
+ * <p>The structure is the same of {@link CompactGraph} (the neighbour indices of both
+ * partitions, row by row), but the neighbours of each row are sorted and stored as the
+ * differences between consecutive indices, in variable length bytes (7 bits per byte).
+ * The first neighbour of a row is taken relative to the position the row would have
+ * in a banded matrix, so the models with contiguous ranges of variables per unit or
+ * tray (as the ugav and columnSteady families) need about one byte per edge, instead of
+ * the four bytes of an <code>int</code>. Only the position of one row in every
+ * {@value #BLOCK} is stored; the other rows are found by skipping the previous ones of
+ * the block, which keeps the decoding fast.
+ *
+ * <p>A graph is filled row by row, the equations in order, and then finished:
+ * <blockquote><pre>
+ * PackedGraph G = new PackedGraph(ne, nv);
+ * for(int i=0; i&lt;ne; ++i)
+ * 	G.addRow(vars, n); // the variable indices of equation i
+ * G.finish();
+ *
+ * Algorithms.MaximumMatching(G);
+ * </pre></blockquote>
+ * or copied from a snapshot with {@link #copyOf(CompactGraph)}.
+ * Once finished, {@link Algorithms#MaximumMatching(PackedGraph)},
+ * {@link Algorithms#DulmageMendelshon(PackedGraph, int[])} and {@link Tarjan#tarjan(PackedGraph)}
+ * run directly on the compressed rows. The matching and the flags are plain arrays.
+ *
+ * @see OffHeapGraph
+ * @author rafael
+ */
+public class PackedGraph {
+	/** Number of rows per entry of the row index */
+	private static final int BLOCK = 8;
+
+	/**
+	 * The rows of one partition.
+	 *
+	 * <p>Each row is the number of neighbours followed by the zig-zag coded difference of each
+	 * neighbour to the previous one (minus one), the first relative to {@link #predict(int)}.
+	 */
+	private static final class Side {
+		/** Number of rows of this side and of the other one */
+		final int rows, other;
+		/** The coded rows */
+		byte[] data = new byte[64];
+		int size;
+		/** Position in {@link #data} of every {@link PackedGraph#BLOCK}-th row */
+		final int[] blockPos;
+
+		Side(int rows, int other){
+			this.rows = rows;
+			this.other = other;
+			blockPos = new int[(rows+BLOCK-1)/BLOCK];
+		}
+
+		/**
+		 * @return the expected first neighbour of the row (less one), as in a banded matrix
+		 */
+		int predict(int r){
+			return (int)((long)r*other/rows) - 1;
+		}
+
+		private void put(int x){
+			if(size+5 > data.length){
+				byte d[] = new byte[data.length + (data.length>>1) + 5];
+				System.arraycopy(data, 0, d, 0, size);
+				data = d;
+			}
+			while((x & ~0x7F) != 0){
+				data[size++] = (byte)(x | 0x80);
+				x >>>= 7;
+			}
+			data[size++] = (byte)x;
+		}
+
+		/**
+		 * Appends the row r.
+		 * @param v the neighbours, sorted and without repetitions
+		 */
+		void addRow(int r, int[] v, int n){
+			if(r%BLOCK == 0)
+				blockPos[r/BLOCK] = size;
+			put(n);
+			int prev = predict(r);
+			for(int k=0; k<n; ++k){
+				int d = v[k] - prev - 1;
+				put((d<<1) ^ (d>>31));
+				prev = v[k];
+			}
+		}
+
+		/**
+		 * @return the position of the row r (its number of neighbours)
+		 */
+		int begin(int r){
+			int p = blockPos[r/BLOCK];
+			for(int k=r-r%BLOCK; k<r; ++k){
+				int n = varint(data, p);
+				p = skip(data, p);
+				for(; n>0; --n)
+					p = skip(data, p);
+			}
+			return p;
+		}
+
+		/**
+		 * @return the neighbours of the row r
+		 */
+		int row(int r, int[] out){
+			int p = begin(r);
+			int n = varint(data, p), prev = predict(r);
+			p = skip(data, p);
+			for(int k=0; k<n; ++k){
+				out[k] = prev = next(data, p, prev);
+				p = skip(data, p);
+			}
+			return n;
+		}
+
+		void trim(){
+			byte d[] = new byte[size];
+			System.arraycopy(data, 0, d, 0, size);
+			data = d;
+		}
+	}
+
+	/**
+	 * @return the value coded at the position p
+	 */
+	private static int varint(byte[] d, int p){
+		int x = 0, shift = 0, b;
+		do{
+			b = d[p++];
+			x |= (b & 0x7F) << shift;
+			shift += 7;
+		}while(b < 0);
+		return x;
+	}
+
+	/**
+	 * @return the position after the value coded at the position p
+	 */
+	private static int skip(byte[] d, int p){
+		while(d[p++] < 0)
+			;
+		return p;
+	}
+
+	/**
+	 * @return the neighbour coded at the position p, given the previous one
+	 */
+	private static int next(byte[] d, int p, int prev){
+		int x = varint(d, p);
+		return prev + 1 + ((x>>>1) ^ -(x&1));
+	}
+
+	private final int ne;
+	private final int nv;
+	private long nnz;
+	private final Side eqs;
+	private Side vars;
+	/** Equations added so far */
+	private int nRows;
+	/** Sorted copy of the row being added (as long as the longest row) */
+	private int[] row = new int[16];
+
+	private final int[] eqMate;
+	private final int[] varMate;
+	private final byte[] eqFlag;
+	private final byte[] varFlag;
+	/** Component of each variable, see {@link #getComponent(int)} */
+	private int[] varComp;
+
+	/**
+	 * Creates an empty graph, to be filled by {@link #addRow(int[], int)}.
+	 * @param ne the number of equations
+	 * @param nv the number of variables
+	 */
+	public PackedGraph(int ne, int nv){
+		this.ne = ne;
+		this.nv = nv;
+		eqs = new Side(ne, nv);
+		eqMate = new int[ne];
+		varMate = new int[nv];
+		eqFlag = new byte[ne];
+		varFlag = new byte[nv];
+		clearMatching();
+	}
+
+	/**
+	 * Creates a packed copy of a snapshot of a graph.
+	 *
+	 * <p>The {@link Algorithms#FLAG_DELETED} variables are flagged, the matching is not copied.
+	 *
+	 * @param C the snapshot to be copied
+	 * @return the finished graph
+	 */
+	public static PackedGraph copyOf(CompactGraph C){
+		PackedGraph G = new PackedGraph(C.ne(), C.nv());
+		int buf[] = new int[16];
+		for(int i=0; i<C.ne(); ++i){
+			int n = C.eqStart[i+1] - C.eqStart[i];
+			if(n > buf.length)
+				buf = new int[n];
+			System.arraycopy(C.eqAdj, C.eqStart[i], buf, 0, n);
+			G.addRow(buf, n);
+		}
+		G.finish();
+		for(int j=0; j<C.nv(); ++j){
+			if(C.deleted[j])
+				G.setVarFlag(j, Algorithms.FLAG_DELETED);
+		}
+		return G;
+	}
+
+	/**
+	 * Adds the next equation.
+	 * @param vars the variable indices of the equation, in any order (repetitions are ignored)
+	 * @param n the number of variables
+	 * @throws IllegalStateException if all equations were already added
+	 */
+	public void addRow(int[] vars, int n){
+		if(nRows == ne)
+			throw new IllegalStateException("All rows already added");
+		if(n > row.length)
+			row = new int[n];
+		System.arraycopy(vars, 0, row, 0, n);
+		Arrays.sort(row, 0, n);
+		int m = 0;
+		for(int k=0; k<n; ++k){
+			if(m==0 || row[k]!=row[m-1])
+				row[m++] = row[k];
+		}
+		eqs.addRow(nRows++, row, m);
+		nnz += m;
+	}
+
+	/**
+	 * Builds the rows of the variables, the graph cannot be changed anymore.
+	 * @throws IllegalStateException if not all equations were added
+	 */
+	public void finish(){
+		if(nRows != ne)
+			throw new IllegalStateException("Missing rows: " + (ne-nRows));
+		if(vars != null)
+			return;
+		eqs.trim();
+		// transpose, the equations are visited in order so the rows come out sorted
+		int start[] = new int[nv+1], adj[] = new int[(int)nnz];
+		int buf[] = row;
+		for(int i=0; i<ne; ++i){
+			int n = eqs.row(i, buf);
+			for(int k=0; k<n; ++k)
+				++start[buf[k]+1];
+		}
+		for(int j=0; j<nv; ++j)
+			start[j+1] += start[j];
+		int pos[] = new int[nv];
+		System.arraycopy(start, 0, pos, 0, nv);
+		for(int i=0; i<ne; ++i){
+			int n = eqs.row(i, buf);
+			for(int k=0; k<n; ++k)
+				adj[pos[buf[k]]++] = i;
+		}
+		Side s = new Side(nv, ne);
+		for(int j=0; j<nv; ++j){
+			int n = start[j+1] - start[j];
+			if(n > buf.length)
+				buf = new int[n];
+			System.arraycopy(adj, start[j], buf, 0, n);
+			s.addRow(j, buf, n);
+		}
+		s.trim();
+		vars = s;
+		row = null;
+	}
+
+	private void checkFinished(){
+		if(vars == null)
+			throw new IllegalStateException("Graph not finished");
+	}
+
+	public int ne(){
+		return ne;
+	}
+
+	public int nv(){
+		return nv;
+	}
+
+	public long nnz(){
+		return nnz;
+	}
+
+	/**
+	 * @return the number of bytes used by the rows of both partitions
+	 */
+	public long bytes(){
+		checkFinished();
+		return eqs.data.length + vars.data.length + 4L*(eqs.blockPos.length + vars.blockPos.length);
+	}
+
+	/**
+	 * Decodes the variables of an equation.
+	 * @param i the equation index
+	 * @param out where to put the variable indices (in increasing order), should have room for all
+	 * @return the number of variables
+	 */
+	public int getEqRow(int i, int[] out){
+		return eqs.row(i, out);
+	}
+
+	/**
+	 * Decodes the equations of a variable.
+	 * @see #getEqRow(int, int[])
+	 */
+	public int getVarRow(int j, int[] out){
+		checkFinished();
+		return vars.row(j, out);
+	}
+
+	/**
+	 * @return the number of variables of the equation
+	 */
+	public int eqDegree(int i){
+		return varint(eqs.data, eqs.begin(i));
+	}
+
+	/**
+	 * @return the number of equations of the variable
+	 */
+	public int varDegree(int j){
+		checkFinished();
+		return varint(vars.data, vars.begin(j));
+	}
+
+	public int getEqMate(int i){
+		return eqMate[i];
+	}
+
+	public int getVarMate(int j){
+		return varMate[j];
+	}
+
+	public boolean hasEqFlag(int i, int f){
+		return (eqFlag[i]&f) != 0;
+	}
+
+	public boolean hasVarFlag(int j, int f){
+		return (varFlag[j]&f) != 0;
+	}
+
+	/** Adds a flag to the variable j (e.g. {@link Algorithms#FLAG_DELETED}) */
+	public void setVarFlag(int j, int f){
+		varFlag[j] |= f;
+	}
+
+	/**
+	 * @return the strongly connected component of the variable, see {@link Tarjan#tarjan(PackedGraph)}
+	 */
+	public int getComponent(int j){
+		return varComp==null ? -1 : varComp[j];
+	}
+
+	/**
+	 * Matches the equation i with the variable j (-1 to leave it unmatched).
+	 */
+	public void connect(int i, int j){
+		int old = eqMate[i];
+		if(old >= 0)
+			varMate[old] = -1;
+		if(j>=0 && varMate[j]>=0)
+			eqMate[varMate[j]] = -1;
+		eqMate[i] = j;
+		if(j >= 0)
+			varMate[j] = i;
+	}
+
+	/**
+	 * Clears the current matching.
+	 */
+	public void clearMatching(){
+		Arrays.fill(eqMate, -1);
+		Arrays.fill(varMate, -1);
+	}
+
+	/**
+	 * @param p the position of the row of the equation
+	 * @return the first free and not deleted variable of the equation or -1
+	 */
+	private int freeMate(int ve, int p){
+		byte d[] = eqs.data;
+		int n = varint(d, p), vv = eqs.predict(ve);
+		p = skip(d, p);
+		for(; n>0; --n){
+			vv = next(d, p, vv);
+			p = skip(d, p);
+			if(varMate[vv]<0 && (varFlag[vv]&Algorithms.FLAG_DELETED)==0)
+				return vv;
+		}
+		return -1;
+	}
+
+	/**
+	 * @see Algorithms#MaximumMatching(PackedGraph)
+	 */
+	boolean maximumMatching(){
+		checkFinished();
+		byte d[] = eqs.data;
+		int visited[] = new int[ne], stack[] = new int[ne], via[] = new int[ne];
+		// the position in the row of each equation of the path, with the neighbours left and the last one
+		int pos[] = new int[ne], left[] = new int[ne], prev[] = new int[ne];
+
+		boolean isPerfect = true;
+		for(int root=0; root<ne; ++root){
+			if(eqMate[root] >= 0)
+				continue;
+			int stamp = root+1, top = 0;
+			stack[0] = root;
+			visited[root] = stamp;
+			pos[0] = eqs.begin(root);
+			int free = freeMate(root, pos[0]);
+			left[0] = varint(d, pos[0]);
+			pos[0] = skip(d, pos[0]);
+			prev[0] = eqs.predict(root);
+			while(free<0 && top>=0){
+				if(left[top] == 0){
+					--top;
+					continue;
+				}
+				int vv = prev[top] = next(d, pos[top], prev[top]);
+				pos[top] = skip(d, pos[top]);
+				--left[top];
+				int ve2 = varMate[vv];
+				if(ve2>=0 && visited[ve2]!=stamp && (varFlag[vv]&Algorithms.FLAG_DELETED)==0){
+					via[top++] = vv;
+					stack[top] = ve2;
+					visited[ve2] = stamp;
+					pos[top] = eqs.begin(ve2);
+					free = freeMate(ve2, pos[top]);
+					left[top] = varint(d, pos[top]);
+					pos[top] = skip(d, pos[top]);
+					prev[top] = eqs.predict(ve2);
+				}
+			}
+			if(free < 0){
+				isPerfect = false;
+				continue;
+			}
+			// flip the alternating path
+			for(int vv=free; top>=0; --top){
+				int ve = stack[top];
+				eqMate[ve] = vv;
+				varMate[vv] = ve;
+				if(top>0)
+					vv = via[top-1];
+			}
+		}
+		return isPerfect;
+	}
+
+	/**
+	 * @see Algorithms#DulmageMendelshon(PackedGraph, int[])
+	 */
+	void dulmageMendelshon(int[] partitionSizes){
+		checkFinished();
+		int stack[] = new int[Math.max(ne, nv)];
+		partitionSizes[0] = partitionSizes[1] = 0;
+		// mark the over constrained partition
+		for(int i=0; i<ne; ++i){
+			if(eqMate[i]<0)
+				partitionSizes[0] += mark(i, eqs, varMate, eqFlag, Algorithms.FLAG_OVER, stack);
+		}
+		// mark the under constrained partition
+		for(int j=0; j<nv; ++j){
+			if(varMate[j]<0)
+				partitionSizes[1] += mark(j, vars, eqMate, varFlag, Algorithms.FLAG_UNDER, stack);
+		}
+	}
+
+	/**
+	 * Marks the alternating paths starting on the node v of one side.
+	 * @return the number of nodes marked
+	 */
+	private static int mark(int v, Side side, int[] mate, byte[] flags, int flag, int[] stack){
+		if((flags[v] & flag) != 0)
+			return 0;
+		flags[v] |= flag;
+		byte d[] = side.data;
+		int nMarked = 1, top = 0;
+		stack[0] = v;
+		while(top>=0){
+			int u = stack[top--];
+			int p = side.begin(u), n = varint(d, p), w = side.predict(u);
+			p = skip(d, p);
+			for(; n>0; --n){
+				w = next(d, p, w);
+				p = skip(d, p);
+				int u2 = mate[w];
+				if(u2>=0 && (flags[u2] & flag) == 0){
+					flags[u2] |= flag;
+					stack[++top] = u2;
+					++nMarked;
+				}
+			}
+		}
+		return nMarked;
+	}
+
+	/**
+	 * @see Tarjan#tarjan(PackedGraph)
+	 */
+	int tarjan(){
+		checkFinished();
+		byte d[] = eqs.data;
+		int depth[] = new int[nv], lowDepth[] = new int[nv], path[] = new int[nv], open[] = new int[nv];
+		// the position in the row of the equation matched with each variable of the path
+		int pos[] = new int[nv], left[] = new int[nv], prev[] = new int[nv];
+		Arrays.fill(depth, -1);
+		varComp = new int[nv];
+		Arrays.fill(varComp, -1);
+		int index = 0, nOpen = 0, nComp = 0;
+
+		for(int root=0; root<nv; ++root){
+			if(depth[root] >= 0)
+				continue;
+			int top = 0;
+			path[0] = root;
+			depth[root] = lowDepth[root] = index++;
+			open[nOpen++] = root;
+			openRow(root, pos, left, prev);
+
+			while(top>=0){
+				int v = path[top];
+				if(left[v] > 0){
+					int n = prev[v] = next(d, pos[v], prev[v]);
+					pos[v] = skip(d, pos[v]);
+					--left[v];
+					if(depth[n] == -1){
+						path[++top] = n;
+						depth[n] = lowDepth[n] = index++;
+						open[nOpen++] = n;
+						openRow(n, pos, left, prev);
+					}
+					else if(varComp[n] < 0){
+						// visited and not assigned to a component yet, so it is in the stack
+						lowDepth[v] = Math.min(lowDepth[v], depth[n]);
+					}
+					continue;
+				}
+
+				// Is v the root of an SCC
+				if(lowDepth[v] == depth[v]){
+					int n;
+					do{
+						n = open[--nOpen];
+						varComp[n] = nComp;
+					}while(n != v);
+					++nComp;
+				}
+				if(--top>=0)
+					lowDepth[path[top]] = Math.min(lowDepth[path[top]], lowDepth[v]);
+			}
+		}
+		return nComp;
+	}
+
+	/**
+	 * Starts the search of the variables reached from v through its matched equation.
+	 */
+	private void openRow(int v, int[] pos, int[] left, int[] prev){
+		int ve = varMate[v];
+		if(ve < 0){
+			left[v] = 0;
+			return;
+		}
+		pos[v] = eqs.begin(ve);
+		left[v] = varint(eqs.data, pos[v]);
+		pos[v] = skip(eqs.data, pos[v]);
+		prev[v] = eqs.predict(ve);
+	}
+}
@@ -0,0 +1,43 @@
+package br.eng.rps.graph;
+
+import java.util.AbstractList;
+
+/**
+ * Read-only list of the parts of a decomposition, as {@link SubgraphView}s.
+ *
+ * <p>The nodes of all parts are kept in two arrays, part <code>k</code> being the
+ * equations <code>eqBounds[k]</code> to <code>eqBounds[k+1]-1</code> and the same for
+ * the variables. The views are created when asked for.
+ *
+ * @author rafael
+ */
+final class SubgraphList extends AbstractList<SubgraphView> {
+	private final String prefix;
+	private final BipartiteNode[] eqs, vars;
+	private final int[] eqBounds, varBounds;
+	private final int count;
+
+	/**
+	 * @param prefix the prefix of the names of the parts, followed by the part number
+	 * @param count the number of parts
+	 */
+	SubgraphList(String prefix, BipartiteNode[] eqs, int[] eqBounds, BipartiteNode[] vars, int[] varBounds, int count){
+		this.prefix = prefix;
+		this.eqs = eqs;
+		this.vars = vars;
+		this.eqBounds = eqBounds;
+		this.varBounds = varBounds;
+		this.count = count;
+	}
+
+	public SubgraphView get(int k){
+		if(k<0 || k>=count)
+			throw new IndexOutOfBoundsException(k + " of " + count);
+		return new SubgraphView(prefix + (k+1), eqs, eqBounds[k], eqBounds[k+1],
+				vars, varBounds[k], varBounds[k+1]);
+	}
+
+	public int size(){
+		return count;
+	}
+}
@@ -0,0 +1,161 @@
+package br.eng.rps.graph;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import br.eng.rps.graph.utils.Utils;
+
+/**
+ * A subgraph of a {@link BipartiteGraph} given by a range of shared node arrays.
+ *
+ * <p>The results of the decompositions, as the strongly connected components of
+ * {@link Tarjan#tarjan(BipartiteGraph)} and the partitions of
+ * {@link Algorithms#DulmageMendelshon(BipartiteGraph)}, are the nodes of the graph
+ * permuted so that each part is a contiguous range. A view references its range of these
+ * arrays, so a decomposition into thousands of blocks allocates a few arrays and not a
+ * graph per block.
+ *
+ * <p>The nodes are the ones of the parent graph (with their edges, matching and flags),
+ * the edges of a node may lead out of the subgraph. A view with its own nodes and lists
+ * is built by {@link #toGraph()}.
+ *
+ * @author rafael
+ */
+public class SubgraphView {
+	private final String name;
+	private final BipartiteNode[] eqs, vars;
+	private final int eqStart, eqEnd, varStart, varEnd;
+
+	/**
+	 * Creates a view of the ranges <code>[eqStart, eqEnd)</code> and <code>[varStart, varEnd)</code>
+	 * of the given arrays, which are not copied.
+	 */
+	SubgraphView(String name, BipartiteNode[] eqs, int eqStart, int eqEnd,
+			BipartiteNode[] vars, int varStart, int varEnd){
+		this.name = name;
+		this.eqs = eqs;
+		this.eqStart = eqStart;
+		this.eqEnd = eqEnd;
+		this.vars = vars;
+		this.varStart = varStart;
+		this.varEnd = varEnd;
+	}
+
+	/**
+	 * @return the name of the subgraph
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * @return the number of equations
+	 */
+	public int ne(){
+		return eqEnd - eqStart;
+	}
+
+	/**
+	 * @return the number of variables
+	 */
+	public int nv(){
+		return varEnd - varStart;
+	}
+
+	/**
+	 * @param k the position of the equation in the subgraph
+	 * @return the equation
+	 */
+	public BipartiteNode getEq(int k){
+		if(k<0 || k>=ne())
+			throw new IndexOutOfBoundsException("Equation " + k + " of " + ne());
+		return eqs[eqStart + k];
+	}
+
+	/**
+	 * @param k the position of the variable in the subgraph
+	 * @return the variable
+	 */
+	public BipartiteNode getVar(int k){
+		if(k<0 || k>=nv())
+			throw new IndexOutOfBoundsException("Variable " + k + " of " + nv());
+		return vars[varStart + k];
+	}
+
+	/**
+	 * @return the equations, as a read-only list backed by the view
+	 */
+	public List<BipartiteNode> getEqs(){
+		return new Range(eqs, eqStart, eqEnd);
+	}
+
+	/**
+	 * @return the variables, as a read-only list backed by the view
+	 */
+	public List<BipartiteNode> getVars(){
+		return new Range(vars, varStart, varEnd);
+	}
+
+	/**
+	 * Builds a graph with the nodes of this subgraph.
+	 *
+	 * <p>The nodes are added to the lists of the new graph, as the components used to
+	 * be returned by {@link Tarjan}, so they are moved to the store of the new graph
+	 * on its first use.
+	 *
+	 * @return a new graph with the nodes of this view
+	 */
+	public BipartiteGraph toGraph(){
+		BipartiteGraph G = new BipartiteGraph(name);
+		for(int k=eqStart; k<eqEnd; ++k)
+			G.addE(eqs[k]);
+		for(int k=varStart; k<varEnd; ++k)
+			G.addV(vars[k]);
+		return G;
+	}
+
+	/**
+	 * @return the subgraph in the format of {@link BipartiteGraph#toString()}
+	 * @see Utils#ExportGraphViz(SubgraphView, java.io.PrintStream)
+	 */
+	public String toString(){
+		StringBuilder out = new StringBuilder();
+		out.append("graph ").append(name).append('{');
+		for(int k=eqStart; k<eqEnd; ++k){
+			BipartiteNode ve = eqs[k];
+			out.append("\n\t");
+			if(ve == null)
+				continue;
+			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext()){
+				BipartiteNode vv = ed.getNode2();
+				out.append(ve).append(vv.getConnected()!=ve ? "--" : "==").append(vv).append(' ');
+			}
+		}
+		out.append("\n}");
+		return out.toString();
+	}
+
+	/**
+	 * Read-only list over a range of an array.
+	 */
+	private static final class Range extends AbstractList<BipartiteNode> {
+		private final BipartiteNode[] a;
+		private final int start, end;
+
+		Range(BipartiteNode[] a, int start, int end){
+			this.a = a;
+			this.start = start;
+			this.end = end;
+		}
+
+		public BipartiteNode get(int k){
+			if(k<0 || k>=end-start)
+				throw new IndexOutOfBoundsException(k + " of " + (end-start));
+			return a[start + k];
+		}
+
+		public int size(){
+			return end - start;
+		}
+	}
+}
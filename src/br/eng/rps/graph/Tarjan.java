@@ -1,7 +1,7 @@
 package br.eng.rps.graph;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 /**
  * A implementation of the Tarjan's algorithm for the detection of Strongly Connected Components.
@@ -10,6 +10,11 @@ import java.util.Collection;
  * 
  * <p>A {@link Tarjan} instance can be reused by multiple calls to {@link #tarjan(BipartiteGraph)}.
  * 
+ * <p>The components are returned as {@link SubgraphView}s over two arrays with the
+ * variables, and the equations matched with them, permuted so that each component is a
+ * contiguous range. So the decomposition of a large model into many small blocks
+ * allocates these arrays only, and not a graph per block.
+ * 
  * @author rafael
  *
  */
@@ -19,59 +24,231 @@ public class Tarjan {
 	
 	/** Stack linked list (for fast addFirst and removeFirst operations) */
 	private ArrayList<BipartiteNode> stack = new ArrayList<BipartiteNode>();
-	private ArrayList<BipartiteGraph> SCC = new ArrayList<BipartiteGraph>();
+	/** The variables of the components found, in order, and the equations matched with them */
+	private BipartiteNode[] sccVars, sccEqs;
+	/** Start of each component in {@link #sccVars} */
+	private int[] bounds;
+	/** Number of components found */
+	private int count;
 
 	/**
 	 * @param G the graph to be partitioned into SCC (<b>must</b> contain a perfect matching).
 	 * @return the strongly connected subgraphs
 	 */
-	public Collection<BipartiteGraph> tarjan(BipartiteGraph G){
+	public List<SubgraphView> tarjan(BipartiteGraph G){
 		// clear possibly previous contents
 		stack.clear();
-		SCC.clear();
+		start(G.nv());
 		index = 0;
+		NodeStore nodes = G.store();
+		nodes.ensureTarjan();
 		for(BipartiteNode v : G.getVars())
-			v.depth = v.lowDepth = -1;
+			nodes.depth[v.id] = nodes.lowDepth[v.id] = -1;
 		
 //		stack.ensureCapacity(G.getVars().size());
 		
 		for(BipartiteNode v : G.getVars())
 			tarjan(v);
 
-		return SCC;
+		return components();
+	}
+	
+	/**
+	 * Allocates the arrays of the components for the given number of variables.
+	 */
+	private void start(int nv){
+		sccVars = new BipartiteNode[nv];
+		sccEqs = new BipartiteNode[nv];
+		bounds = new int[nv+1];
+		count = 0;
+	}
+	
+	/**
+	 * Adds a variable and its matched equation to the current component.
+	 */
+	private void add(BipartiteNode vv, BipartiteNode ve){
+		int k = bounds[count+1]++;
+		sccVars[k] = vv;
+		sccEqs[k] = ve;
+	}
+	
+	/**
+	 * Closes the current component.
+	 */
+	private void close(){
+		++count;
+		if(count < bounds.length-1)
+			bounds[count+1] = bounds[count];
+	}
+	
+	private List<SubgraphView> components(){
+		return new SubgraphList("scc", sccEqs, bounds, sccVars, bounds, count);
+	}
+
+	/**
+	 * Detects the strongly connected components on a compact (CSR) snapshot of a graph.
+	 * 
+	 * <p>This is the same as {@link #tarjan(BipartiteGraph)} but the search runs on
+	 * the arrays of the snapshot with explicit stacks, so it is not limited by the
+	 * thread stack size and checking if a node is in the stack takes constant time.
+	 * The components are built with the nodes of the original graph.
+	 * 
+	 * @param C the snapshot of a graph containing a perfect matching, see {@link BipartiteGraph#freeze()}
+	 * @return the strongly connected subgraphs
+	 */
+	public List<SubgraphView> tarjan(CompactGraph C){
+		return tarjan(C.getMatching());
+	}
+
+	/**
+	 * Detects the strongly connected components for a matching kept apart from the nodes.
+	 * 
+	 * <p>This is the same as {@link #tarjan(CompactGraph)} but the given matching is
+	 * used instead of the one stored in the nodes. The components are built with the
+	 * nodes of the graph, the equation of each variable being its mate in <code>M</code>.
+	 * 
+	 * @param M a perfect matching of the graph
+	 * @return the strongly connected subgraphs
+	 */
+	public List<SubgraphView> tarjan(Matching M){
+		return tarjan(new AnalysisContext(M));
+	}
+
+	/**
+	 * Detects the strongly connected components in an analysis context.
+	 * 
+	 * <p>This is the same as {@link #tarjan(Matching)} for the matching of the context,
+	 * the work space is the one of the context (reused by later calls) and the component
+	 * of each variable is kept in it, see {@link AnalysisContext#getComponent(int)}.
+	 * Neither the graph nor this object are changed, so several threads can run this
+	 * function at once, each one with its own context.
+	 * 
+	 * @param A the context, with a perfect matching
+	 * @return the strongly connected subgraphs
+	 */
+	public List<SubgraphView> tarjan(AnalysisContext A){
+		CompactGraph C = A.graph;
+		int nv = C.nv();
+		A.startTarjan();
+		int varMate[] = A.matching.varMate;
+		int depth[] = A.depth, lowDepth[] = A.lowDepth, cursor[] = A.cursor;
+		int path[] = A.path, open[] = A.open, component[] = A.component;
+		boolean onStack[] = A.onStack;
+		int start[] = C.eqStart, adj[] = C.eqAdj;
+		for(int j=0; j<nv; ++j)
+			depth[j] = -1;
+		int index = 0, nOpen = 0, count = 0;
+		// the variables by component and the equations matched with them
+		BipartiteNode vars[] = new BipartiteNode[nv], eqs[] = new BipartiteNode[nv];
+		int bounds[] = new int[nv+1];
+		
+		for(int root=0; root<nv; ++root){
+			if(depth[root]>=0)
+				continue;
+			int top = 0;
+			path[0] = root;
+			depth[root] = lowDepth[root] = index++;
+			open[nOpen++] = root;
+			onStack[root] = true;
+			cursor[root] = varMate[root]<0 ? 0 : start[varMate[root]];
+
+			while(top>=0){
+				int v = path[top];
+				int ve = varMate[v];
+				if(ve>=0 && cursor[v]<start[ve+1]){
+					int n = adj[cursor[v]++];
+					if(depth[n] == -1){
+						path[++top] = n;
+						depth[n] = lowDepth[n] = index++;
+						open[nOpen++] = n;
+						onStack[n] = true;
+						cursor[n] = varMate[n]<0 ? 0 : start[varMate[n]];
+					}else if(onStack[n]){
+						lowDepth[v] = Math.min(lowDepth[v], depth[n]);
+					}
+					continue;
+				}
+				
+				// Is v the root of an SCC
+				if(lowDepth[v] == depth[v]){
+					int n, k = bounds[count];
+					do{
+						n = open[--nOpen];
+						onStack[n] = false;
+						component[n] = count;
+						vars[k] = C.vars[n];
+						eqs[k++] = varMate[n]<0 ? null : C.eqs[varMate[n]];
+					}while(n != v);
+					bounds[++count] = k;
+				}
+				if(--top>=0)
+					lowDepth[path[top]] = Math.min(lowDepth[path[top]], lowDepth[v]);
+			}
+		}
+		A.components = count;
+		return new SubgraphList("scc", eqs, bounds, vars, bounds, count);
+	}
+
+	/**
+	 * Detects the strongly connected components of a graph stored outside the heap.
+	 * 
+	 * <p>The components are not materialized as graphs, instead the component of
+	 * each variable is stored in the graph, see {@link OffHeapGraph#getComponent(int)}.
+	 * The components are numbered in the order they are found (the same order of
+	 * {@link #tarjan(CompactGraph)}).
+	 * 
+	 * @param G the graph to be partitioned (<b>must</b> contain a perfect matching)
+	 * @return the number of strongly connected components
+	 */
+	public int tarjan(OffHeapGraph G){
+		return G.tarjan();
+	}
+
+	/**
+	 * Detects the strongly connected components of a graph with compressed adjacency.
+	 * 
+	 * <p>As in {@link #tarjan(OffHeapGraph)}, the component of each variable is stored
+	 * in the graph, see {@link PackedGraph#getComponent(int)}.
+	 * 
+	 * @param G the graph to be partitioned (<b>must</b> contain a perfect matching)
+	 * @return the number of strongly connected components
+	 */
+	public int tarjan(PackedGraph G){
+		return G.tarjan();
 	}
 
 	private void tarjan(BipartiteNode v){
-		if(v.depth>=0)
+		NodeStore nodes = v.store;
+		int depth[] = nodes.depth, lowDepth[] = nodes.lowDepth;
+		if(depth[v.id]>=0)
 			return;
 		
-		v.depth = index;
-		v.lowDepth = index;
+		depth[v.id] = index;
+		lowDepth[v.id] = index;
 		index++;
 		stack.add(0, v);
-		if(v.connected !=null){
-			for(BipartiteEdge ed=v.connected.getEdges(); ed!=null; ed=ed.getNext()){
+		BipartiteNode ve = v.getConnected();
+		if(ve !=null){
+			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext()){
 				BipartiteNode n = ed.getNode2();
 
-				if(n.depth == -1){
+				if(depth[n.id] == -1){
 					tarjan(n);
-					v.lowDepth = Math.min(v.lowDepth, n.lowDepth);
+					lowDepth[v.id] = Math.min(lowDepth[v.id], lowDepth[n.id]);
 				}else if(stack.contains(n)){
-					v.lowDepth = Math.min(v.lowDepth, n.depth);
+					lowDepth[v.id] = Math.min(lowDepth[v.id], depth[n.id]);
 				}
 			}
 		}
 
 		// Is v the root of an SCC
-		if(v.lowDepth == v.depth){
+		if(lowDepth[v.id] == depth[v.id]){
 			BipartiteNode n;
-			BipartiteGraph component = new BipartiteGraph();
 			do{
 				n = stack.remove(0);
-				component.addV(n);
-				component.addE(n.connected);
+				add(n, n.getConnected());
 			}while(n != v);
-			SCC.add(component);
+			close();
 		}
 	}
 }
@@ -32,8 +32,10 @@ public class TarjanLinkedList {
 		stack.clear();
 		SCC.clear();
 		index = 0;
+		NodeStore nodes = G.store();
+		nodes.ensureTarjan();
 		for(BipartiteNode v : G.getVars())
-			v.depth = v.lowDepth = -1;
+			nodes.depth[v.id] = nodes.lowDepth[v.id] = -1;
 		
 		for(BipartiteNode v : G.getVars())
 			tarjan(v);
@@ -42,33 +44,36 @@ public class TarjanLinkedList {
 	}
 
 	private void tarjan(BipartiteNode v){
-		if(v.depth>=0)
+		NodeStore nodes = v.store;
+		int depth[] = nodes.depth, lowDepth[] = nodes.lowDepth;
+		if(depth[v.id]>=0)
 			return;
 		
-		v.depth = index;
-		v.lowDepth = index;
+		depth[v.id] = index;
+		lowDepth[v.id] = index;
 		index++;
 		stack.addFirst(v);
-		if(v.connected !=null){
-			for(BipartiteEdge ed=v.connected.getEdges(); ed!=null; ed=ed.getNext()){
+		BipartiteNode ve = v.getConnected();
+		if(ve !=null){
+			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext()){
 				BipartiteNode n = ed.getNode2();
-				if(n.depth == -1){
+				if(depth[n.id] == -1){
 					tarjan(n);
-					v.lowDepth = Math.min(v.lowDepth, n.lowDepth);
+					lowDepth[v.id] = Math.min(lowDepth[v.id], lowDepth[n.id]);
 				}else if(stack.contains(n)){
-					v.lowDepth = Math.min(v.lowDepth, n.depth);
+					lowDepth[v.id] = Math.min(lowDepth[v.id], depth[n.id]);
 				}
 			}
 		}
 
 		// Is v the root of an SCC
-		if(v.lowDepth == v.depth){
+		if(lowDepth[v.id] == depth[v.id]){
 			BipartiteNode n;
 			BipartiteGraph component = new BipartiteGraph();
 			do{
 				n = stack.removeFirst();
 				component.addV(n);
-				component.addE(n.connected);
+				component.addE(n.getConnected());
 			}while(n != v);
 			SCC.add(component);
 		}
@@ -0,0 +1,191 @@
+package br.eng.rps.graph;
+
+import java.util.List;
+
+/**
+ * Log of the changes made to a {@link BipartiteGraph} inside a transaction,
+ * see {@link BipartiteGraph#begin()}.
+ *
+ * <p>Only the old state of the nodes that existed when the transaction started is logged:
+ * the nodes created inside the transaction are simply dropped by the rollback, as well as
+ * their edges. So the log grows with the changes made and not with the size of the graph.
+ * The log is attached to the {@link NodeStore} of the graph, whose writers save the old
+ * values here before changing them.
+ *
+ * <p>Transactions can be nested, each {@link #begin} opens a savepoint.
+ *
+ * @author rafael
+ */
+final class UndoLog {
+	/** The old value is a flag */
+	static final int FLAG = 0;
+	/** The old value is a mate id */
+	static final int MATE = 1;
+	/** The old value is a differentiated version id */
+	static final int DIFF = 2;
+	/** The node was not lifted (see {@link NodeStore#lifted}) */
+	static final int LIFTED = 3;
+
+	/** State of the graph when a transaction started */
+	private static final class Savepoint {
+		int entries, edges, nodes;
+		int ve, vv;
+		BipartiteNode[] veDiff, vvDiff;
+		Savepoint outer;
+	}
+
+	/** Logged changes, triples of kind, id and old value */
+	private int[] entries = new int[48];
+	private int size;
+	/** Edges added to the nodes older than the transaction */
+	private BipartiteEdge[] edges = new BipartiteEdge[16];
+	private int edgeCount;
+	/** The innermost transaction */
+	private Savepoint top;
+	/** Number of nodes in the store when the innermost transaction started */
+	int mark;
+
+	/**
+	 * Opens a savepoint with the current state of the graph.
+	 */
+	void begin(BipartiteGraph G, NodeStore s){
+		Savepoint p = new Savepoint();
+		p.entries = size;
+		p.edges = edgeCount;
+		p.nodes = mark = s.size;
+		p.ve = G.Ve.size();
+		p.vv = G.Vv.size();
+		p.veDiff = G.VeDiff.toArray(new BipartiteNode[G.VeDiff.size()]);
+		p.vvDiff = G.VvDiff.toArray(new BipartiteNode[G.VvDiff.size()]);
+		p.outer = top;
+		top = p;
+	}
+
+	/**
+	 * @return the number of open transactions
+	 */
+	int depth(){
+		int n = 0;
+		for(Savepoint p=top; p!=null; p=p.outer)
+			++n;
+		return n;
+	}
+
+	/**
+	 * Saves the old value of a node.
+	 * @param kind one of {@link #FLAG}, {@link #MATE}, {@link #DIFF} or {@link #LIFTED}
+	 */
+	void save(int kind, int id, int old){
+		if(id >= mark)
+			return; // the node is dropped on rollback anyway
+		if(size+3 > entries.length){
+			int e[] = new int[2*entries.length];
+			System.arraycopy(entries, 0, e, 0, size);
+			entries = e;
+		}
+		entries[size++] = kind;
+		entries[size++] = id;
+		entries[size++] = old;
+	}
+
+	/**
+	 * Saves an edge added to a node, if the node is older than the transaction.
+	 */
+	void added(BipartiteEdge e){
+		if(e.node1.id >= mark)
+			return;
+		if(edgeCount == edges.length){
+			BipartiteEdge a[] = new BipartiteEdge[2*edgeCount];
+			System.arraycopy(edges, 0, a, 0, edgeCount);
+			edges = a;
+		}
+		edges[edgeCount++] = e;
+	}
+
+	/**
+	 * Closes the innermost transaction keeping the changes, they are undone only
+	 * if an outer transaction is rolled back.
+	 * @return <code>true</code> if there are no more open transactions
+	 */
+	boolean commit(){
+		top = top.outer;
+		if(top != null){
+			mark = top.nodes;
+			return false;
+		}
+		size = edgeCount = 0;
+		return true;
+	}
+
+	/**
+	 * Undoes the changes of the innermost transaction and closes it.
+	 * @return <code>true</code> if there are no more open transactions
+	 */
+	boolean rollback(BipartiteGraph G, NodeStore s){
+		Savepoint p = top;
+		// the old state of the nodes, last change first
+		while(size > p.entries){
+			int old = entries[--size], id = entries[--size];
+			switch(entries[--size]){
+			case FLAG:
+				s.flag[id] = old;
+				break;
+			case MATE:
+				s.mate[id] = old;
+				break;
+			case DIFF:
+				s.diff[id] = old;
+				break;
+			default:
+				s.lifted[id] = false;
+			}
+		}
+		// the edges added to the old nodes
+		while(edgeCount > p.edges){
+			BipartiteEdge e = edges[--edgeCount];
+			edges[edgeCount] = null;
+			if(G.edgeSet != null && !G.edgeSet.remove(e.node1, e.node2))
+				G.edgeSet.remove(e.node2, e.node1);
+			e.node1.unlink(e);
+			G.edgeArena.put(e);
+		}
+		// the new nodes with their edges
+		for(int id=s.size-1; id>=p.nodes; --id){
+			BipartiteNode n = s.nodes[id];
+			BipartiteEdge next;
+			for(BipartiteEdge e=n.edges; e!=null; e=next){
+				next = e.next;
+				// each pair is in the set once, either way round
+				if(G.edgeSet != null && !G.edgeSet.remove(e.node1, e.node2))
+					G.edgeSet.remove(e.node2, e.node1);
+				G.edgeArena.put(e);
+			}
+			n.edges = null;
+			s.nodes[id] = null;
+		}
+		s.size = p.nodes;
+		++s.edgeVersion;
+
+		truncate(G.Ve, p.ve);
+		truncate(G.Vv, p.vv);
+		restore(G.VeDiff, p.veDiff);
+		restore(G.VvDiff, p.vvDiff);
+
+		top = p.outer;
+		if(top == null)
+			return true;
+		mark = top.nodes;
+		return false;
+	}
+
+	private static void truncate(List<BipartiteNode> list, int n){
+		if(list.size() > n)
+			list.subList(n, list.size()).clear();
+	}
+
+	private static void restore(List<BipartiteNode> list, BipartiteNode[] nodes){
+		list.clear();
+		for(BipartiteNode n : nodes)
+			list.add(n);
+	}
+}
@@ -2,11 +2,13 @@ package br.eng.rps.graph.utils;
 
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.List;
 
 import br.eng.rps.graph.Algorithms;
 import br.eng.rps.graph.BipartiteEdge;
 import br.eng.rps.graph.BipartiteGraph;
 import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.SubgraphView;
 
 /**
  * Utility functions for importing/exporting bipartite graphs.
@@ -93,13 +95,35 @@ public class Utils {
 	 * @see #ImportGraphViz(InputStream, BipartiteGraph)
 	 */
 	public static void ExportGraphViz(BipartiteGraph G, PrintStream out){
-		out.println("graph " + G.getName() + '{');
+		ExportGraphViz(G.getName(), G.getEqs(), out);
+	}
+
+	/**
+	 * Export a subgraph, as a block of a decomposition, in the
+	 * <a href="http://www.graphviz.org">GraphViz</a> DOT language.
+	 * 
+	 * <p>The edges of the equations of the subgraph are exported, including the
+	 * ones to variables out of the subgraph.
+	 * 
+	 * @param G the subgraph to be exported
+	 * @param out the stream to print into
+	 * 
+	 * @see #ExportGraphViz(BipartiteGraph, PrintStream)
+	 */
+	public static void ExportGraphViz(SubgraphView G, PrintStream out){
+		ExportGraphViz(G.getName(), G.getEqs(), out);
+	}
+
+	private static void ExportGraphViz(String name, List<BipartiteNode> eqs, PrintStream out){
+		out.println("graph " + name + '{');
 		out.println("node[shape=circle,fixedsize=1]");
 		out.println("edge[color=\"gray\", style=\"setlinewidth(2)\"]");
 
 		// not connected edges
-		for(BipartiteNode ve : G.getEqs()){
+		for(BipartiteNode ve : eqs){
 			out.print("\n\t");
+			if(ve == null)
+				continue;
 			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext()){
 				BipartiteNode vv = ed.getNode2();
 				if(vv.hasFlag(Algorithms.FLAG_DELETED) )
@@ -111,7 +135,9 @@ public class Utils {
 
 		// connected edges
 		out.println("\nedge[color=\"black\", style=\"setlinewidth(4)\"]");
-		for(BipartiteNode ve : G.getEqs()){
+		for(BipartiteNode ve : eqs){
+			if(ve == null)
+				continue;
 			for(BipartiteEdge ed=ve.getEdges(); ed!=null; ed=ed.getNext()){
 				BipartiteNode vv = ed.getNode2();
 				if(vv.hasFlag(Algorithms.FLAG_DELETED) )
@@ -153,7 +179,15 @@ public class Utils {
 		DotLexer lexer = new DotLexer(in);
 		DotParser parser = new DotParser(lexer);
 
-		parser.graph(G);
+		// detect duplicated edges in constant time while parsing
+		int edgeCheck = G.getEdgeCheck();
+		G.setEdgeCheck(BipartiteGraph.EDGES_HASH);
+		try{
+			parser.graph(G);
+		}
+		finally{
+			G.setEdgeCheck(edgeCheck);
+		}
 	}
 
 	private static long tstart;
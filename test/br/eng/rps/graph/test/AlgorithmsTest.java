@@ -2,11 +2,18 @@ package br.eng.rps.graph.test;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
 import br.eng.rps.graph.BipartiteGraph;
 import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.GraphBuilder;
+import br.eng.rps.graph.SubgraphView;
 import br.eng.rps.graph.utils.Utils;
 
 public class AlgorithmsTest extends TestCase {
@@ -54,6 +61,33 @@ public class AlgorithmsTest extends TestCase {
 		assertEquals(0, parts[0]);
 		assertEquals(G.nv(), parts[1]);
 	}
+
+	public void testDMViews() throws Exception{
+		BipartiteGraph G = loadGraph("dots/heatex_x2_x4.dot");
+		assertFalse(Algorithms.MaximumMatching(G));
+		int parts[] = {0, 0};
+		Algorithms.DulmageMendelshon(G.snapshot(), parts);
+
+		List<SubgraphView> dm = Algorithms.DulmageMendelshon(G);
+		assertEquals(3, dm.size());
+		SubgraphView over = dm.get(0), well = dm.get(1), under = dm.get(2);
+		assertEquals("over", over.getName());
+		assertEquals(parts[0], over.ne());
+		assertEquals(over.ne()-1, over.nv());
+		assertEquals(parts[1], under.nv());
+		assertEquals(G.ne(), over.ne() + well.ne() + under.ne());
+		assertEquals(G.nv(), over.nv() + well.nv() + under.nv());
+		for(BipartiteNode ve : over.getEqs())
+			assertTrue(ve.hasFlag(Algorithms.FLAG_OVER));
+		for(int k=0; k<well.ne(); ++k)
+			assertSame(well.getVar(k), well.getEq(k).getConnected());
+
+		List<SubgraphView> dm2 = Algorithms.DulmageMendelshon(G.freeze());
+		for(int k=0; k<3; ++k){
+			assertEquals(dm.get(k).ne(), dm2.get(k).ne());
+			assertEquals(dm.get(k).nv(), dm2.get(k).nv());
+		}
+	}
 	
 	/**
 	 * Test for a maximum maching when the given file name should have a perfect matching.
@@ -96,6 +130,208 @@ public class AlgorithmsTest extends TestCase {
 		System.out.println(file + " time:" + time + " nv:" + G.nv());
 	}
 	
+	/**
+	 * An alternating path through a chain longer than the call stack could hold.
+	 */
+	public void testLongChain(){
+		int n = 200000;
+		GraphBuilder b = new GraphBuilder(n, n, 2*n);
+		for(int i=0; i<n-1; ++i)
+			b.addRow(i, new int[]{i, i+1});
+		b.addEdge(n-1, n-1);
+		BipartiteGraph G = b.build();
+		List<BipartiteNode> eqs = G.getEqs(), vars = G.getVars();
+		for(int i=0; i<n-1; ++i)
+			eqs.get(i).connect(vars.get(i+1));
+
+		// the path from the last equation reaches the free variable at the start of the chain
+		assertEquals(n, Algorithms.markAlternating(eqs.get(n-1), Algorithms.FLAG_OVER));
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching(G, eqs.get(n-1)));
+		for(int i=0; i<n; ++i)
+			assertSame(vars.get(i), eqs.get(i).getConnected());
+	}
+
+	/**
+	 * The equations reached by a failed search are coloured until an algorithm forgets them.
+	 */
+	public void testColors(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f_1", "x"); G.addEdge("f_2", "x"); G.addEdge("f_3", "y");
+		assertFalse(Algorithms.MaximumMatching(G));
+		for(BipartiteNode ve : G.getEqs())
+			assertFalse(ve.hasFlag(Algorithms.FLAG_COLORED));
+
+		assertEquals(Algorithms.RET_FAILED, Algorithms.AugmentMatching(G, G.getEq("f_2")));
+		assertTrue(G.getEq("f_1").hasFlag(Algorithms.FLAG_COLORED));
+		assertTrue(G.getEq("f_2").hasFlag(Algorithms.FLAG_COLORED));
+		assertFalse(G.getEq("f_3").hasFlag(Algorithms.FLAG_COLORED));
+
+		assertFalse(Algorithms.MaximumMatching(G));
+		for(BipartiteNode ve : G.getEqs())
+			assertFalse(ve.hasFlag(Algorithms.FLAG_COLORED));
+	}
+
+	/**
+	 * The greedy initialization should give matchings of the same size and the same analysis.
+	 */
+	void greedyAnalysis(String file) throws Exception{
+		BipartiteGraph G1 = loadGraph(file);
+		BipartiteGraph G2 = G1.snapshot();
+		G2.setMatchingInit(BipartiteGraph.INIT_KARP_SIPSER);
+		assertEquals(Algorithms.MaximumMatching(G1), Algorithms.MaximumMatching(G2));
+		assertTrue(G2.getGreedyMatches() > 0);
+		assertEquals(0, G1.getGreedyMatches());
+		int size = 0;
+		for(BipartiteNode ve : G2.getEqs()){
+			if(ve.getConnected()!=null){
+				assertSame(ve, ve.getConnected().getConnected());
+				++size;
+			}
+		}
+		assertTrue(size >= G2.getGreedyMatches());
+		for(BipartiteNode ve : G1.getEqs())
+			size -= ve.getConnected()!=null ? 1 : 0;
+		assertEquals(0, size);
+
+		G1 = loadGraph(file);
+		G2 = G1.snapshot();
+		G2.setMatchingInit(BipartiteGraph.INIT_KARP_SIPSER);
+		assertEquals(Algorithms.SoaresSecchi(G1, false), Algorithms.SoaresSecchi(G2, false));
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv());
+	}
+
+	public void testGreedyColumnSteady11() throws Exception{
+		greedyAnalysis("dots/columnSteady11.dot");
+	}
+	public void testGreedyLdpe() throws Exception{
+		greedyAnalysis("dots/ldpe_fixed.dot");
+	}
+	public void testGreedyUgav20() throws Exception{
+		greedyAnalysis("dots/ugav20.dot");
+		BipartiteGraph G1 = loadGraph("dots/ugav20.dot");
+		BipartiteGraph G2 = G1.snapshot();
+		G2.setMatchingInit(BipartiteGraph.INIT_KARP_SIPSER);
+		assertEquals(pantelides(G1), pantelides(G2));
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv());
+	}
+
+	/**
+	 * The equations coloured by the public searches are searched again once the flags are removed.
+	 */
+	public void testColorsRemoved(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f1", "x"); G.addEdge("f2", "x"); G.addEdge("f2", "y"); G.addEdge("g", "y");
+		BipartiteNode f1 = G.getEq("f1"), f2 = G.getEq("f2"), g = G.getEq("g");
+		f2.connect(G.getVar("x"));
+		g.connect(G.getVar("y"));
+		assertEquals(Algorithms.RET_FAILED, Algorithms.AugmentMatching(G, f1));
+		assertTrue(f2.hasFlag(Algorithms.FLAG_COLORED));
+
+		for(BipartiteNode ve : G.getEqs())
+			ve.removeFlag(Algorithms.FLAG_COLORED);
+		g.connect(null);
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching(G, f1));
+		assertSame(G.getVar("x"), f1.getConnected());
+		assertSame(G.getVar("y"), f2.getConnected());
+
+		// the same for the second version
+		f1.connect(null);
+		f2.connect(G.getVar("x"));
+		g.connect(G.getVar("y"));
+		assertEquals(Algorithms.RET_FAILED, Algorithms.AugmentMatching2(G, f1, true));
+		for(BipartiteNode ve : G.getEqs())
+			ve.removeFlag(Algorithms.FLAG_COLORED);
+		g.connect(null);
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching2(G, f1, true));
+		assertSame(G.getVar("y"), f2.getConnected());
+	}
+
+	/**
+	 * One step of the algorithm of Soares and Secchi as written with the public searches, which
+	 * flag the equations reached as {@link Algorithms#FLAG_COLORED} and leave them flagged
+	 * until the next successful search.
+	 * @param marked the equations to be differentiated, as flagged {@link Algorithms#FLAG_MARKED}
+	 * @param v2 if the algorithm is the version 2 (differentiating once per phase)
+	 */
+	static int soaresSecchiStep(BipartiteGraph G, List<BipartiteNode> marked, boolean v2){
+		for(BipartiteNode ve : new ArrayList<BipartiteNode>(G.getEqs())){
+			if(marked.contains(ve))
+				G.diffEquation(ve);
+		}
+		marked.clear();
+		boolean singular = false, needDiff = false;
+		for(BipartiteNode ve : G.getEqs()){
+			if(ve.getConnected()!=null)
+				continue;
+			if(Algorithms.AugmentMatching2(G, ve, false)==Algorithms.RET_FAILED){
+				needDiff = true;
+				for(BipartiteNode ve2 : G.getEqs()){
+					if(ve2.hasFlag(Algorithms.FLAG_COLORED)){
+						ve2.removeFlag(Algorithms.FLAG_COLORED);
+						if(!marked.contains(ve2))
+							marked.add(ve2);
+					}
+				}
+				if(!v2 && Algorithms.AugmentMatching2(G, ve, true)==Algorithms.RET_FAILED)
+					singular = true;
+			}
+			else{
+				for(BipartiteNode ve2 : G.getEqs())
+					ve2.removeFlag(Algorithms.FLAG_COLORED);
+			}
+		}
+		if(!needDiff)
+			return Algorithms.RET_SUCCESS;
+		if(v2){
+			for(BipartiteNode ve : G.getEqs()){
+				if(ve.getConnected()==null && Algorithms.AugmentMatching2(G, ve, true)==Algorithms.RET_FAILED)
+					singular = true;
+			}
+		}
+		return singular ? Algorithms.RET_FAILED : Algorithms.RET_STEP;
+	}
+
+	static String flags(BipartiteGraph G, List<BipartiteNode> marked){
+		StringBuilder b = new StringBuilder();
+		for(BipartiteNode ve : G.getEqs()){
+			b.append(ve).append(':').append(ve.getConnected());
+			if(ve.hasFlag(Algorithms.FLAG_COLORED))
+				b.append(" C");
+			if(marked==null ? ve.hasFlag(Algorithms.FLAG_MARKED) : marked.contains(ve))
+				b.append(" M");
+			b.append('\n');
+		}
+		return b.toString();
+	}
+
+	/**
+	 * The flags left by each step of the algorithms of Soares and Secchi are the ones of the
+	 * searches that flag the equations.
+	 */
+	void steps(String file) throws Exception{
+		for(int v=0; v<2; ++v){
+			BipartiteGraph G = loadGraph(file), H = loadGraph(file);
+			List<BipartiteNode> marked = new ArrayList<BipartiteNode>();
+			int ret = Algorithms.RET_STEP;
+			for(int step=0; step<20 && ret==Algorithms.RET_STEP; ++step){
+				ret = v==0 ? Algorithms.SoaresSecchi(G, true) : Algorithms.SoaresSecchi2(G, true);
+				assertEquals(file + " step " + step, soaresSecchiStep(H, marked, v==1), ret);
+				assertEquals(file + " step " + step, flags(H, marked), flags(G, null));
+			}
+		}
+	}
+
+	public void testSteps() throws Exception{
+		steps("dots/pend2order.dot");
+		steps("dots/pend.dot");
+		steps("dots/reactor.dot");
+		steps("dots/condenser.dot");
+		steps("dots/batch_column.dot");
+		steps("dots/uncontrollable_full.dot");
+	}
+
 	public void testMaxMatchingAmmonia() throws Exception{
 		maxMatching("dots/ammonia.dot");
 	}
@@ -114,4 +350,95 @@ public class AlgorithmsTest extends TestCase {
 	public void testUgav80() throws Exception{
 		daeAnalysis("dots/ugav80.dot");
 	}
+
+	Set<String> edgeLabels(BipartiteGraph G){
+		Set<String> edges = new HashSet<String>();
+		for(BipartiteNode ve : G.getEqs()){
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+				edges.add(ve + "--" + e.getNode2());
+		}
+		for(BipartiteNode vv : G.getVars()){
+			for(BipartiteEdge e=vv.getEdges(); e!=null; e=e.getNext())
+				assertTrue(edges.contains(e.getNode2() + "--" + vv));
+		}
+		return edges;
+	}
+
+	/**
+	 * Runs {@link Algorithms#Pantelides(BipartiteGraph, boolean)} step by step.
+	 */
+	int pantelides(BipartiteGraph G){
+		int ret = Algorithms.RET_STEP;
+		for(int step=0; step<100 && ret==Algorithms.RET_STEP; ++step)
+			ret = Algorithms.Pantelides(G, true);
+		return ret;
+	}
+
+	/**
+	 * The derived differentiation should give the same graph as the copy.
+	 */
+	void derivedAnalysis(String file, boolean pantelides) throws Exception{
+		BipartiteGraph G1 = loadGraph(file);
+		BipartiteGraph G2 = G1.snapshot();
+		G2.setDiffMode(BipartiteGraph.DIFF_DERIVED);
+
+		int ret1 = pantelides ? pantelides(G1) : Algorithms.SoaresSecchi(G1, false);
+		Utils.tic();
+		int ret2 = pantelides ? pantelides(G2) : Algorithms.SoaresSecchi(G2, false);
+		System.out.println(file + " derived time:" + Utils.toc() + " nv:" + G2.nv());
+		assertEquals(ret1, ret2);
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv());
+		assertEquals(edgeLabels(G1), edgeLabels(G2));
+		for(int i=0; i<G1.ne(); ++i){
+			assertEquals(G1.getEqs().get(i).toString(), G2.getEqs().get(i).toString());
+			assertEquals(G1.getEqs().get(i).getConnected()==null, G2.getEqs().get(i).getConnected()==null);
+		}
+	}
+
+	/**
+	 * Compacting the deleted variables should not change the analysis.
+	 */
+	void compactAnalysis(String file) throws Exception{
+		BipartiteGraph G1 = loadGraph(file);
+		BipartiteGraph G2 = G1.snapshot();
+		G2.setCompactThreshold(0);
+
+		assertEquals(pantelides(G1), pantelides(G2));
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv() + G2.getRemovedVars().size());
+		Set<String> edges = new HashSet<String>();
+		for(String e : edgeLabels(G1)){
+			if(G1.getVar(e.substring(e.indexOf("--")+2)).hasFlag(Algorithms.FLAG_DELETED))
+				continue;
+			edges.add(e);
+		}
+		assertEquals(edges, edgeLabels(G2));
+		for(BipartiteNode vv : G2.getRemovedVars())
+			assertTrue(G1.getVar(vv.toString()).hasFlag(Algorithms.FLAG_DELETED));
+		for(int i=0; i<G1.ne(); ++i)
+			assertEquals(G1.getEqs().get(i).toString(), G2.getEqs().get(i).toString());
+	}
+
+	public void testCompactPendulum() throws Exception{
+		compactAnalysis("dots/pend.dot");
+	}
+	public void testCompactPiston() throws Exception{
+		compactAnalysis("dots/piston.dot");
+	}
+	public void testCompactBatchColumn() throws Exception{
+		compactAnalysis("dots/batch_column.dot");
+	}
+
+	public void testDerivedPendulum() throws Exception{
+		derivedAnalysis("dots/pend.dot", true);
+		derivedAnalysis("dots/pend.dot", false);
+	}
+	public void testDerivedPiston() throws Exception{
+		derivedAnalysis("dots/piston.dot", true);
+		derivedAnalysis("dots/piston.dot", false);
+	}
+	public void testDerivedUgav20() throws Exception{
+		derivedAnalysis("dots/ugav20.dot", false);
+	}
 }
@@ -0,0 +1,106 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.AnalysisContext;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.SubgraphView;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class AnalysisContextTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	/**
+	 * The analysis in a context gives the results of the node based one, without touching the nodes.
+	 */
+	public void testSameResults() throws Exception{
+		BipartiteGraph G = loadGraph("dots/heatex_x2_x4.dot");
+		CompactGraph C = G.freeze();
+		AnalysisContext A = new AnalysisContext(C);
+		assertFalse(Algorithms.MaximumMatching(A));
+		int parts[] = {0, 0};
+		Algorithms.DulmageMendelshon(A, parts);
+		List<SubgraphView> dm = Algorithms.DulmageMendelshon(A);
+		for(BipartiteNode n : G.getEqs()){
+			assertNull(n.getConnected());
+			assertFalse(n.hasFlag(Algorithms.FLAG_OVER));
+		}
+		for(BipartiteNode n : G.getVars())
+			assertFalse(n.hasFlag(Algorithms.FLAG_UNDER));
+
+		BipartiteGraph G1 = loadGraph("dots/heatex_x2_x4.dot");
+		Algorithms.MaximumMatching(G1);
+		int parts1[] = {0, 0};
+		Algorithms.DulmageMendelshon(G1, parts1);
+		assertEquals(parts1[0], parts[0]);
+		assertEquals(parts1[1], parts[1]);
+		for(int i=0; i<C.ne(); ++i)
+			assertEquals(G1.getEqs().get(i).hasFlag(Algorithms.FLAG_OVER), A.isOver(i));
+		List<SubgraphView> dm1 = Algorithms.DulmageMendelshon(G1);
+		for(int k=0; k<3; ++k)
+			assertEquals(dm1.get(k).nv(), dm.get(k).nv());
+
+		A.clear();
+		assertEquals(0, A.getMatching().size());
+		assertFalse(A.isOver(0));
+		assertEquals(-1, A.getComponent(0));
+	}
+
+	/**
+	 * Many threads analyze one snapshot at once.
+	 */
+	public void testThreads() throws Exception{
+		BipartiteGraph G = loadGraph("dots/ldpe_fixed.dot");
+		final CompactGraph C = G.freeze();
+		AnalysisContext A = new AnalysisContext(C);
+		assertTrue(Algorithms.MaximumMatching(A));
+		final int blocks = new Tarjan().tarjan(A).size();
+		final int size = A.getMatching().size();
+		assertEquals(blocks, A.getComponentCount());
+
+		final int nthreads = 8;
+		final int failures[] = new int[nthreads];
+		Thread threads[] = new Thread[nthreads];
+		final Tarjan tarjan = new Tarjan(); // shared as well
+		for(int t=0; t<nthreads; ++t){
+			final int id = t;
+			threads[t] = new Thread(){
+				public void run(){
+					AnalysisContext A = new AnalysisContext(C);
+					for(int run=0; run<3; ++run){
+						A.clear();
+						int parts[] = {0, 0};
+						if(!Algorithms.MaximumMatching(A) || A.getMatching().size()!=size)
+							++failures[id];
+						Algorithms.DulmageMendelshon(A, parts);
+						if(parts[0]!=0 || parts[1]!=0)
+							++failures[id];
+						if(tarjan.tarjan(A).size()!=blocks || A.getComponentCount()!=blocks)
+							++failures[id];
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		for(int t=0; t<nthreads; ++t)
+			assertEquals(0, failures[t]);
+		for(BipartiteNode n : G.getEqs())
+			assertNull(n.getConnected());
+	}
+}
@@ -0,0 +1,142 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.Matching;
+import br.eng.rps.graph.Ordering;
+import br.eng.rps.graph.SubgraphView;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class CompactGraphTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	int matchingSize(BipartiteGraph G){
+		int n = 0;
+		for(BipartiteNode ve : G.getEqs()){
+			if(ve.getConnected()!=null){
+				assertSame(ve, ve.getConnected().getConnected());
+				assertTrue(ve.findEdge(ve.getConnected()));
+				++n;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * A snapshot cannot be used once the nodes were renumbered.
+	 */
+	public void testStaleSnapshot(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_2", "x_2");
+		BipartiteNode f1 = G.getEq("f_1");
+		CompactGraph C = G.freeze();
+		Matching M = C.getMatching();
+		assertEquals(0, C.indexOf(f1));
+		G.reorder(new Ordering(new int[]{1, 0}, new int[]{1, 0}));
+		try{
+			C.indexOf(f1);
+			fail();
+		}
+		catch(IllegalStateException e){
+		}
+		try{
+			M.apply();
+			fail();
+		}
+		catch(IllegalStateException e){
+		}
+
+		// the store of the graph merged into a larger one
+		C = G.freeze();
+		assertEquals(1, C.indexOf(f1));
+		BipartiteGraph H = new BipartiteGraph();
+		for(int i=0; i<5; ++i)
+			H.addEdge("g_" + i, "y_" + i);
+		H.getEq("g_0").addEdge(G.getVar("x_1"));
+		try{
+			C.indexOf(f1);
+			fail();
+		}
+		catch(IllegalStateException e){
+		}
+		assertEquals(1, G.freeze().indexOf(f1));
+	}
+
+	public void testFreeze(){
+		BipartiteGraph G = new BipartiteGraph("HeatEx");
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_1", "x_3");
+		G.addEdge("f_2", "x_2"); G.addEdge("f_2", "x_4");
+
+		CompactGraph C = G.freeze();
+		assertEquals(2, C.ne());
+		assertEquals(4, C.nv());
+		assertEquals(5, C.nnz());
+		assertEquals(0, C.indexOf(G.getEq("f_1")));
+		assertEquals(3, C.indexOf(G.getVar("x_4")));
+		assertSame(G.getVar("x_2"), C.getVar(1));
+	}
+
+	/**
+	 * The compact algorithms should give the same results as the node based ones.
+	 */
+	void compare(String file) throws Exception{
+		BipartiteGraph G1 = loadGraph(file);
+		BipartiteGraph G2 = loadGraph(file);
+
+		boolean ret1 = Algorithms.MaximumMatching(G1);
+		Utils.tic();
+		boolean ret2 = Algorithms.MaximumMatching(G2.freeze());
+		System.out.println(file + " compact matching time:" + Utils.toc() + " nv:" + G2.nv());
+		assertEquals(ret1, ret2);
+		assertEquals(matchingSize(G1), matchingSize(G2));
+
+		int parts1[] = {0, 0}, parts2[] = {0, 0};
+		Algorithms.DulmageMendelshon(G1, parts1);
+		Algorithms.DulmageMendelshon(G2.freeze(), parts2);
+		assertEquals(parts1[0], parts2[0]);
+		assertEquals(parts1[1], parts2[1]);
+		for(int i=0; i<G1.ne(); ++i){
+			assertEquals(G1.getEqs().get(i).hasFlag(Algorithms.FLAG_OVER),
+					G2.getEqs().get(i).hasFlag(Algorithms.FLAG_OVER));
+		}
+
+		Collection<SubgraphView> scc1 = new Tarjan().tarjan(G1);
+		Collection<SubgraphView> scc2 = new Tarjan().tarjan(G2.freeze());
+		assertEquals(scc1.size(), scc2.size());
+		Iterator<SubgraphView> it = scc2.iterator();
+		for(SubgraphView comp : scc1)
+			assertEquals(comp.nv(), it.next().nv());
+	}
+
+	public void testColumnSteady11() throws Exception{
+		compare("dots/columnSteady11.dot");
+	}
+	public void testNLATarjan() throws Exception{
+		compare("dots/nla_tarjan.dot");
+	}
+	public void testLDPE() throws Exception{
+		compare("dots/ldpe_fixed.dot");
+	}
+	public void testSingular() throws Exception{
+		compare("dots/nla_singular.dot");
+	}
+	public void testUgav80() throws Exception{
+		compare("dots/ugav80.dot");
+	}
+}
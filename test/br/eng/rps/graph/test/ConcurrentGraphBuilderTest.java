@@ -0,0 +1,98 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.ConcurrentGraphBuilder;
+import br.eng.rps.graph.utils.Utils;
+
+public class ConcurrentGraphBuilderTest extends TestCase {
+
+	public void testPrimes(){
+		ConcurrentGraphBuilder b = new ConcurrentGraphBuilder("reactor");
+		ConcurrentGraphBuilder.Unit u2 = b.unit(2), u1 = b.unit(1);
+		u2.addEdge("f_2", "T''");
+		u1.addEdge("f_1", "C'"); u1.addEdge("f_1", "C"); u1.addEdge("f_1", "C'");
+		BipartiteGraph G = b.build();
+
+		assertEquals("reactor", G.getName());
+		assertEquals("f_1", G.getEqs().get(0).toString());
+		assertEquals("C", G.getVars().get(0).toString());
+		assertEquals("C'", G.getVars().get(1).toString());
+		assertEquals("T", G.getVars().get(2).toString());
+		assertSame(G.getVar("C'"), G.getVar("C").getDiff());
+		assertSame(G.getVar("T''"), G.getVar("T").getDiff().getDiff());
+		assertNull(G.getEq("f_1").getEdges().getNext().getNext());
+	}
+
+	/**
+	 * Feeding a model from many threads gives the same graph of the sequential build.
+	 */
+	public void testThreads() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/ugav80.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+
+		final int ne = G.ne();
+		final String names[] = new String[ne];
+		final String rows[][] = new String[ne][];
+		for(int i=0; i<ne; ++i){
+			BipartiteNode ve = G.getEqs().get(i);
+			names[i] = ve.toString();
+			int n = 0;
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+				++n;
+			rows[i] = new String[n];
+			n = 0;
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+				rows[i][n++] = e.getNode2().toString();
+		}
+		// the sequential reference, with the same edge order
+		BipartiteGraph G1 = new BipartiteGraph();
+		for(int i=0; i<ne; ++i){
+			for(String vv : rows[i])
+				G1.addEdge(names[i], vv);
+		}
+
+		final ConcurrentGraphBuilder b = new ConcurrentGraphBuilder();
+		final int nthreads = 8, block = 50;
+		Thread threads[] = new Thread[nthreads];
+		for(int t=0; t<nthreads; ++t){
+			final int first = t;
+			threads[t] = new Thread(){
+				public void run(){
+					// interleaved blocks of equations, one unit per block
+					for(int k=first; k*block<ne; k+=nthreads){
+						ConcurrentGraphBuilder.Unit u = b.unit(k);
+						for(int i=k*block; i<Math.min(ne, (k+1)*block); ++i)
+							u.addEquation(names[i], rows[i]);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		Utils.tic();
+		BipartiteGraph G2 = b.build();
+		System.out.println("ugav80 time to merge the units: " + Utils.toc());
+
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv());
+		for(int i=0; i<G1.ne(); ++i)
+			assertEquals(G1.getEqs().get(i).toString(), G2.getEqs().get(i).toString());
+		for(int j=0; j<G1.nv(); ++j){
+			BipartiteNode v1 = G1.getVars().get(j), v2 = G2.getVars().get(j);
+			assertEquals(v1.toString(), v2.toString());
+			assertEquals(String.valueOf(v1.getDiff()), String.valueOf(v2.getDiff()));
+		}
+		assertEquals(G1.freeze().nnz(), G2.freeze().nnz());
+		assertEquals(Algorithms.SoaresSecchi(G1, false), Algorithms.SoaresSecchi(G2, false));
+	}
+}
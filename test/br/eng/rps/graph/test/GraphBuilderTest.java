@@ -0,0 +1,152 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.GraphBuilder;
+import br.eng.rps.graph.utils.Utils;
+
+public class GraphBuilderTest extends TestCase {
+
+	public void testBuild(){
+		GraphBuilder b = new GraphBuilder(4, 6, 10);
+		b.setName("HeatEx");
+		b.setEqLabels(new String[]{"f_1", "f_2", "f_3", "f_4"});
+		b.setVarLabels(new String[]{"x_1", "x_2", "x_3", "x_4", "x_5", "x_6"});
+		b.addRow(0, new int[]{0, 1, 2});
+		b.addRow(1, new int[]{1, 3});
+		b.addEdge(3, 3); b.addEdge(2, 2); b.addEdge(3, 4); b.addEdge(2, 4);
+		b.addEdge(3, 5);
+		b.addEdge(1, 3); // duplicated
+		BipartiteGraph G = b.build();
+
+		assertEquals("HeatEx", G.getName());
+		assertEquals(4, G.ne());
+		assertEquals(6, G.nv());
+		assertSame(G.getEqs().get(2), G.getEq("f_3"));
+		assertEquals("x_5", G.getVars().get(4).toString());
+
+		// the edges keep the order they were added
+		BipartiteEdge e = G.getEq("f_4").getEdges();
+		assertEquals("x_4", e.getNode2().toString());
+		assertEquals("x_5", e.getNext().getNode2().toString());
+		assertEquals("x_6", e.getNext().getNext().getNode2().toString());
+		assertNull(e.getNext().getNext().getNext());
+		assertEquals(10, G.freeze().nnz());
+
+		assertTrue(Algorithms.MaximumMatching(G));
+	}
+
+	public void testUnlabeled(){
+		GraphBuilder b = new GraphBuilder(2, 3, 0);
+		b.addRow(0, new int[]{0, 1});
+		b.addRow(1, new int[]{2});
+		b.setDiff(0, 2);
+		BipartiteGraph G = b.build();
+
+		BipartiteNode x0 = G.getVars().get(0);
+		assertSame(G.getVars().get(2), x0.getDiff());
+		assertSame(x0, x0.getDiff().getOrig());
+		assertTrue(Algorithms.MaximumMatching(G));
+	}
+
+	/**
+	 * A graph without labels, built from its rows, reports the node numbers.
+	 */
+	public void testAnonymous(){
+		int rowStart[] = {0, 2, 3, 5};
+		int cols[] = {0, 1, 1, 1, 12};
+		BipartiteGraph G = GraphBuilder.fromRows(3, 13, rowStart, cols);
+		assertEquals(3, G.ne());
+		assertEquals(13, G.nv());
+		for(int i=0; i<G.ne(); ++i){
+			assertEquals(i, G.getEqs().get(i).getNumber());
+			assertEquals("e" + i, G.getEqs().get(i).getObject());
+		}
+		BipartiteNode v12 = G.getVars().get(12);
+		assertEquals(12, v12.getNumber());
+		assertEquals("v12", v12.toString());
+		assertEquals("e1", G.getEqs().get(1).toString());
+		assertSame(v12, G.getVar("v12"));
+		assertSame(G.getEqs().get(0), G.getEq("e0"));
+		assertNull(G.getVar("v13"));
+		assertNull(G.getVar("v"));
+		assertNull(G.getVar("v012"));
+		assertTrue(Algorithms.MaximumMatching(G));
+
+		// labels attached later
+		G.setLabels(new Object[]{"f", null, Integer.valueOf(7)}, new String[]{"x", "y"});
+		assertEquals("f", G.getEqs().get(0).toString());
+		assertEquals(-1, G.getEqs().get(0).getNumber());
+		assertEquals("e1", G.getEqs().get(1).toString());
+		assertEquals("7", G.getEqs().get(2).toString());
+		assertSame(G.getVars().get(1), G.getVar("y"));
+		assertNull(G.getVar("v1"));
+		assertSame(v12, G.getVar("v12"));
+	}
+
+	public void testBadIndex(){
+		GraphBuilder b = new GraphBuilder(2, 3, 0);
+		try{
+			b.addEdge(2, 0);
+			fail();
+		}
+		catch(IndexOutOfBoundsException e){
+		}
+	}
+
+	/**
+	 * Rebuild a DOT model from integer ids and compare the analysis.
+	 */
+	public void testUgav80() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/ugav80.dot");
+		Utils.tic();
+		Utils.ImportGraphViz(in, G);
+		System.out.println("ugav80 time to load (DOT):" + Utils.toc());
+		in.close();
+
+		CompactGraph C = G.freeze();
+		Object eqLabels[] = new Object[C.ne()], varLabels[] = new Object[C.nv()];
+		for(int i=0; i<C.ne(); ++i)
+			eqLabels[i] = C.getEq(i).toString();
+		for(int j=0; j<C.nv(); ++j)
+			varLabels[j] = C.getVar(j).toString();
+		int rows[][] = new int[C.ne()][];
+		for(int i=0; i<C.ne(); ++i){
+			BipartiteNode ve = C.getEq(i);
+			int n = 0;
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+				++n;
+			rows[i] = new int[n];
+			n = 0;
+			for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+				rows[i][n++] = C.indexOf(e.getNode2());
+		}
+
+		Utils.tic();
+		GraphBuilder b = new GraphBuilder(C.ne(), C.nv(), C.nnz());
+		for(int i=0; i<C.ne(); ++i)
+			b.addRow(i, rows[i]);
+		for(int j=0; j<C.nv(); ++j){
+			if(C.getVar(j).getDiff()!=null)
+				b.setDiff(j, C.indexOf(C.getVar(j).getDiff()));
+		}
+		b.setEqLabels(eqLabels);
+		b.setVarLabels(varLabels);
+		BipartiteGraph G2 = b.build();
+		System.out.println("ugav80 time to build (GraphBuilder):" + Utils.toc());
+
+		assertEquals(C.nnz(), G2.freeze().nnz());
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.SoaresSecchi(G, false));
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.SoaresSecchi(G2, false));
+		assertEquals(G.ne(), G2.ne());
+		assertEquals(G.nv(), G2.nv());
+	}
+}
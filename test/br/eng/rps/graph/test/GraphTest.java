@@ -1,9 +1,14 @@
 package br.eng.rps.graph.test;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
+
 import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
 import br.eng.rps.graph.BipartiteEdge;
 import br.eng.rps.graph.BipartiteGraph;
 import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.utils.Utils;
 
 public class GraphTest extends TestCase {
 
@@ -93,6 +98,46 @@ public class GraphTest extends TestCase {
 		}
 	}
 	
+	public void testDiffEqDerived(){
+		BipartiteGraph G = new BipartiteGraph("HeatEx");
+		G.setDiffMode(BipartiteGraph.DIFF_DERIVED);
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_1", "x_1'");
+		G.addEdge("f_2", "x_2");
+		
+		BipartiteNode f1 = G.getEq("f_1");
+		BipartiteNode f1p = G.diffEquation(f1);
+		BipartiteNode f1pp = G.diffEquation(f1p);
+		assertSame(f1p, f1.getDiff());
+		assertSame(f1p, f1pp.getOrig());
+		assertEquals("f_1''", f1pp.toString());
+		assertSame(f1pp, G.getEq("f_1''"));
+		assertEquals(3, degree(f1pp));
+		assertTrue(f1pp.findEdge(G.getVar("x_1'''")));
+		assertTrue(f1pp.findEdge(G.getVar("x_2''")));
+		assertTrue(f1p.findEdge(G.getVar("x_1''")));
+		assertFalse(f1p.findEdge(G.getVar("x_1")));
+		
+		// the variables see the derived equations
+		BipartiteNode x2p = G.getVar("x_2'");
+		assertEquals(1, degree(x2p));
+		assertSame(f1p, x2p.getEdges().getNode2());
+		assertEquals(2, degree(G.getVar("x_1''")));
+		assertEquals(2, degree(G.getVar("x_2")));
+		
+		// the derived lists are kept until the graph changes
+		BipartiteEdge e = f1pp.getEdges();
+		assertSame(e, f1pp.getEdges());
+		assertSame(e.getNext(), f1pp.getEdges().getNext());
+		BipartiteEdge ex2p = x2p.getEdges();
+		
+		BipartiteNode f2p = G.diffEquation(G.getEq("f_2"));
+		assertNotSame(ex2p, x2p.getEdges());
+		assertEquals(2, degree(x2p));
+		assertTrue(x2p.findEdge(f2p));
+		assertEquals(5, G.ne());
+		assertEquals(7, G.nv());
+	}
+	
 	public void testDiffEqApplyDiffs(){
 		BipartiteGraph G = new BipartiteGraph("HeatEx");
 		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_1", "x_3");
@@ -114,4 +159,569 @@ public class GraphTest extends TestCase {
 		assertEquals(ne+1, G.ne());
 		assertEquals(nv+3, G.nv());
 	}
+
+	public void testLabels(){
+		BipartiteGraph G = new BipartiteGraph("reactor");
+		G.addEdge("f_1", "T"); G.addEdge("f_1", "\u00e7\u00e3o'"); G.addEdge("f_2", "\ud83d\ude00");
+		BipartiteNode x = new BipartiteNode(Integer.valueOf(7));
+		G.addV(x);
+		BipartiteNode f1 = G.getEq("f_1");
+
+		assertEquals("f_1", f1.getObject());
+		assertEquals("\u00e7\u00e3o", G.getVar("\u00e7\u00e3o").toString());
+		assertEquals("\u00e7\u00e3o'", G.getVar("\u00e7\u00e3o'").toString());
+		assertEquals("\ud83d\ude00", G.getVars().get(3).toString());
+		assertSame(G.getVars().get(3), G.getVar("\ud83d\ude00"));
+		assertSame(x, G.getVar("7"));
+		assertEquals(Integer.valueOf(7), x.getObject());
+		assertNull(G.getVar("\u00e7\u00e3"));
+		assertNull(G.getVar("T'"));
+
+		// the differentiated labels are built from the original ones
+		BipartiteNode f1pp = G.diffEquation(G.diffEquation(f1));
+		assertEquals("f_1''", f1pp.toString());
+		assertSame(f1pp, G.getEq("f_1''"));
+		assertEquals("T''", G.getVar("T''").toString());
+		assertEquals("7'", G.diffVariable(x).toString());
+
+		// the snapshot shares the labels until one of the graphs adds new ones
+		BipartiteGraph G2 = G.snapshot();
+		G2.addEdge("f_3", "P");
+		G.addEdge("f_3", "Q");
+		assertEquals("P", G2.getVars().get(G2.nv()-1).toString());
+		assertEquals("Q", G.getVars().get(G.nv()-1).toString());
+		assertEquals("f_1", G2.getEqs().get(0).toString());
+	}
+
+	public void testFindByName(){
+		BipartiteGraph G = new BipartiteGraph("reactor");
+		G.addEdge("f_1", "C"); G.addEdge("f_1", "R"); G.addEdge("f_1", "C'");
+		G.addEdge("f_2", "T"); G.addEdge("f_2", "T''");
+		
+		BipartiteNode C = G.getVar("C");
+		assertNotNull(C);
+		assertSame(C.getDiff(), G.getVar("C'"));
+		assertSame(G.getVar("T").getDiff().getDiff(), G.getVar("T''"));
+		assertNull(G.getVar("f_1"));
+		assertNull(G.getEq("C"));
+		
+		// nodes added by differentiation or directly are also found
+		BipartiteNode f1p = G.diffEquation(G.getEq("f_1"));
+		assertSame(f1p, G.getEq("f_1'"));
+		assertSame(G.getVar("R").getDiff(), G.getVar("R'"));
+		BipartiteNode x = new BipartiteNode("x");
+		G.addV(x);
+		assertSame(x, G.getVar("x"));
+		
+		// adding an existing edge does not create nodes
+		int ne = G.ne(), nv = G.nv();
+		G.addEdge("f_2", "T''");
+		assertEquals(ne, G.ne());
+		assertEquals(nv, G.nv());
+	}
+
+	int degree(BipartiteNode n){
+		int d = 0;
+		for(BipartiteEdge e=n.getEdges(); e!=null; e=e.getNext())
+			++d;
+		return d;
+	}
+	
+	public void testEdgeCheck(){
+		int modes[] = {BipartiteGraph.EDGES_SCAN, BipartiteGraph.EDGES_HASH};
+		for(int mode : modes){
+			BipartiteGraph G = new BipartiteGraph("HeatEx");
+			G.addEdge("f_1", "x_1");
+			G.setEdgeCheck(mode);
+			G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_1", "x_2");
+			G.addEdge("f_2", "x_2"); G.addEdge("f_2", "x_3"); G.addEdge("f_2", "x_3");
+			
+			assertEquals(mode, G.getEdgeCheck());
+			assertEquals(2, degree(G.getEq("f_1")));
+			assertEquals(2, degree(G.getEq("f_2")));
+			assertEquals(2, degree(G.getVar("x_2")));
+			assertEquals(1, degree(G.getVar("x_1")));
+			G.setEdgeCheck(BipartiteGraph.EDGES_SCAN);
+		}
+		
+		BipartiteGraph G = new BipartiteGraph("HeatEx");
+		G.setEdgeCheck(BipartiteGraph.EDGES_UNCHECKED);
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2");
+		assertEquals(2, degree(G.getEq("f_1")));
+	}
+
+	/**
+	 * A derivative referenced again by name is the same variable, not the original one.
+	 */
+	public void testFindDerivative(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f", "x'");
+		G.addEdge("f", "x'");
+		BipartiteNode x = G.getVar("x"), xp = G.getVar("x'");
+		assertSame(xp, x.getDiff());
+		assertSame(xp, G.getEq("f").getEdges().getNode2());
+		assertEquals(1, degree(G.getEq("f")));
+		assertNull(x.getEdges());
+		assertEquals(2, G.nv());
+
+		G.addEdge("g", "x''");
+		G.addEdge("g", "x''");
+		assertSame(xp.getDiff(), G.getEq("g").getEdges().getNode2());
+		assertEquals(1, degree(G.getEq("g")));
+		assertNull(xp.getEdges().getNext());
+	}
+
+	/**
+	 * Nodes created outside of a graph keep their state when linked and added to it.
+	 */
+	public void testDetachedNodes(){
+		BipartiteNode eq1 = new BipartiteNode("eq1"); 
+		BipartiteNode eq2 = new BipartiteNode("eq2"); 
+		BipartiteNode v1 = new BipartiteNode("v1"); 
+		BipartiteNode v2 = new BipartiteNode("v2");
+		BipartiteNode v2p = new BipartiteNode("v2'", v2);
+		
+		eq1.connect(v1);
+		eq1.addEdge(v1);
+		eq1.addEdge(v2);
+		eq2.addEdge(v2p);
+		eq2.connect(v2p);
+		
+		BipartiteGraph G = new BipartiteGraph();
+		G.addE(eq1);
+		G.addE(eq2);
+		G.addV(v1);
+		G.addV(v2);
+		G.addV(v2p);
+		
+		assertSame(v1, eq1.getConnected());
+		assertSame(eq1, v1.getConnected());
+		assertSame(v2p, eq2.getConnected());
+		assertSame(v2p, v2.getDiff());
+		assertSame(v2, v2p.getOrig());
+		assertNull(v1.getDiff());
+		assertTrue(Algorithms.MaximumMatching(G));
+		
+		eq1.connect(v2);
+		assertNull(v1.getConnected());
+		assertSame(eq1, v2.getConnected());
+	}
+
+	public void testSnapshot(){
+		BipartiteGraph G = new BipartiteGraph("HeatEx");
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2'");
+		G.addEdge("f_2", "x_2"); G.addEdge("f_2", "x_1");
+		G.getEq("f_1").connect(G.getVar("x_1"));
+		Algorithms.markAlternating(G.getVar("x_2"), Algorithms.FLAG_MARKED);
+
+		BipartiteGraph G2 = G.snapshot();
+		assertEquals("HeatEx", G2.getName());
+		assertEquals(G.ne(), G2.ne());
+		assertEquals(G.nv(), G2.nv());
+		assertNotSame(G.getEq("f_1"), G2.getEq("f_1"));
+		assertSame(G2.getVar("x_1"), G2.getEq("f_1").getConnected());
+		assertSame(G2.getVar("x_2'"), G2.getVar("x_2").getDiff());
+		assertTrue(G2.getVar("x_2").hasFlag(Algorithms.FLAG_MARKED));
+		BipartiteEdge e = G2.getEq("f_2").getEdges();
+		assertSame(G2.getVar("x_1"), e.getNode2());
+		assertSame(G2.getVar("x_2"), e.getNext().getNode2());
+		assertNull(e.getNext().getNext());
+
+		// changing the snapshot does not change the original
+		BipartiteNode f2p = G2.diffEquation(G2.getEq("f_2"));
+		G2.getEq("f_1").connect(G2.getVar("x_2'"));
+		G2.getVar("x_2").removeFlag(Algorithms.FLAG_MARKED);
+		G2.addEdge("f_3", "x_1");
+		assertEquals(2, G.ne());
+		assertEquals(3, G.nv());
+		assertNull(G.getEq("f_2").getDiff());
+		assertSame(G.getVar("x_1"), G.getEq("f_1").getConnected());
+		assertTrue(G.getVar("x_2").hasFlag(Algorithms.FLAG_MARKED));
+		assertEquals(2, degree(G.getVar("x_1")));
+		assertSame(f2p, G2.getEq("f_2").getDiff());
+		assertEquals(3, degree(G2.getVar("x_1")));
+
+		// the reverse edges are the ones of the snapshot
+		G2.removeEdge(G2.getEq("f_1").getEdges());
+		assertEquals(1, degree(G2.getEq("f_1")));
+		assertEquals(1, degree(G2.getVar("x_2'")));
+		assertEquals(3, degree(G.getVar("x_2'")) + degree(G.getEq("f_1")));
+	}
+
+	/**
+	 * Snapshots taken at the same time by several threads, the graph copied is only read.
+	 */
+	public void testConcurrentSnapshots() throws Exception{
+		final BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/ugav80.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+		final String before = state(G);
+		final BipartiteGraph copies[] = new BipartiteGraph[4];
+		Thread threads[] = new Thread[copies.length];
+		for(int k=0; k<threads.length; ++k){
+			final int t = k;
+			threads[k] = new Thread(){
+				public void run(){
+					for(int run=0; run<5; ++run)
+						copies[t] = G.snapshot();
+				}
+			};
+			threads[k].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		assertEquals(before, state(G));
+		for(BipartiteGraph G2 : copies){
+			assertEquals(before, state(G2));
+			// removing the edges of the equations removes the ones of the variables
+			for(BipartiteNode ve : G2.getEqs()){
+				while(ve.getEdges() != null)
+					G2.removeEdge(ve.getEdges());
+			}
+			for(BipartiteNode vv : G2.getVars())
+				assertNull(vv.getEdges());
+		}
+		assertEquals(before, state(G));
+	}
+
+	public void testCompact(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f_1", "x"); G.addEdge("f_1", "y");
+		G.addEdge("f_2", "x'"); G.addEdge("f_2", "y");
+		BipartiteNode x = G.getVar("x");
+		// the first step only deletes x
+		assertEquals(Algorithms.RET_STEP, Algorithms.Pantelides(G, true));
+		assertTrue(x.hasFlag(Algorithms.FLAG_DELETED));
+		assertEquals(3, G.nv());
+
+		assertEquals(1, G.compact());
+		assertEquals(0, G.compact());
+		assertEquals(2, G.nv());
+		assertNull(G.getVar("x"));
+		assertSame(x, G.getRemovedVars().get(0));
+		assertEquals(1, degree(G.getEq("f_1")));
+		assertSame(G.getVar("y"), G.getEq("f_1").getEdges().getNode2());
+		// the removed variable keeps its edges
+		assertSame(G.getEq("f_1"), x.getEdges().getNode2());
+
+		// the derivative of x is still in the differentiated equation
+		BipartiteNode f1p = G.diffEquation(G.getEq("f_1"));
+		assertEquals(2, degree(f1p));
+		assertTrue(f1p.findEdge(G.getVar("x'")));
+		assertTrue(f1p.findEdge(G.getVar("y'")));
+
+		BipartiteGraph G2 = G.snapshot();
+		assertEquals("x", G2.getRemovedVars().get(0).toString());
+		assertEquals(2, degree(G2.diffEquation(G2.getEq("f_1").getDiff())));
+	}
+
+	public void testRemove(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.setEdgeCheck(BipartiteGraph.EDGES_HASH);
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2"); G.addEdge("f_1", "x_3");
+		G.addEdge("f_2", "x_2"); G.addEdge("f_2", "x_3");
+		G.addEdge("f_3", "x_3");
+		BipartiteNode f1 = G.getEq("f_1"), x2 = G.getVar("x_2"), x3 = G.getVar("x_3");
+		f1.connect(x2);
+
+		// the matched edge in the middle of both lists
+		assertTrue(G.removeEdge(f1, x2));
+		assertFalse(G.removeEdge(f1, x2));
+		assertNull(f1.getConnected());
+		assertNull(x2.getConnected());
+		assertEquals(2, degree(f1));
+		assertEquals(1, degree(x2));
+		assertFalse(f1.findEdge(x2));
+		assertFalse(x2.findEdge(f1));
+		G.addEdge("f_1", "x_2");
+		assertEquals(3, degree(f1));
+		assertEquals(2, degree(x2));
+
+		G.getEq("f_2").connect(x3);
+		G.removeVariable(x3);
+		assertNull(G.getVar("x_3"));
+		assertEquals(2, G.nv());
+		assertNull(G.getEq("f_2").getConnected());
+		assertNull(G.getEq("f_3").getEdges());
+		assertEquals(2, degree(f1));
+
+		G.removeEquation(G.getEq("f_3"));
+		G.removeEquation(G.getEq("f_1"));
+		assertEquals(1, G.ne());
+		assertNull(G.getEq("f_1"));
+		assertSame(G.getEq("f_2"), x2.getEdges().getNode2());
+		assertNull(x2.getEdges().getNext());
+		assertNull(G.getVar("x_1").getEdges());
+		try{
+			G.removeEquation(f1);
+			fail();
+		}
+		catch(IllegalArgumentException e){
+		}
+	}
+
+	/**
+	 * The other nodes are still found (by name and by removal) as the nodes are removed
+	 * and added in between.
+	 */
+	public void testRemoveMany(){
+		BipartiteGraph G = new BipartiteGraph();
+		int n = 200;
+		for(int i=0; i<n; ++i)
+			G.addEdge("f_" + i, "x_" + i);
+		assertNotNull(G.getEq("f_0"));
+		for(int i=n-1; i>=0; i-=2){
+			G.removeEquation(G.getEq("f_" + i));
+			G.removeVariable(G.getVar("x_" + (n-1-i)));
+			if(i % 10 == 1)
+				G.addEdge("g_" + i, "x_" + i);
+		}
+		assertEquals(n/2 + n/10, G.ne());
+		assertEquals(n/2, G.nv());
+		for(int i=0; i<n; ++i){
+			BipartiteNode f = G.getEq("f_" + i), x = G.getVar("x_" + i);
+			if(i % 2 == 0){
+				assertNull(x);
+				assertEquals(0, degree(f));
+			}
+			else{
+				assertNull(f);
+				assertEquals(i % 10 == 1 ? 1 : 0, degree(x));
+			}
+		}
+		// the order of the others is kept
+		for(int k=0; k<n/2; ++k)
+			assertEquals("f_" + 2*k, G.getEqs().get(k).toString());
+		for(int i=1; i<n; i+=10)
+			G.removeEquation(G.getEq("g_" + i));
+		for(int i=0; i<n; i+=2)
+			G.removeEquation(G.getEq("f_" + i));
+		assertEquals(0, G.ne());
+		assertNull(G.getEq("f_0"));
+		for(BipartiteNode x : G.getVars())
+			assertEquals(0, degree(x));
+	}
+
+	/**
+	 * The edges removed are reused by the differentiation.
+	 */
+	public void testEdgeReuse(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f_1", "x"); G.addEdge("f_1", "y");
+		G.addEdge("f_2", "x");
+		BipartiteEdge e = G.getEq("f_2").getEdges(), t = G.getVar("x").getEdges();
+		G.removeEdge(e);
+		G.removeEdge(e);
+		assertNull(e.getNext());
+		assertEquals(1, degree(G.getVar("x")));
+
+		BipartiteNode f1p = G.diffEquation(G.getEq("f_1"));
+		assertEquals(2, degree(f1p));
+		boolean reused = false;
+		for(BipartiteEdge ed=f1p.getEdges(); ed!=null; ed=ed.getNext())
+			reused |= ed==e || ed==t;
+		assertTrue(reused);
+		assertSame(f1p, G.getVar("x'").getEdges().getNode2());
+	}
+
+	/**
+	 * Dropping the specification equations gives back the original model.
+	 */
+	public void testRemoveSpecs() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/heatex_x2_x4.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+		// f_2, f_5 and f_6 compete for x_2 and x_4
+		assertFalse(Algorithms.MaximumMatching(G));
+		BipartiteGraph G2 = G.snapshot();
+
+		G.removeEquation(G.getEq("f_5"));
+		G.removeEquation(G.getEq("f_6"));
+		assertEquals(4, G.ne());
+		assertEquals(2, degree(G.getVar("x_2")));
+		assertTrue(Algorithms.MaximumMatching(G));
+		int parts[] = {0, 0};
+		Algorithms.DulmageMendelshon(G, parts);
+		BipartiteGraph G1 = new BipartiteGraph();
+		in = new FileInputStream("dots/heatex.dot");
+		Utils.ImportGraphViz(in, G1);
+		in.close();
+		Algorithms.MaximumMatching(G1);
+		int parts1[] = {0, 0};
+		Algorithms.DulmageMendelshon(G1, parts1);
+		assertEquals(parts1[0], parts[0]);
+		assertEquals(parts1[1], parts[1]);
+
+		// the snapshot has its own (doubly linked) edges
+		assertEquals(6, G2.ne());
+		G2.removeVariable(G2.getVar("x_2"));
+		assertEquals(2, degree(G2.getEq("f_1")));
+		assertNull(G2.getEq("f_5").getEdges());
+		assertEquals(3, degree(G.getEq("f_1")));
+	}
+
+	/**
+	 * Compare algorithms on snapshots of a single loaded graph.
+	 */
+	public void testSnapshotAnalysis() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/ugav80.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+
+		Utils.tic();
+		BipartiteGraph G2 = G.snapshot();
+		System.out.println("ugav80 time to snapshot:" + Utils.toc());
+		BipartiteGraph G3 = G.snapshot();
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.SoaresSecchi(G2, false));
+		// step by step, so the equations are differentiated after each search
+		int ret = Algorithms.RET_STEP;
+		for(int step=0; step<100 && ret==Algorithms.RET_STEP; ++step)
+			ret = Algorithms.Pantelides(G3, true);
+		assertEquals(Algorithms.RET_SUCCESS, ret);
+		for(BipartiteNode ve : G.getEqs())
+			assertNull(ve.getConnected());
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.SoaresSecchi(G, false));
+		assertEquals(G.ne(), G2.ne());
+		assertEquals(G.nv(), G2.nv());
+	}
+
+	/**
+	 * Labels, flags, matching and edges of all nodes of the graph.
+	 */
+	String state(BipartiteGraph G){
+		StringBuilder b = new StringBuilder();
+		for(int k=0; k<2; ++k){
+			for(BipartiteNode n : k==0 ? G.getEqs() : G.getVars()){
+				b.append(n).append(' ').append(n.getConnected());
+				for(int f=1; f<=Algorithms.FLAG_OVER; f<<=1)
+					b.append(n.hasFlag(f) ? '1' : '0');
+				for(BipartiteEdge e=n.getEdges(); e!=null; e=e.getNext())
+					b.append(' ').append(e.getNode2());
+				b.append('\n');
+			}
+		}
+		return b.toString();
+	}
+
+	public void testTransaction(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.setEdgeCheck(BipartiteGraph.EDGES_HASH);
+		G.addEdge("f_1", "x"); G.addEdge("f_1", "y");
+		G.addEdge("f_2", "x'");
+		BipartiteNode f1 = G.getEq("f_1"), x = G.getVar("x"), y = G.getVar("y");
+		f1.connect(y);
+		String before = state(G);
+		assertEquals(3, G.getEdgeSetSize());
+
+		G.begin();
+		BipartiteNode f1p = G.diffEquation(f1);
+		f1p.connect(G.getVar("y'"));
+		f1.connect(x);
+		G.addEdge("f_2", "y");
+		Algorithms.markAlternating(x, Algorithms.FLAG_MARKED);
+		assertEquals(3, G.ne());
+		assertEquals(2, degree(G.getVar("x'")));
+
+		// nested, only the inner changes are undone
+		G.begin();
+		assertEquals(2, G.getTransactionDepth());
+		G.diffVariable(y.getDiff());
+		x.removeFlag(Algorithms.FLAG_MARKED);
+		G.rollback();
+		assertEquals(4, G.nv());
+		assertTrue(x.hasFlag(Algorithms.FLAG_MARKED));
+		try{
+			G.removeEdge(f1, x);
+			fail();
+		}
+		catch(IllegalStateException e){
+		}
+
+		G.rollback();
+		assertEquals(0, G.getTransactionDepth());
+		assertEquals(before, state(G));
+		assertNull(f1.getDiff());
+		assertNull(G.getEq("f_1'"));
+		assertNull(G.getVar("y'"));
+		assertSame(y, f1.getConnected());
+		assertEquals(1, degree(G.getVar("x'")));
+		// the edge set and the pool are consistent with the graph
+		assertEquals(3, G.getEdgeSetSize());
+		G.addEdge("f_2", "y");
+		assertEquals(2, degree(y));
+		assertEquals(4, G.getEdgeSetSize());
+		assertEquals("f_1'", G.diffEquation(f1).toString());
+
+		G.begin();
+		G.diffEquation(G.getEq("f_2"));
+		G.commit();
+		assertEquals(0, G.getTransactionDepth());
+		assertNotNull(G.getEq("f_2'"));
+		try{
+			G.rollback();
+			fail();
+		}
+		catch(IllegalStateException e){
+		}
+	}
+
+	/**
+	 * Tries one step of the index reduction and undoes it.
+	 */
+	public void testTransactionAnalysis() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/pend.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+		String before = state(G);
+		int ne = G.ne();
+
+		G.begin();
+		int ret = Algorithms.RET_STEP;
+		for(int step=0; step<100 && ret==Algorithms.RET_STEP; ++step)
+			ret = Algorithms.Pantelides(G, true);
+		assertEquals(Algorithms.RET_SUCCESS, ret);
+		assertTrue(G.ne() > ne);
+		String after = state(G);
+		G.rollback();
+		assertEquals(before, state(G));
+
+		// the same result again
+		G.begin();
+		ret = Algorithms.RET_STEP;
+		for(int step=0; step<100 && ret==Algorithms.RET_STEP; ++step)
+			ret = Algorithms.Pantelides(G, true);
+		G.commit();
+		assertEquals(after, state(G));
+	}
+
+	/**
+	 * An index reduction tried and undone repeatedly creates its edges in the first run only.
+	 */
+	public void testEdgeArena() throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream("dots/ugav40_soares.dot");
+		Utils.ImportGraphViz(in, G);
+		in.close();
+		String before = state(G);
+
+		G.begin();
+		int ret = Algorithms.SoaresSecchi(G, false);
+		String after = state(G);
+		assertFalse(before.equals(after));
+		G.rollback();
+		int capacity = G.getEdgeCapacity();
+		assertTrue(capacity > 0);
+		for(int k=0; k<3; ++k){
+			assertEquals(before, state(G));
+			G.begin();
+			assertEquals(ret, Algorithms.SoaresSecchi(G, false));
+			assertEquals(after, state(G));
+			G.rollback();
+			assertEquals(capacity, G.getEdgeCapacity());
+		}
+	}
 }
@@ -8,6 +8,7 @@ import java.util.Collection;
 import junit.framework.TestCase;
 import br.eng.rps.graph.Algorithms;
 import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.SubgraphView;
 import br.eng.rps.graph.Tarjan;
 import br.eng.rps.graph.utils.Utils;
 
@@ -37,10 +38,10 @@ public class LDPETest extends TestCase {
 		assertTrue(ret);
 		
 		Tarjan tarjan = new Tarjan();
-		Collection<BipartiteGraph> scc = tarjan.tarjan(G);
+		Collection<SubgraphView> scc = tarjan.tarjan(G);
 		
 		int i = 0;
-		for(BipartiteGraph comp : scc){
+		for(SubgraphView comp : scc){
 			out.println("Block " + ++i);
 			out.println(comp.toString());
 		}
@@ -0,0 +1,190 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.Matching;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class MatchingTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	public void testCopyRestore(){
+		BipartiteGraph G = new BipartiteGraph("HeatEx");
+		G.addEdge("f_1", "x_1"); G.addEdge("f_1", "x_2");
+		G.addEdge("f_2", "x_2");
+		CompactGraph C = G.freeze();
+
+		Matching M = C.getMatching();
+		assertEquals(0, M.size());
+		M.connect(0, 1);
+		Matching saved = M.copy();
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching(M, 1));
+		assertEquals(0, M.getEqMate(0));
+		assertEquals(1, M.getEqMate(1));
+		assertTrue(M.isColored(0));
+		assertSame(G.getVar("x_2"), M.getConnected(G.getEq("f_2")));
+		assertSame(G.getEq("f_1"), M.getConnected(G.getVar("x_1")));
+		// the nodes are not touched
+		assertNull(G.getEq("f_1").getConnected());
+
+		M.restore(saved);
+		assertEquals(1, M.getEqMate(0));
+		assertEquals(-1, M.getEqMate(1));
+		assertEquals(1, M.size());
+
+		M.apply();
+		assertSame(G.getVar("x_2"), G.getEq("f_1").getConnected());
+	}
+
+	public void testAlgebraic(){
+		BipartiteGraph G = new BipartiteGraph();
+		G.addEdge("f_1", "x"); G.addEdge("f_2", "x'");
+		G.getEq("f_1").addEdge(G.getVar("x'"));
+		CompactGraph C = G.freeze();
+		Matching M = new Matching(C);
+
+		// x has a differentiated version, only x' is elegible
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching2(M, 0, false));
+		assertSame(G.getVar("x'"), M.getConnected(G.getEq("f_1")));
+		assertEquals(Algorithms.RET_FAILED, Algorithms.AugmentMatching2(M, 1, false));
+		assertEquals(Algorithms.RET_SUCCESS, Algorithms.AugmentMatching2(M, 1, true));
+		assertSame(G.getVar("x"), M.getConnected(G.getEq("f_1")));
+		assertSame(G.getVar("x'"), M.getConnected(G.getEq("f_2")));
+	}
+
+	/**
+	 * Two candidate matchings over a single graph.
+	 */
+	public void testCandidates() throws Exception{
+		BipartiteGraph G = loadGraph("dots/columnSteady11.dot");
+		CompactGraph C = G.freeze();
+		Matching M1 = C.getMatching();
+		assertEquals(Algorithms.MaximumMatching(C.getMatching()), Algorithms.MaximumMatching(M1));
+		Matching M2 = new Matching(C);
+		for(int i=C.ne()-1; i>=0; --i)
+			Algorithms.AugmentMatching(M2, i);
+		assertEquals(M1.size(), M2.size());
+
+		int parts1[] = {0, 0}, parts2[] = {0, 0};
+		Algorithms.DulmageMendelshon(M1, parts1, new boolean[C.ne()], new boolean[C.nv()]);
+		Algorithms.DulmageMendelshon(M2, parts2, new boolean[C.ne()], new boolean[C.nv()]);
+		assertEquals(parts1[0], parts2[0]);
+		assertEquals(parts1[1], parts2[1]);
+		for(BipartiteNode ve : G.getEqs())
+			assertNull(ve.getConnected());
+
+		// the components do not depend on the perfect matching
+		assertEquals(new Tarjan().tarjan(M1).size(), new Tarjan().tarjan(M2).size());
+		M2.apply();
+		assertEquals(new Tarjan().tarjan(M1).size(), new Tarjan().tarjan(G).size());
+	}
+
+	/**
+	 * The Hopcroft-Karp engine finds matchings of the same size, giving the same decompositions.
+	 */
+	public void testHopcroftKarp() throws Exception{
+		String files[] = {"dots/heatex_x2_x4.dot", "dots/nla_singular.dot", "dots/columnSteady11.dot",
+				"dots/ldpe_fixed.dot", "dots/ugav80.dot"};
+		for(String file : files){
+			BipartiteGraph G1 = loadGraph(file);
+			BipartiteGraph G2 = loadGraph(file);
+			G2.setMatchingEngine(BipartiteGraph.MATCHING_HOPCROFT_KARP);
+			assertEquals(file, Algorithms.MaximumMatching(G1), Algorithms.MaximumMatching(G2));
+
+			int n1 = 0, n2 = 0;
+			for(BipartiteNode ve : G1.getEqs()){
+				if(ve.getConnected() != null)
+					++n1;
+			}
+			for(BipartiteNode ve : G2.getEqs()){
+				BipartiteNode vv = ve.getConnected();
+				if(vv == null)
+					continue;
+				++n2;
+				assertSame(ve, vv.getConnected());
+				boolean edge = false;
+				for(BipartiteEdge e=ve.getEdges(); e!=null; e=e.getNext())
+					edge |= e.getNode2()==vv;
+				assertTrue(file, edge);
+			}
+			assertEquals(file, n1, n2);
+
+			int parts1[] = {0, 0}, parts2[] = {0, 0};
+			Algorithms.DulmageMendelshon(G1, parts1);
+			Algorithms.DulmageMendelshon(G2, parts2);
+			assertEquals(file, parts1[0], parts2[0]);
+			assertEquals(file, parts1[1], parts2[1]);
+			if(parts1[0]==0 && parts1[1]==0)
+				assertEquals(file, new Tarjan().tarjan(G1).size(), new Tarjan().tarjan(G2).size());
+		}
+
+		// augments a given matching
+		BipartiteGraph G = loadGraph("dots/columnSteady11.dot");
+		CompactGraph C = G.freeze();
+		Matching M = C.getMatching();
+		BipartiteNode ve = G.getEqs().get(0);
+		M.connect(0, C.indexOf(ve.getEdges().getNode2()));
+		boolean perfect = Algorithms.HopcroftKarp(M);
+		Matching M1 = new Matching(C);
+		assertEquals(Algorithms.MaximumMatching(M1), perfect);
+		assertEquals(M1.size(), M.size());
+	}
+
+	/**
+	 * The MC21 engine gives the pairs of the default one, on the nodes and on the snapshots.
+	 */
+	public void testMC21() throws Exception{
+		String files[] = {"dots/heatex_x2_x4.dot", "dots/nla_singular.dot", "dots/columnSteady11.dot",
+				"dots/ldpe_fixed.dot", "dots/ugav80.dot"};
+		for(String file : files){
+			BipartiteGraph G1 = loadGraph(file);
+			BipartiteGraph G2 = loadGraph(file);
+			G2.setMatchingEngine(BipartiteGraph.MATCHING_MC21);
+			assertEquals(file, Algorithms.MaximumMatching(G1), Algorithms.MaximumMatching(G2));
+			for(int i=0; i<G1.ne(); ++i){
+				BipartiteNode vv1 = G1.getEqs().get(i).getConnected(), vv2 = G2.getEqs().get(i).getConnected();
+				assertEquals(file, String.valueOf(vv1), String.valueOf(vv2));
+			}
+
+			Matching M1 = new Matching(loadGraph(file).freeze());
+			CompactGraph C2 = G2.freeze();
+			Matching M2 = new Matching(C2);
+			assertEquals(file, Algorithms.MaximumMatching(M1), Algorithms.MC21(M2));
+			for(int i=0; i<C2.ne(); ++i)
+				assertEquals(file, M1.getEqMate(i), M2.getEqMate(i));
+		}
+
+		// the augmenting steps of Pantelides
+		BipartiteGraph G1 = loadGraph("dots/ugav20.dot");
+		BipartiteGraph G2 = loadGraph("dots/ugav20.dot");
+		G2.setMatchingEngine(BipartiteGraph.MATCHING_MC21);
+		int ret1 = Algorithms.RET_STEP, ret2 = Algorithms.RET_STEP;
+		for(int step=0; step<100 && ret1==Algorithms.RET_STEP; ++step)
+			ret1 = Algorithms.Pantelides(G1, true);
+		for(int step=0; step<100 && ret2==Algorithms.RET_STEP; ++step)
+			ret2 = Algorithms.Pantelides(G2, true);
+		assertEquals(ret1, ret2);
+		assertEquals(G1.ne(), G2.ne());
+		assertEquals(G1.nv(), G2.nv());
+		for(int i=0; i<G1.ne(); ++i){
+			BipartiteNode ve1 = G1.getEqs().get(i), ve2 = G2.getEqs().get(i);
+			assertEquals(ve1.toString(), ve2.toString());
+			assertEquals(String.valueOf(ve1.getConnected()), String.valueOf(ve2.getConnected()));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package br.eng.rps.graph.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.OffHeapGraph;
+import br.eng.rps.graph.SubgraphView;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class OffHeapGraphTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	public void testRows(){
+		OffHeapGraph G = OffHeapGraph.allocate(2, 3, 4, 0);
+		G.addRow(new int[]{0, 1}, 2);
+		G.addRow(new int[]{1, 2}, 2);
+		G.finish();
+
+		assertEquals(4, G.nnz());
+		assertEquals(2, G.varEnd(1) - G.varBegin(1));
+		assertEquals(1, G.varAdj(G.varBegin(2)));
+		assertNull(G.getEqLabel(0));
+		assertTrue(Algorithms.MaximumMatching(G));
+
+		int parts[] = {0, 0};
+		Algorithms.DulmageMendelshon(G, parts);
+		assertEquals(0, parts[0]);
+		assertEquals(3, parts[1]);
+	}
+
+	/**
+	 * The off-heap algorithms should give the same results as the compact ones.
+	 */
+	void compare(String file) throws Exception{
+		BipartiteGraph G = loadGraph(file);
+		OffHeapGraph O = OffHeapGraph.copyOf(G, null);
+		assertEquals(G.getEqs().get(0).toString(), O.getEqLabel(0));
+		assertEquals(G.getVars().get(G.nv()-1).toString(), O.getVarLabel(G.nv()-1));
+
+		assertEquals(Algorithms.MaximumMatching(G.freeze()), Algorithms.MaximumMatching(O));
+		for(int i=0; i<G.ne(); ++i){
+			int j = O.getEqMate(i);
+			assertEquals(G.getEqs().get(i).getConnected(), j<0 ? null : G.getVars().get(j));
+		}
+
+		int parts1[] = {0, 0}, parts2[] = {0, 0};
+		Algorithms.DulmageMendelshon(G.freeze(), parts1);
+		Algorithms.DulmageMendelshon(O, parts2);
+		assertEquals(parts1[0], parts2[0]);
+		assertEquals(parts1[1], parts2[1]);
+
+		Collection<SubgraphView> scc = new Tarjan().tarjan(G.freeze());
+		assertEquals(scc.size(), new Tarjan().tarjan(O));
+	}
+
+	public void testColumnSteady11() throws Exception{
+		compare("dots/columnSteady11.dot");
+	}
+	public void testLDPE() throws Exception{
+		compare("dots/ldpe_fixed.dot");
+	}
+	public void testSingular() throws Exception{
+		compare("dots/nla_singular.dot");
+	}
+
+	public void testMappedFile() throws Exception{
+		File f = File.createTempFile("rpsgraph", ".bin");
+		f.deleteOnExit();
+		BipartiteGraph G = loadGraph("dots/ugav80.dot");
+
+		OffHeapGraph O = OffHeapGraph.copyOf(G, f);
+		assertTrue(Algorithms.MaximumMatching(O));
+		int ncomp = new Tarjan().tarjan(O);
+		O.close();
+
+		O = OffHeapGraph.open(f);
+		assertEquals(G.ne(), O.ne());
+		assertEquals(G.nv(), O.nv());
+		assertEquals(G.getVars().get(7).toString(), O.getVarLabel(7));
+		for(int i=0; i<O.ne(); ++i)
+			assertEquals(i, O.getVarMate(O.getEqMate(i)));
+		assertEquals(ncomp, new Tarjan().tarjan(O));
+		O.close();
+	}
+}
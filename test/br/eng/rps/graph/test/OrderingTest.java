@@ -0,0 +1,158 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.Matching;
+import br.eng.rps.graph.Ordering;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class OrderingTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	static Ordering shuffle(int ne, int nv, Random r){
+		int eqs[] = new int[ne], vars[] = new int[nv];
+		for(int i=0; i<ne; ++i)
+			eqs[i] = i;
+		for(int j=0; j<nv; ++j)
+			vars[j] = j;
+		for(int i=ne-1; i>0; --i){
+			int k = r.nextInt(i+1), t = eqs[i];
+			eqs[i] = eqs[k];
+			eqs[k] = t;
+		}
+		for(int j=nv-1; j>0; --j){
+			int k = r.nextInt(j+1), t = vars[j];
+			vars[j] = vars[k];
+			vars[k] = t;
+		}
+		return new Ordering(eqs, vars);
+	}
+
+	/**
+	 * Mean distance of the nonzeros to the diagonal of the incidence matrix (scaled to be square).
+	 */
+	static double span(CompactGraph C){
+		double s = 0;
+		for(int i=0; i<C.ne(); ++i){
+			for(BipartiteEdge ed=C.getEq(i).getEdges(); ed!=null; ed=ed.getNext())
+				s += Math.abs((double)i*C.nv()/C.ne() - C.indexOf(ed.getNode2()));
+		}
+		return s / C.nnz();
+	}
+
+	static String neighbours(BipartiteNode n){
+		StringBuilder b = new StringBuilder();
+		for(BipartiteEdge ed=n.getEdges(); ed!=null; ed=ed.getNext())
+			b.append(ed.getNode2()).append(' ');
+		return b.toString();
+	}
+
+	public void testReorder() throws Exception{
+		BipartiteGraph G = loadGraph("dots/heatex.dot");
+		BipartiteNode f1 = G.getEqs().get(0), x1 = G.getVars().get(0);
+		Algorithms.MaximumMatching(G);
+		BipartiteNode mate = f1.getConnected();
+
+		Ordering P = shuffle(G.getEqs().size(), G.getVars().size(), new Random(1));
+		String edges1 = neighbours(f1), edges2 = neighbours(x1);
+		BipartiteEdge first = f1.getEdges();
+		G.reorder(P);
+		// the edges are created again, in the same order
+		assertNotSame(first, f1.getEdges());
+		assertEquals(edges1, neighbours(f1));
+		assertEquals(edges2, neighbours(x1));
+		assertSame(f1, G.getEqs().get(P.newEq(0)));
+		assertSame(x1, G.getVars().get(P.newVar(0)));
+		assertSame(mate, f1.getConnected());
+		assertSame(f1, mate.getConnected());
+		assertSame(f1, G.getEq(f1.toString()));
+
+		G.reorder(P.inverse());
+		assertSame(f1, G.getEqs().get(0));
+		assertSame(x1, G.getVars().get(0));
+		assertSame(mate, f1.getConnected());
+
+		try{
+			G.reorder(new Ordering(new int[]{0}, new int[]{0}));
+			fail();
+		}
+		catch(IllegalArgumentException e){
+		}
+		try{
+			new Ordering(new int[]{0, 0}, new int[]{});
+			fail();
+		}
+		catch(IllegalArgumentException e){
+		}
+	}
+
+	/**
+	 * Analysis of a scrambled graph before and after the reverse Cuthill-McKee ordering.
+	 * The results should not change and the nonzeros should get closer to the diagonal.
+	 */
+	void compare(String file) throws Exception{
+		BipartiteGraph G = loadGraph(file);
+		G.reorder(shuffle(G.getEqs().size(), G.getVars().size(), new Random(7)));
+		CompactGraph C = G.freeze();
+
+		Ordering P = Ordering.reverseCuthillMcKee(C);
+		BipartiteGraph R = G.snapshot();
+		R.reorder(P);
+		CompactGraph D = R.freeze();
+		assertEquals(C.nnz(), D.nnz());
+		assertTrue(span(D) < span(C));
+
+		Matching empty1 = C.getMatching(), empty2 = D.getMatching();
+		int parts1[] = {0, 0}, parts2[] = {0, 0};
+		int scc1 = 0, scc2 = 0;
+		boolean perfect1 = false, perfect2 = false;
+		for(int run=0; run<2; ++run){
+			empty1.apply();
+			perfect1 = Algorithms.MaximumMatching(C);
+			Algorithms.DulmageMendelshon(C, parts1);
+			scc1 = new Tarjan().tarjan(C).size();
+
+			empty2.apply();
+			perfect2 = Algorithms.MaximumMatching(D);
+			Algorithms.DulmageMendelshon(D, parts2);
+			scc2 = new Tarjan().tarjan(D).size();
+		}
+		assertEquals(perfect1, perfect2);
+		assertEquals(C.getMatching().size(), D.getMatching().size());
+		assertEquals(parts1[0], parts2[0]);
+		assertEquals(parts1[1], parts2[1]);
+		// the components depend on the matching unless it is perfect on both sides
+		if(perfect1 && C.ne()==C.nv())
+			assertEquals(scc1, scc2);
+
+		// the positions map back to the shuffled graph
+		for(int k=0; k<D.ne(); ++k)
+			assertEquals(R.getEqs().get(k).toString(), G.getEqs().get(P.oldEq(k)).toString());
+	}
+
+	public void testColumnSteady11() throws Exception{
+		compare("dots/columnSteady11.dot");
+	}
+	public void testLDPE() throws Exception{
+		compare("dots/ldpe_fixed.dot");
+	}
+	public void testUgav80() throws Exception{
+		compare("dots/ugav80.dot");
+	}
+}
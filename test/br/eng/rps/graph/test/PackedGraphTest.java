@@ -0,0 +1,107 @@
+package br.eng.rps.graph.test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collection;
+
+import junit.framework.TestCase;
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.Matching;
+import br.eng.rps.graph.PackedGraph;
+import br.eng.rps.graph.SubgraphView;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+public class PackedGraphTest extends TestCase {
+
+	BipartiteGraph loadGraph(String file) throws Exception{
+		BipartiteGraph G = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in , G);
+		in.close();
+		return G;
+	}
+
+	public void testRows(){
+		PackedGraph G = new PackedGraph(3, 300);
+		G.addRow(new int[]{299, 0, 1, 0}, 4);
+		G.addRow(new int[]{1, 150}, 2);
+		G.addRow(new int[]{}, 0);
+		G.finish();
+
+		assertEquals(5, G.nnz());
+		int row[] = new int[4];
+		assertEquals(3, G.getEqRow(0, row));
+		assertEquals(0, row[0]);
+		assertEquals(1, row[1]);
+		assertEquals(299, row[2]);
+		assertEquals(0, G.eqDegree(2));
+		assertEquals(2, G.getVarRow(1, row));
+		assertEquals(0, row[0]);
+		assertEquals(1, row[1]);
+		assertEquals(1, G.varDegree(150));
+		assertFalse(Algorithms.MaximumMatching(G));
+		assertEquals(-1, G.getEqMate(2));
+
+		int parts[] = {0, 0};
+		Algorithms.DulmageMendelshon(G, parts);
+		assertEquals(1, parts[0]);
+		assertEquals(300, parts[1]);
+	}
+
+	/**
+	 * The packed algorithms should give the same results as the compact ones.
+	 */
+	void compare(String file) throws Exception{
+		BipartiteGraph G = loadGraph(file);
+		CompactGraph C = G.freeze();
+		PackedGraph P = PackedGraph.copyOf(C);
+		long csr = 4L*(C.ne()+C.nv()+2) + 8L*C.nnz();
+		System.out.println(file + " packed bytes:" + P.bytes() + " compact bytes:" + csr);
+		assertEquals(C.nnz(), P.nnz());
+
+		Utils.tic();
+		boolean perfect = Algorithms.MaximumMatching(C);
+		System.out.print(file + " compact matching:" + Utils.toc());
+		Utils.tic();
+		assertEquals(perfect, Algorithms.MaximumMatching(P));
+		System.out.println(" packed matching:" + Utils.toc());
+		int size = 0;
+		for(int i=0; i<P.ne(); ++i){
+			int j = P.getEqMate(i);
+			if(j >= 0){
+				assertEquals(i, P.getVarMate(j));
+				++size;
+			}
+		}
+		assertEquals(C.getMatching().size(), size);
+
+		int parts1[] = {0, 0}, parts2[] = {0, 0};
+		Algorithms.DulmageMendelshon(C, parts1);
+		Algorithms.DulmageMendelshon(P, parts2);
+		assertEquals(parts1[0], parts2[0]);
+		assertEquals(parts1[1], parts2[1]);
+
+		// the components depend on the matching if it is not perfect
+		Matching M = C.getMatching();
+		for(int i=0; i<P.ne(); ++i)
+			P.connect(i, M.getEqMate(i));
+		Collection<SubgraphView> scc = new Tarjan().tarjan(C);
+		assertEquals(scc.size(), new Tarjan().tarjan(P));
+	}
+
+	public void testColumnSteady11() throws Exception{
+		compare("dots/columnSteady11.dot");
+	}
+	public void testLDPE() throws Exception{
+		compare("dots/ldpe_fixed.dot");
+	}
+	public void testSingular() throws Exception{
+		compare("dots/nla_singular.dot");
+	}
+	public void testUgav80() throws Exception{
+		compare("dots/ugav80.dot");
+	}
+}
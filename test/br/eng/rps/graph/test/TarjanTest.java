@@ -3,10 +3,15 @@ package br.eng.rps.graph.test;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import br.eng.rps.graph.Algorithms;
 import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.BipartiteNode;
+import br.eng.rps.graph.SubgraphView;
 import br.eng.rps.graph.Tarjan;
 import br.eng.rps.graph.TarjanLinkedList;
 import br.eng.rps.graph.utils.Utils;
@@ -42,10 +47,10 @@ public class TarjanTest extends TestCase {
 		assertTrue(ret);
 		
 		Tarjan tarjan = new Tarjan();
-		Collection<BipartiteGraph> scc = tarjan.tarjan(G);
+		Collection<SubgraphView> scc = tarjan.tarjan(G);
 		
 		int i = 0;
-		for(BipartiteGraph comp : scc){
+		for(SubgraphView comp : scc){
 			System.out.println("Block " + ++i);
 			System.out.println(comp.toString());
 		}
@@ -59,10 +64,10 @@ public class TarjanTest extends TestCase {
 		assertTrue(ret);
 		
 		Tarjan tarjan = new Tarjan();
-		Collection<BipartiteGraph> scc = tarjan.tarjan(G);
+		Collection<SubgraphView> scc = tarjan.tarjan(G);
 		
 		int i = 0;
-		for(BipartiteGraph comp : scc){
+		for(SubgraphView comp : scc){
 			System.out.println("Block " + ++i);
 			System.out.println(comp.toString());
 		}
@@ -77,10 +82,10 @@ public class TarjanTest extends TestCase {
 		assertTrue(ret);
 		
 		Tarjan tarjan = new Tarjan();
-		Collection<BipartiteGraph> scc = tarjan.tarjan(G);
+		Collection<SubgraphView> scc = tarjan.tarjan(G);
 		
 		int i = 0;
-		for(BipartiteGraph comp : scc){
+		for(SubgraphView comp : scc){
 			System.out.println("Block " + ++i + " nv=" + comp.getVars().size());
 			System.out.println(comp.toString());
 		}
@@ -94,10 +99,10 @@ public class TarjanTest extends TestCase {
 		assertTrue(ret);
 		
 		Tarjan tarjan = new Tarjan();
-		Collection<BipartiteGraph> scc = tarjan.tarjan(G);
+		Collection<SubgraphView> scc = tarjan.tarjan(G);
 		
 		int i = 0;
-		for(BipartiteGraph comp : scc){
+		for(SubgraphView comp : scc){
 			System.out.println("Block " + ++i + " nv=" + comp.getVars().size());
 			System.out.println(comp.toString());
 		}
@@ -144,4 +149,43 @@ public class TarjanTest extends TestCase {
 		tarjan.tarjan(G);
 		System.out.println(G.getName() + " time to partite (Array): " + Utils.toc());
 	}
+
+	/**
+	 * The blocks are views of the nodes of the graph, each variable in one block.
+	 */
+	public void testViews() throws Exception{
+		BipartiteGraph G = loadGraph("dots/ldpe_fixed.dot");
+		assertTrue(Algorithms.MaximumMatching(G));
+
+		List<SubgraphView> scc = new Tarjan().tarjan(G);
+		Set<BipartiteNode> seen = new HashSet<BipartiteNode>();
+		int nv = 0, ones = 0;
+		for(SubgraphView comp : scc){
+			assertEquals(comp.nv(), comp.ne());
+			for(int k=0; k<comp.nv(); ++k){
+				assertTrue(seen.add(comp.getVar(k)));
+				assertSame(comp.getEq(k), comp.getVar(k).getConnected());
+			}
+			nv += comp.nv();
+			if(comp.nv() == 1)
+				++ones;
+		}
+		assertEquals(G.nv(), nv);
+		System.out.println("ldpe_fixed blocks:" + scc.size() + " 1x1:" + ones);
+
+		SubgraphView last = scc.get(scc.size()-1);
+		assertEquals(last.getVars(), last.toGraph().getVars());
+		assertEquals(last.toString(), last.toGraph().toString().replace("graph " + last.toGraph().getName(),
+				"graph " + last.getName()));
+		try{
+			last.getVar(last.nv());
+			fail();
+		}
+		catch(IndexOutOfBoundsException e){
+		}
+
+		// the same blocks on the compact snapshot
+		List<SubgraphView> scc2 = new Tarjan().tarjan(G.freeze());
+		assertEquals(scc.size(), scc2.size());
+	}
 }
@@ -0,0 +1,129 @@
+package rpsgraph;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import br.eng.rps.graph.Algorithms;
+import br.eng.rps.graph.BipartiteEdge;
+import br.eng.rps.graph.BipartiteGraph;
+import br.eng.rps.graph.CompactGraph;
+import br.eng.rps.graph.GraphBuilder;
+import br.eng.rps.graph.Ordering;
+import br.eng.rps.graph.Tarjan;
+import br.eng.rps.graph.utils.Utils;
+
+/**
+ * Times the searches on the nodes of a graph before and after the reverse Cuthill-McKee
+ * ordering (see {@link BipartiteGraph#reorder(Ordering)}).
+ *
+ * <p>The model is copied several times into a single graph, numbered at random, so the
+ * graph is much larger than the processor caches and its nodes and edges are scattered
+ * as in a model assembled in no particular order. The maximum matching, the Dulmage-Mendelsohn
+ * decomposition and the strong components are then computed on the nodes of this graph and
+ * of a reordered copy, and the mean times are printed.
+ *
+ * <p>Usage: <code>java -Xss64m rpsgraph.OrderingBench [dotfile [copies [runs]]]</code>, by
+ * default <code>dots/ugav80.dot</code> with 32 copies and 10 runs.
+ *
+ * @author rafael
+ */
+public class OrderingBench {
+
+	/**
+	 * Builds a graph with the given number of copies of a model, numbered at random.
+	 */
+	static BipartiteGraph scale(CompactGraph C, int copies, Random r){
+		int ne = C.ne(), nv = C.nv();
+		int eqs[] = shuffle(ne*copies, r), vars[] = shuffle(nv*copies, r);
+		GraphBuilder b = new GraphBuilder(ne*copies, nv*copies, C.nnz()*copies);
+		b.setName(C.getGraph().getName() + "x" + copies);
+		for(int i=0; i<ne*copies; ++i){
+			// the rows in the order of the random numbering
+			int c = eqs[i] / ne;
+			for(BipartiteEdge ed=C.getEq(eqs[i] % ne).getEdges(); ed!=null; ed=ed.getNext())
+				b.addEdge(i, vars[c*nv + C.indexOf(ed.getNode2())]);
+		}
+		return b.build();
+	}
+
+	/**
+	 * @return a random permutation of 0..n-1
+	 */
+	static int[] shuffle(int n, Random r){
+		int p[] = new int[n];
+		for(int i=0; i<n; ++i)
+			p[i] = i;
+		for(int i=n-1; i>0; --i){
+			int k = r.nextInt(i+1), t = p[i];
+			p[i] = p[k];
+			p[k] = t;
+		}
+		return p;
+	}
+
+	/**
+	 * Mean distance of the nonzeros to the diagonal of the incidence matrix (scaled to be square).
+	 */
+	static double span(CompactGraph C){
+		double s = 0;
+		for(int i=0; i<C.ne(); ++i){
+			for(BipartiteEdge ed=C.getEq(i).getEdges(); ed!=null; ed=ed.getNext())
+				s += Math.abs((double)i*C.nv()/C.ne() - C.indexOf(ed.getNode2()));
+		}
+		return s / C.nnz();
+	}
+
+	/**
+	 * Runs the analysis on the nodes of the graph.
+	 * @return the time in seconds
+	 */
+	static double analyze(BipartiteGraph G, int[] result){
+		int parts[] = {0, 0};
+		Utils.tic();
+		boolean perfect = Algorithms.MaximumMatching(G);
+		Algorithms.DulmageMendelshon(G, parts);
+		int scc = new Tarjan().tarjan(G).size();
+		double t = Utils.toc();
+		result[0] = perfect ? 1 : 0;
+		result[1] = parts[0];
+		result[2] = parts[1];
+		result[3] = scc;
+		return t;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "dots/ugav80.dot";
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		BipartiteGraph model = new BipartiteGraph();
+		InputStream in = new FileInputStream(file);
+		Utils.ImportGraphViz(in, model);
+		in.close();
+		BipartiteGraph G = scale(model.freeze(), copies, new Random(7));
+		CompactGraph C = G.freeze();
+		BipartiteGraph R = G.snapshot();
+		R.reorder(Ordering.reverseCuthillMcKee(C));
+		System.out.println(G.getName() + " ne:" + G.ne() + " nv:" + G.nv() + " nnz:" + C.nnz());
+		System.out.println("span shuffled:" + span(C) + " rcm:" + span(R.freeze()));
+
+		int r1[] = new int[4], r2[] = new int[4];
+		// warm up
+		for(int run=0; run<3; ++run){
+			analyze(G, r1);
+			analyze(R, r2);
+		}
+		double t1 = 0, t2 = 0;
+		for(int run=0; run<runs; ++run){
+			t1 += analyze(G, r1);
+			t2 += analyze(R, r2);
+		}
+		// the components depend on the matching unless it is perfect on both sides
+		for(int k=0; k<(r1[0]==1 && G.ne()==G.nv() ? 4 : 3); ++k){
+			if(r1[k] != r2[k])
+				throw new IllegalStateException("The results differ after the ordering");
+		}
+		System.out.println("mean time shuffled:" + t1/runs + "s rcm:" + t2/runs + "s");
+	}
+}